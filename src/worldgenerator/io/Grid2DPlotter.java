@@ -9,9 +9,12 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.Grid2D;
 import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridCellComparable;
+import worldgenerator.util.grid.IntGrid2D;
+import worldgenerator.util.grid.MappedGrid2D;
 
 /**
  * @author Felix Dietrich
@@ -42,12 +45,24 @@ public class Grid2DPlotter<T> extends APlotter {
 		StringBuilder sb = new StringBuilder();
 		for(int rowInd=0; rowInd < grid.rows(); rowInd++)
 		{
-			GridCell<T>[] row = grid.getRow(rowInd);
-			
-			for(GridCell<T> cell : row)
+			// primitive grids are written directly, without creating cells
+			if(grid instanceof DoubleGrid2D)
 			{
-				sb.append(cell.toString());
-				sb.append(",");
+				appendRow(sb, (DoubleGrid2D) grid, rowInd);
+			}
+			else if(grid instanceof IntGrid2D)
+			{
+				appendRow(sb, (IntGrid2D) grid, rowInd);
+			}
+			else
+			{
+				GridCell<T>[] row = grid.getRow(rowInd);
+				
+				for(GridCell<T> cell : row)
+				{
+					sb.append(cell.toString());
+					sb.append(",");
+				}
 			}
 			sb.deleteCharAt(sb.length()-1);
 			sb.append(System.lineSeparator());
@@ -56,6 +71,25 @@ public class Grid2DPlotter<T> extends APlotter {
 		return sb.toString();
 	}
 
+	private static void appendRow(StringBuilder sb, DoubleGrid2D grid, int row)
+	{
+		String format = "%.0" + grid.getPrecision() + "f";
+		for(int col=0; col < grid.cols(); col++)
+		{
+			sb.append(String.format(format, grid.get(row, col)));
+			sb.append(",");
+		}
+	}
+
+	private static void appendRow(StringBuilder sb, IntGrid2D grid, int row)
+	{
+		for(int col=0; col < grid.cols(); col++)
+		{
+			sb.append(grid.get(row, col));
+			sb.append(",");
+		}
+	}
+
 	public void plot2image(BufferedImage image) throws IOException
 	{
 		if(grid == null)
@@ -73,8 +107,7 @@ public class Grid2DPlotter<T> extends APlotter {
 		{
 			for(int col=0; col < grid.cols(); col++)
 			{
-				GridCell<T> cell = grid.getDataAt(row, col);
-				float d = (float)Math.max(0, Math.min(1.0, Double.parseDouble(cell.toString())));
+				float d = (float)Math.max(0, Math.min(1.0, valueAt(row, col)));
 				rgbArray[row * grid.cols() + col] = new Color(d,d,d).getRGB();
 			}
 		}
@@ -86,4 +119,21 @@ public class Grid2DPlotter<T> extends APlotter {
 		//g.drawImage(image, 0, 0, TRANSPARENT, null);
 	}
 
+	private double valueAt(int row, int col)
+	{
+		if(grid instanceof DoubleGrid2D)
+		{
+			return ((DoubleGrid2D) grid).get(row, col);
+		}
+		if(grid instanceof IntGrid2D)
+		{
+			return ((IntGrid2D) grid).get(row, col);
+		}
+		if(grid instanceof MappedGrid2D)
+		{
+			return ((MappedGrid2D) grid).get(row, col);
+		}
+		return Double.parseDouble(grid.getDataAt(row, col).toString());
+	}
+
 }
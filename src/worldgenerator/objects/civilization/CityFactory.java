@@ -10,20 +10,26 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Map.Entry;
 
 import worldgenerator.objects.resource.ResourceType;
 import worldgenerator.objects.terrain.Terrain;
 import worldgenerator.util.factory.IWorldObjectFactory;
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.Grid2D;
 import worldgenerator.util.grid.Grid2D.Grid2DIterator;
 import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridCellComparable;
 import worldgenerator.util.grid.GridCellDouble;
 import worldgenerator.util.grid.GridCellInteger;
+import worldgenerator.util.grid.GridExpression.CellFunction;
+import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridType;
 import worldgenerator.util.grid.GridUtils;
+import worldgenerator.util.grid.IntGrid2D;
+import worldgenerator.util.grid.SummedAreaTable;
 import worldgenerator.util.noise.RandomSource;
 
 /**
@@ -74,12 +80,17 @@ public class CityFactory implements IWorldObjectFactory<City>
 	 */
 	public static Collection<City> create(Terrain terrain, CityAttributes attributes)
 	{
-		ComparableGrid2D<Double> heightmap = terrain.getHeightMap(0);
-		ComparableGrid2D<Double> soilQuality = terrain.getSoilQualityMap();
+		DoubleGrid2D heightmap = DoubleGrid2D.valueOf(terrain.getHeightMap(0));
+		SummedAreaTable soilQuality = new SummedAreaTable(terrain.getSoilQualityMap());
 		Collection<City> cities = new LinkedList<City>();
 		Map<ResourceType,Double> resources = null;
 		
-		Set<ResourceType> allResources = terrain.getResources();
+		// the area sums are computed in constant time with summed-area tables
+		Map<ResourceType,SummedAreaTable> resourceMaps = new HashMap<ResourceType,SummedAreaTable>();
+		for(ResourceType resType : terrain.getResources())
+		{
+			resourceMaps.put(resType, new SummedAreaTable(terrain.getResourceMap(resType)));
+		}
 
 		RandomSource.rand.setSeed(attributes.seed);
 
@@ -91,21 +102,21 @@ public class CityFactory implements IWorldObjectFactory<City>
 			for (int col = 0; col < heightmap.cols(); col++)
 			{
 				double rval = RandomSource.rand.nextDouble();
-				double h = heightmap.getDataAt(row, col).getData();
+				double h = heightmap.get(row, col);
 				int averageSoilKernelSize = attributes.soilKernelSize;
 				int averageResourceKernelSize = attributes.resourceKernelSize;
-				double soil = soilQuality.sumDataOverArea(row, col, averageSoilKernelSize).getData()
+				double soil = soilQuality.sumOverArea(row, col, averageSoilKernelSize)
 						/ (averageSoilKernelSize * averageSoilKernelSize);
 				if (h > 0 && soil * attributes.density > rval)
 				{
 					resources = new HashMap<ResourceType,Double>();
-					for(ResourceType resType : allResources)
+					for(Entry<ResourceType,SummedAreaTable> resourceMap : resourceMaps.entrySet())
 					{
 						// calculate the resource mean value over a certain area
-						double resMeanValue = terrain.getResourceMap(resType).sumDataOverArea(row, col, averageResourceKernelSize).getData();
+						double resMeanValue = resourceMap.getValue().sumOverArea(row, col, averageResourceKernelSize);
 						resMeanValue /= averageResourceKernelSize * averageResourceKernelSize;
 						
-						resources.put(resType, resMeanValue);
+						resources.put(resourceMap.getKey(), resMeanValue);
 					}
 					
 					City newCity = new City(new GridCellInteger(ID), row, col, heightmap.getDataAt(row, col), resources);
@@ -169,13 +180,13 @@ public class CityFactory implements IWorldObjectFactory<City>
 	 * @param attributes
 	 * @return
 	 */
-	public static ComparableGrid2D<Integer> createGrid(Collection<City> cities, GridAttributes attributes)
+	public static IntGrid2D createGrid(Collection<City> cities, GridAttributes attributes)
 	{
-		ComparableGrid2D<Integer> result = new ComparableGrid2D<Integer>(attributes.height, attributes.width, new GridCellInteger(0));
+		IntGrid2D result = GridFactory.createInt2D(GridType.INTEGER_2D, attributes);
 
 		for (City city : cities)
 		{
-			result.setDataAt((int) city.getPosition().y, (int) city.getPosition().x, city.getPopulation());
+			result.set((int) city.getPosition().y, (int) city.getPosition().x, city.getPopulation());
 		}
 
 		return result;
@@ -195,21 +206,23 @@ public class CityFactory implements IWorldObjectFactory<City>
 		if (attributes.factor <= 0)
 			throw new IllegalArgumentException("CityAttributes.density must set the kernel size and must thus be > 0.");
 
-		ComparableGrid2D<Double> result = GridUtils.int2double(createGrid(cities, attributes));
+		DoubleGrid2D result = GridUtils.int2double(createGrid(cities, attributes));
 		GridUtils.ApplyGaussianFilter(result, (int) attributes.factor);
 
-		result.iterate(new Grid2DIterator<Double>()
+		final DoubleGrid2D heights = DoubleGrid2D.valueOf(heightmap);
+		result.expression().map(new CellFunction()
 		{
 			@Override
-			public void step(int row, int col, GridCell<Double> gridCell, Grid2D<Double> grid2d)
+			public double apply(int row, int col, double value)
 			{
-				if (heightmap.getDataAt(row, col).getData() < 0)
+				if (heights.get(row, col) < 0)
 				{
 					// TODO: add the removed data somewhere else, so that the population count stays the same
-					grid2d.setDataAt(row, col, 0.0);
+					return 0.0;
 				}
+				return value;
 			}
-		});
+		}).evaluateInto(result);
 
 		return result;
 	}
@@ -11,6 +11,7 @@ import worldgenerator.util.grid.Grid2DLayer;
 import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridCellDouble;
 import worldgenerator.util.grid.ISubdivisionAlgorithm;
+import worldgenerator.util.grid.SummedAreaTable;
 import worldgenerator.util.grid.Grid2D.Grid2DIterator;
 import worldgenerator.util.noise.PerlinNoiseMap;
 
@@ -51,8 +52,10 @@ public class PopulationDensitySubdivisionAlgorithm implements ISubdivisionAlgori
 				final int oldLayerRow = layerRow / subdivisionsPerLevel;
 				final int oldLayerCol = layerCol / subdivisionsPerLevel;
 				final Grid2D<Double> oldLayerGrid = oldLayer.getDataAt(oldLayerRow, oldLayerCol).getData();
+				final SummedAreaTable oldLayerSums = new SummedAreaTable((ComparableGrid2D<Double>) oldLayerGrid);
 				
-				currentLayerGridCell.getData().iterate(new Grid2DIterator<Double>()
+				// each step only writes its own cell and perlin map entry
+				currentLayerGridCell.getData().iterateParallel(new Grid2DIterator<Double>()
 				{
 					private final int[][] dirs = new int[][]{
 							new int[]{-1,-1}, new int[]{-1,0}, new int[]{-1,1}, 
@@ -70,8 +73,7 @@ public class PopulationDensitySubdivisionAlgorithm implements ISubdivisionAlgori
 						
 						// mean value
 						int meanKernelSize = 5;
-						double valMean = oldLayerGrid.sumDataOverArea(oldRow, oldCol, meanKernelSize).getData();
-						valMean /= meanKernelSize * meanKernelSize;
+						double valMean = oldLayerSums.meanOverArea(oldRow, oldCol, meanKernelSize);
 						
 						newVal = valMean;
 						
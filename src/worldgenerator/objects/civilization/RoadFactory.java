@@ -16,10 +16,10 @@ import java.util.TreeSet;
 
 import worldgenerator.util.factory.IWorldObjectFactory;
 import worldgenerator.util.grid.ComparableGrid2D;
-import worldgenerator.util.grid.GridCellDouble;
 import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
 import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.ScaledGrid2D;
 
 /**
  * @author Felix Dietrich
@@ -66,8 +66,8 @@ public class RoadFactory implements IWorldObjectFactory<Road>
 		Collection<Road> result = new LinkedList<Road>();
 		Collection<Line> lines = new LinkedList<Line>();
 		
-		final ComparableGrid2D<Double> multHeightmap = heightmap.clone();
-		multHeightmap.mult(new GridCellDouble(10.0));
+		// scaled view instead of a scaled copy of the heightmap
+		final ComparableGrid2D<Double> multHeightmap = new ScaledGrid2D(heightmap, 10.0, 0.0);
 		
 		// create link set ordered by distance
 		TreeSet<CityLink> links = new TreeSet<CityLink>(new Comparator<CityLink>()
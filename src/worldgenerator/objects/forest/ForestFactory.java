@@ -9,14 +9,19 @@ import java.util.Map.Entry;
 import java.util.Random;
 
 import worldgenerator.util.grid.CellularAutomata;
-import worldgenerator.util.grid.CellularAutomata.CAStep;
+import worldgenerator.util.grid.CellularAutomata.CARule;
+import worldgenerator.util.grid.CellularAutomata.Neighbourhood;
+import worldgenerator.util.grid.CellularAutomata.Neighbours;
+import worldgenerator.util.grid.CellularAutomata.UpdateMode;
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.Grid2D;
 import worldgenerator.util.grid.Grid2D.Grid2DIterator;
 import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
 import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.IntGrid2D;
 
 
 /**
@@ -25,6 +30,11 @@ import worldgenerator.util.grid.GridType;
  */
 public class ForestFactory
 {
+	/**
+	 * The directions in which forests grow.
+	 */
+	private static final int[][] dirs = new int[][]{ new int[]{-1,0},  new int[]{1,0},  new int[]{0,-1},  new int[]{0,1}};
+
 	public static class ForestLevels
 	{
 		private double density;
@@ -68,6 +78,7 @@ public class ForestFactory
 	 * Create forest tree types based on heightmap, soilmap and given lower and upper levels.
 	 * First, forest seeds are placed on separate Grid2D s separately.
 	 * Second, the seeds are grown with a cellular automata.
+	 * Third, the single forest cells without forest next to them are removed.
 	 * 
 	 * @param heightmap
 	 * @param soilmap
@@ -115,44 +126,92 @@ public class ForestFactory
 		});
 		
 		// grow forests for some steps
+		final DoubleGrid2D heights = DoubleGrid2D.valueOf(heightmap);
 		for(Entry<Integer, ForestLevels> level : attributes.levels.entrySet())
 		{
 			ComparableGrid2D<Double> initialGrid = result.get(level.getKey());
-			CellularAutomata<Double> automata = new CellularAutomata<Double>(initialGrid, new CAStep<Double>() {
+			final int levelSeed = attributes.seed * 31 + level.getKey();
+			CellularAutomata<Double> automata = new CellularAutomata<Double>(initialGrid, new CARule<Double>() {
 
 				@Override
-				public ComparableGrid2D<Double> work(ComparableGrid2D<Double> grid)
+				public Double apply(Neighbours<Double> cell)
 				{
-					// iterate over the forest probabilities and grow
-					grid.iterate(new Grid2DIterator<Double>()
+					// each forest cell grows into a random neighbour above sea level,
+					// this cell takes the probability of the last neighbour that grows into it
+					Double value = cell.get();
+					if(heights.get(cell.row(), cell.col()) <= 0)
+						return value;
+					
+					Neighbourhood neighbourhood = cell.neighbourhood();
+					for(int i=0; i<neighbourhood.size(); i++)
 					{
-						private final int[][] dirs = new int[][]{ new int[]{-1,0},  new int[]{1,0},  new int[]{0,-1},  new int[]{0,1}};
-
-						@Override
-						public void step(int row, int col, GridCell<Double> gridCell, Grid2D<Double> localgrid)
+						Double neighbour = cell.neighbour(i);
+						if(neighbour != null && neighbour > 0)
 						{
-							if(gridCell.getData() > 0)
+							// the neighbour may grow into this cell in a later step
+							cell.keepActive();
+							int dir = direction(levelSeed, cell.step(), cell.row() + neighbourhood.rowOffset(i), cell.col() + neighbourhood.colOffset(i));
+							if(dirs[dir][0] == -neighbourhood.rowOffset(i) && dirs[dir][1] == -neighbourhood.colOffset(i))
 							{
-								int dir = rand.nextInt(4);
-								int newrow = row + dirs [dir][0];
-								int newcol = col + dirs[dir][1];
-								if(!heightmap.invalid(newrow, newcol) && heightmap.getDataAt(newrow, newcol).getData() > 0)
-								{
-									localgrid.setDataAt(newrow, newcol, gridCell.getData());
-								}
+								value = neighbour;
 							}
 						}
-					});
-					return grid;
+					}
+					return value;
 				}
-			});
+			}, Neighbourhood.VON_NEUMANN, UpdateMode.FRONTIER);
 			
-			// some growing steps for the forest
+			// some growing steps for the forest, only the cells next to forests are computed
 			automata.step(3);
 			// store the modified grid back in the result map
-			result.put(level.getKey(), automata.result());
+			result.put(level.getKey(), removeSingleCells(automata.result()));
 		}
 		
 		return result;
 	}
+
+	/**
+	 * Removes the forest cells that have no forest cell in their von Neumann neighbourhood, for example seeds that could not grow.
+	 * The presence of forest has two states, so the automata runs on one bit per cell.
+	 * @param forest the grown forest, changed in place
+	 * @return the forest
+	 */
+	private static ComparableGrid2D<Double> removeSingleCells(ComparableGrid2D<Double> forest)
+	{
+		IntGrid2D presence = new IntGrid2D(forest.rows(), forest.cols());
+		for(int r=0; r<forest.rows(); r++)
+		{
+			for(int c=0; c<forest.cols(); c++)
+			{
+				if(forest.getDataAt(r, c).getData() > 0)
+					presence.set(r, c, 1);
+			}
+		}
+		
+		// no cell becomes forest, forest cells stay with one to four forest neighbours
+		CellularAutomata<Integer> automata = CellularAutomata.totalistic(presence, 1, 0, Neighbourhood.VON_NEUMANN, 0, 1 << 1 | 1 << 2 | 1 << 3 | 1 << 4);
+		automata.step();
+		ComparableGrid2D<Integer> kept = automata.result();
+		for(int r=0; r<forest.rows(); r++)
+		{
+			for(int c=0; c<forest.cols(); c++)
+			{
+				if(presence.get(r, c) == 1 && kept.getDataAt(r, c).getData() == 0)
+					forest.setDataAt(r, c, 0.0);
+			}
+		}
+		return forest;
+	}
+
+	/**
+	 * The direction in which the forest at the given cell grows in the given step, as index into {@link #dirs}.
+	 * It only depends on its arguments, so the cells can grow in any order.
+	 */
+	private static int direction(int seed, int step, int row, int col)
+	{
+		long value = ((long) seed * 0x9E3779B97F4A7C15L) ^ ((long) step << 48) ^ ((long) row << 24) ^ col;
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return (int) ((value ^ (value >>> 31)) >>> 62);
+	}
 }
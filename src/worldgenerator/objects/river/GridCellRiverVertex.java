@@ -22,6 +22,7 @@ public class GridCellRiverVertex extends GridCellComparable<Point3D> {
 
 	public GridCellRiverVertex(Point3D position, double flux) {
 		super(position);
+		this.position = position;
 		this.flux = flux;
 	}
 
@@ -38,6 +39,22 @@ public class GridCellRiverVertex extends GridCellComparable<Point3D> {
 		return position;
 	}
 	
+	/**
+	 * Vertices are equal if they have the same position and flux, so that vertices read from a {@link RiverPolyline} can be compared.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof GridCellRiverVertex))
+			return false;
+		GridCellRiverVertex other = (GridCellRiverVertex) obj;
+		return this.flux == other.flux && this.position.equals(other.position);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.position.hashCode();
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s#%f", this.position.toString(), this.flux);
@@ -3,7 +3,9 @@
  */
 package worldgenerator.objects.river;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -29,29 +31,41 @@ public class River extends WorldObject {
 	 */
 	private GridCellRiverVertex sink;
 	/**
-	 * A set of grid cells that this river passes through.
+	 * The grid cells that this river passes through, from the source to the sink.
 	 * Must contain source and sink, should contain sinks of all connectedSources.
 	 */
-	private List<GridCellRiverVertex> vertices;
+	private final RiverPolyline vertices;
+	/**
+	 * Read-only view of the vertices, handed out to callers.
+	 */
+	private final RiverPolyline view;
+	/**
+	 * Handle of the sink in the vertices, new vertices are added before it.
+	 */
+	private final int sinkHandle;
 	
 	public River(GridCellRiverVertex source, GridCellRiverVertex sink) {
 		this.sink = sink;
 		this.source = source;
-		this.vertices = new LinkedList<GridCellRiverVertex>();
-		this.vertices.add(source);
-		this.vertices.add(sink);
+		this.vertices = new RiverPolyline();
+		this.vertices.append(source);
+		this.sinkHandle = this.vertices.append(sink);
+		this.view = this.vertices.readOnly();
 		
 		this.connectedSources = new LinkedList<River>();
 	}
 	
 	/**
 	 * Adds a connected source to this river and adds the sink of sourceRiver to the vertex list.
+	 * If the sink of sourceRiver already is the last vertex before the sink or the sink of this river,
+	 * for example because several rivers flow in at the same vertex, it is not added again.
 	 * @param sourceRiver
 	 */
 	public void addConnectedSource(River sourceRiver)
 	{
 		this.connectedSources.add(sourceRiver);
-		this.addVertex(sourceRiver.sink);
+		if(!sourceRiver.sink.equals(this.sink) && !this.vertices.matches(this.vertices.previous(sinkHandle), sourceRiver.sink))
+			this.addVertex(sourceRiver.sink);
 	}
 
 	public GridCellRiverVertex getSink() {
@@ -67,26 +81,103 @@ public class River extends WorldObject {
 		return connectedSources;
 	}
 
+	/**
+	 * Creates a list of the vertices from source to sink, the source and sink are the objects given to the constructor.
+	 * The list is a copy, use {@link #getPolyline()} to read the vertices without creating objects.
+	 * @return the vertices of this river
+	 */
 	public List<GridCellRiverVertex> getVertices() {
-		return vertices;
+		List<GridCellRiverVertex> result = new ArrayList<GridCellRiverVertex>(this.vertices.size());
+		for(int handle=this.vertices.first(); handle!=RiverPolyline.NONE; handle=this.vertices.next(handle))
+		{
+			if(handle == this.vertices.first())
+				result.add(this.source);
+			else if(handle == sinkHandle)
+				result.add(this.sink);
+			else
+				result.add(this.vertices.vertex(handle));
+		}
+		return Collections.unmodifiableList(result);
+	}
+	
+	/**
+	 * The vertices of this river. They can only be changed through the methods of the river, so that the sink stays the last vertex.
+	 * @return a read-only view of the polyline of the vertices
+	 */
+	public RiverPolyline getPolyline()
+	{
+		return this.view;
+	}
+	
+	/**
+	 * @return the handle of the source in the polyline
+	 */
+	public int getSourceHandle()
+	{
+		return this.vertices.first();
+	}
+	
+	/**
+	 * @return the handle of the sink in the polyline
+	 */
+	public int getSinkHandle()
+	{
+		return this.sinkHandle;
 	}
 
 	/**
 	 * Adds a vertex right before the sink.
 	 * @param newVertex
+	 * @return the handle of the new vertex
+	 */
+	public int addVertex(GridCellRiverVertex newVertex) {
+		return this.vertices.insertBefore(sinkHandle, newVertex);
+	}
+	
+	/**
+	 * Adds count vertices right before the sink, with their coordinates and fluxes taken from the arrays.
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param flux
+	 * @param count
+	 * @return the handle of the first new vertex, the others follow in ascending order
 	 */
-	public void addVertex(GridCellRiverVertex newVertex) {
-		GridCellRiverVertex sink = this.vertices.remove(this.vertices.size()-1);
-		this.vertices.add(newVertex);
-		this.vertices.add(sink);
+	public int addVertices(double[] x, double[] y, double[] z, double[] flux, int count) {
+		return this.vertices.insertBefore(sinkHandle, x, y, z, flux, count);
 	}
 
-	public void addVertex(GridCellRiverVertex p1, GridCellRiverVertex newVertex) {
-		int ind = this.vertices.indexOf(p1);
-		if(ind < 0)
+	/**
+	 * Adds a vertex right after the vertex with the given handle, in O(1).
+	 * @param handle
+	 * @param newVertex
+	 * @return the handle of the new vertex
+	 */
+	public int addVertex(int handle, GridCellRiverVertex newVertex) {
+		if(handle == RiverPolyline.NONE)
+		{
+			throw new IllegalArgumentException("No vertex can be added before the source.");
+		}
+		if(handle == sinkHandle)
+		{
+			throw new IllegalArgumentException("No vertex can be added after the sink.");
+		}
+		return this.vertices.insertAfter(handle, newVertex);
+	}
+
+	/**
+	 * Adds a vertex right after the first vertex equal to p1.
+	 * The vertex is searched in O(n), use {@link #addVertex(int, GridCellRiverVertex)} with the handle of p1 instead.
+	 * @param p1
+	 * @param newVertex
+	 * @return the handle of the new vertex
+	 */
+	public int addVertex(GridCellRiverVertex p1, GridCellRiverVertex newVertex) {
+		int handle = this.vertices.find(p1);
+		if(handle < 0)
 		{
 			throw new IllegalArgumentException("Vertex " + p1 + " is not part of this river.");
 		}
-		this.vertices.add(ind+1, newVertex);
+		return this.addVertex(handle, newVertex);
 	}
 }
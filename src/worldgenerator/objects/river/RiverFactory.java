@@ -2,25 +2,30 @@ package worldgenerator.objects.river;
 
 import geometry.Point3D;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Queue;
 
 import worldgenerator.util.factory.IWorldObjectFactory;
-import worldgenerator.util.grid.CellularAutomata;
-import worldgenerator.util.grid.CellularAutomata.CAStep;
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.GridCellComparable;
 import worldgenerator.util.grid.GridCellDouble;
-import worldgenerator.util.grid.GridCellInteger;
-import worldgenerator.util.grid.GridFactory;
-import worldgenerator.util.grid.GridFactory.GridAttributes;
-import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.Hydrology;
+import worldgenerator.util.grid.IntGrid2D;
 import worldgenerator.util.noise.RandomIntervals;
 import worldgenerator.util.noise.RandomSource;
 
 public class RiverFactory implements IWorldObjectFactory<River> {
+	/**
+	 * Cells at or below this height are sea, rivers end there.
+	 */
+	private static final double SEA_LEVEL = 0.0;
+
 	/**
 	 * Creates a river with given source and sink.
 	 * The sparsity defines how many new source rivers are created in the process. 
@@ -91,7 +96,7 @@ public class RiverFactory implements IWorldObjectFactory<River> {
 	{
 		River result = new River(source, sink);
 		
-		addRandomVertices(result, source, sink, newVertices, stretch);
+		addRandomVertices(result, result.getSourceHandle(), source, sink, newVertices, stretch);
 		
 		int mapsize = 512;
 		ComparableGrid2D<Point3D> rivermap = new ComparableGrid2D<Point3D>(mapsize, mapsize, new GridCellRiverVertex(new Point3D(0.0, 0.0, 0.0), 0.0));
@@ -100,7 +105,11 @@ public class RiverFactory implements IWorldObjectFactory<River> {
 		return result;
 	}
 
-	private static void addRandomVertices(River result, GridCellRiverVertex gcp1, GridCellRiverVertex gcp2, int newVertices,
+	/**
+	 * Adds vertices between gcp1 and gcp2, which must follow each other in the river.
+	 * @param handle the handle of gcp1, the new vertices are inserted after it in O(1)
+	 */
+	private static void addRandomVertices(River result, int handle, GridCellRiverVertex gcp1, GridCellRiverVertex gcp2, int newVertices,
 			double stretch) {
 		if(newVertices < 1)
 		{
@@ -119,126 +128,319 @@ public class RiverFactory implements IWorldObjectFactory<River> {
 		// new vertex
 		GridCellRiverVertex newVertex = new GridCellRiverVertex(center.add(normal.normalize(stretchFactor)), gcp1.getFlux());
 		
-		result.addVertex(gcp1, newVertex);
+		int newHandle = result.addVertex(handle, newVertex);
 		
 		// continue generation of vertices until newVertices is reached
-		addRandomVertices(result, gcp1, newVertex, (int)Math.ceil((newVertices-1)/2.0), stretch/1.5);
-		addRandomVertices(result, newVertex, gcp2, (int)Math.ceil((newVertices-1)/2.0), stretch/1.5);
+		addRandomVertices(result, handle, gcp1, newVertex, (int)Math.ceil((newVertices-1)/2.0), stretch/1.5);
+		addRandomVertices(result, newHandle, newVertex, gcp2, (int)Math.ceil((newVertices-1)/2.0), stretch/1.5);
 	}
 
 	/**
 	 * Creates multiple rivers based on a heightmap.
+	 * Cells through which the water of at least max(rows,cols) cells flows are part of a river.
 	 * @param heightmap
-	 * @return
+	 * @param Nrivers the maximum number of river systems
+	 * @return the main rivers, see {@link #createMultiple(ComparableGrid2D, IntGrid2D, int, int)}
 	 */
 	public static Collection<River> createMultiple(ComparableGrid2D<Double> heightmap, int Nrivers) {
+		return createMultiple(heightmap, createFlowDirections(heightmap), Nrivers);
+	}
+
+	/**
+	 * Creates multiple rivers based on a heightmap and its flow directions.
+	 * Cells through which the water of at least max(rows,cols) cells flows are part of a river.
+	 * @param heightmap
+	 * @param directions the flow directions of the heightmap, see {@link #createFlowDirections(ComparableGrid2D)}
+	 * @param Nrivers the maximum number of river systems
+	 * @return the main rivers, see {@link #createMultiple(ComparableGrid2D, IntGrid2D, int, int)}
+	 */
+	public static Collection<River> createMultiple(ComparableGrid2D<Double> heightmap, IntGrid2D directions, int Nrivers) {
+		return createMultiple(heightmap, directions, Nrivers, Math.max(heightmap.rows(), heightmap.cols()));
+	}
+
+	/**
+	 * Creates multiple rivers based on a heightmap.
+	 * @param heightmap
+	 * @param Nrivers the maximum number of river systems
+	 * @param minFlux
+	 * @return the main rivers, see {@link #createMultiple(ComparableGrid2D, IntGrid2D, int, int)}
+	 */
+	public static Collection<River> createMultiple(ComparableGrid2D<Double> heightmap, int Nrivers, int minFlux) {
+		return createMultiple(heightmap, createFlowDirections(heightmap), Nrivers, minFlux);
+	}
+
+	/**
+	 * Creates multiple rivers based on a heightmap.
+	 * The water of every cell flows along the given directions, see {@link #createFlowDirections(ComparableGrid2D)}.
+	 * The cells through which the water of at least minFlux cells flows are part of a river, the flux of their vertices is this number of cells.
+	 * <br>
+	 * A river system ends at the border of the map or at the sea. From there its main river follows the upstream neighbour with the most water,
+	 * the other upstream neighbours start tributaries that are connected sources of the river, with the vertex where they join as their sink.
+	 * The vertices are at (col,row,height) of their cells.
+	 * @param heightmap
+	 * @param directions the flow directions of the heightmap
+	 * @param Nrivers the maximum number of river systems, the ones with the most water at their mouth are created
+	 * @param minFlux
+	 * @return the main rivers of the river systems, ordered by their flux
+	 */
+	public static Collection<River> createMultiple(ComparableGrid2D<Double> heightmap, IntGrid2D directions, int Nrivers, int minFlux)
+	{
+		if(Nrivers < 0)
+			throw new IllegalArgumentException("Nrivers must not be negative, but was " + Nrivers + ".");
+		if(minFlux < 1)
+			throw new IllegalArgumentException("minFlux must be positive, but was " + minFlux + ".");
+		if(directions.rows() != heightmap.rows() || directions.cols() != heightmap.cols())
+			throw new IllegalArgumentException("The flow directions must have the size of the heightmap.");
+		
+		RiverNetwork network = new RiverNetwork(DoubleGrid2D.valueOf(heightmap), directions, minFlux);
+		long[] mouths = network.mouths();
+		
 		Collection<River> rivers = new LinkedList<River>();
+		Deque<River> tributaries = new ArrayDeque<River>();
+		for(int i=mouths.length-1; i>=0 && rivers.size() < Nrivers; i--)
+		{
+			int mouth = (int) mouths[i];
+			int source = network.source(mouth);
+			// a river needs at least two cells
+			if(source == mouth)
+				continue;
+			
+			River river = new River(network.vertex(source), network.vertex(mouth));
+			rivers.add(river);
+			network.trace(river, true, tributaries);
+			while(!tributaries.isEmpty())
+			{
+				network.trace(tributaries.pop(), false, tributaries);
+			}
+		}
 		
 		return rivers;
 	}
 
 	/**
-	 * Uses a heightmap to create a watershades map with the given attributes.
-	 * Watersheds are created by dropping a random map of virtual water onto the heightmap and let it flow downwards using a cellular automata.
-	 * @param heightmap
-	 * @param attributes
-	 * @return
+	 * The flow directions and accumulation of a heightmap, used to trace the rivers.
 	 */
-	public static ComparableGrid2D<Integer> createWatersheds(final ComparableGrid2D<Double> heightmap, GridAttributes attributes)
+	private static class RiverNetwork
 	{
-		// cutoff value below which no watersheds form
-		final double waterShedCutoff = 0.10;
+		private final DoubleGrid2D heights;
+		private final IntGrid2D directions;
+		private final IntGrid2D accumulation;
+		private final int minFlux;
+		private final int rows;
+		private final int cols;
+		/**
+		 * Coordinates and fluxes of the cells that are added to the current river in bulk, without creating vertices.
+		 */
+		private double[] bufferX = new double[64];
+		private double[] bufferY = new double[64];
+		private double[] bufferZ = new double[64];
+		private double[] bufferFlux = new double[64];
+		private int buffered;
 		
-		ComparableGrid2D<Integer> initialData = new ComparableGrid2D<Integer>(attributes.height, attributes.width, new GridCellInteger(-999));
+		public RiverNetwork(DoubleGrid2D heights, IntGrid2D directions, int minFlux)
+		{
+			this.heights = heights;
+			this.directions = directions;
+			this.accumulation = Hydrology.flowAccumulation(directions);
+			this.minFlux = minFlux;
+			this.rows = heights.rows();
+			this.cols = heights.cols();
+		}
 		
-		// store the indices in the initial data to be able to assign different numbers to the watersheds lateron
-		/*for(int r=0; r < attributes.height; r++)
+		/**
+		 * Finds the cells where the rivers end, at an outlet or next to the sea.
+		 * @return the mouths sorted by their flux, with the flux in the upper and the cell in the lower 32 bits
+		 */
+		public long[] mouths()
 		{
-			for(int c=0; c < attributes.width; c++)
+			long[] result = new long[16];
+			int count = 0;
+			for(int cell=0; cell<rows*cols; cell++)
 			{
-				initialData.setDataAt(r, c, new GridCellInteger(r * attributes.width + c));
+				if(!isRiver(cell))
+					continue;
+				int target = downstream(cell);
+				if(target < 0 || directions.get(target / cols, target % cols) == Hydrology.SEA)
+				{
+					if(count == result.length)
+						result = Arrays.copyOf(result, 2 * count);
+					result[count++] = (long) accumulation.get(cell / cols, cell % cols) << 32 | cell;
+				}
 			}
-		}*/
+			result = Arrays.copyOf(result, count);
+			Arrays.sort(result);
+			return result;
+		}
 		
-		// create the cellular automata that computes the initial watersheds
-		CellularAutomata<Integer> automata = new CellularAutomata<Integer>(initialData, new CAStep<Integer>()
+		/**
+		 * Adds the vertices from the source to the sink of the river, and the tributaries joining it there.
+		 * The tributaries are added to the given stack, their own vertices are not traced yet.
+		 * @param river
+		 * @param mouth true if the sink is part of this river, false if it is the vertex where the river joins another one
+		 * @param tributaries
+		 */
+		public void trace(River river, boolean mouth, Deque<River> tributaries)
 		{
-			@Override
-			public ComparableGrid2D<Integer> work(ComparableGrid2D<Integer> grid)
+			int sink = cell(river.getSink());
+			int previous = cell(river.getSource());
+			int cell = downstream(previous);
+			while(cell != sink || mouth)
 			{
-				for(int r=0; r < grid.rows(); r++)
+				// only the cells where tributaries join need a vertex, as the sink of the tributaries
+				GridCellRiverVertex vertex = null;
+				for(int i=0; i<Hydrology.DIRECTIONS.size(); i++)
 				{
-					for(int c=0; c < grid.cols(); c++)
+					int upstream = upstream(cell, i);
+					if(upstream < 0 || upstream == previous)
+						continue;
+					
+					if(vertex == null)
 					{
-						// if the threshold was crossed, progress the watershed
-						double dval = heightmap.getDataAt(r, c).getData();
-						if(dval > waterShedCutoff)
-						{
-							int val = 1;
-							grid.setDataAt(r-1, c, val);
-							grid.setDataAt(r+1, c, val);
-							grid.setDataAt(r, c, val);
-							grid.setDataAt(r, c-1, val);
-							grid.setDataAt(r, c+1, val);
-						}
-						else
-						{
-							grid.setDataAt(r, c, -1);
-						}
+						flush(river);
+						vertex = cell == sink ? river.getSink() : vertex(cell);
 					}
+					River tributary = new River(vertex(source(upstream)), vertex);
+					river.addConnectedSource(tributary);
+					tributaries.push(tributary);
 				}
-				return grid;
+				if(cell == sink)
+					break;
+				if(vertex == null)
+					buffer(cell);
+				
+				previous = cell;
+				cell = downstream(cell);
 			}
-		});
+			flush(river);
+		}
 		
-		// progress some steps so that the watersheds have time to form
-		int steps = 10;
-		automata.step(steps);
+		private void buffer(int cell)
+		{
+			if(buffered == bufferX.length)
+			{
+				bufferX = Arrays.copyOf(bufferX, 2 * buffered);
+				bufferY = Arrays.copyOf(bufferY, 2 * buffered);
+				bufferZ = Arrays.copyOf(bufferZ, 2 * buffered);
+				bufferFlux = Arrays.copyOf(bufferFlux, 2 * buffered);
+			}
+			int row = cell / cols;
+			int col = cell % cols;
+			bufferX[buffered] = col;
+			bufferY[buffered] = row;
+			bufferZ[buffered] = heights.get(row, col);
+			bufferFlux[buffered] = flux(cell);
+			buffered++;
+		}
 		
-		// store the result in the initial data for the next automata
-		initialData = automata.result();
+		/**
+		 * Adds the buffered cells before the sink of the river.
+		 */
+		private void flush(River river)
+		{
+			river.addVertices(bufferX, bufferY, bufferZ, bufferFlux, buffered);
+			buffered = 0;
+		}
 		
-		// create the cellular automata that computes the initial watersheds
-		CellularAutomata<Integer> automataExpand = new CellularAutomata<Integer>(initialData, new CAStep<Integer>()
+		/**
+		 * Follows the upstream neighbours with the most water.
+		 * @param cell
+		 * @return the first cell of the river through the given cell
+		 */
+		public int source(int cell)
 		{
-			@Override
-			public ComparableGrid2D<Integer> work(ComparableGrid2D<Integer> grid)
+			while(true)
 			{
-				for(int r=0; r < grid.rows(); r++)
+				int next = -1;
+				for(int i=0; i<Hydrology.DIRECTIONS.size(); i++)
 				{
-					for(int c=0; c < grid.cols(); c++)
-					{
-						int val = grid.getDataAt(r, c).getData();
-						double cheight = heightmap.getDataAt(r, c).getData();
-						// if a watershed is present, extend it in an appropriate direction
-						if(val > -100 && cheight > -0.1)
-						{
-							for(int hr=-1; hr<=1; hr++)
-							{
-								for(int hc=-1; hc<=1; hc++)
-								{
-									// if the height is decreasing, extend the watershed
-									if(!heightmap.invalid(r+hr, c+hc))
-									{
-										double h = heightmap.getDataAt(r+hr, c+hc).getData();
-										if(h < cheight)
-										{
-											grid.setDataAt(r+hr, c+hc, (int)(h*100));
-										}
-									}
-								}
-							}
-						}
-					}
+					int upstream = upstream(cell, i);
+					if(upstream >= 0 && (next < 0 || flux(upstream) > flux(next)))
+						next = upstream;
 				}
-				return grid;
+				if(next < 0)
+					return cell;
+				cell = next;
 			}
-		});
+		}
 		
-		// progress some steps so that the watersheds have time to form
-		steps = 15;
-		automataExpand.step(steps);
+		/**
+		 * @return the river cell that drains to the given cell from the neighbour with the given index, -1 if there is none
+		 */
+		private int upstream(int cell, int i)
+		{
+			int r = cell / cols - Hydrology.DIRECTIONS.rowOffset(i);
+			int c = cell % cols - Hydrology.DIRECTIONS.colOffset(i);
+			if(r < 0 || c < 0 || r >= rows || c >= cols || directions.get(r, c) != i)
+				return -1;
+			int upstream = r * cols + c;
+			return isRiver(upstream) ? upstream : -1;
+		}
 		
-		return automataExpand.result();
+		/**
+		 * @return the cell the given cell drains to, -1 if it is an outlet or in the sea
+		 */
+		private int downstream(int cell)
+		{
+			int direction = directions.get(cell / cols, cell % cols);
+			if(direction < 0)
+				return -1;
+			return cell + Hydrology.DIRECTIONS.rowOffset(direction) * cols + Hydrology.DIRECTIONS.colOffset(direction);
+		}
+		
+		private boolean isRiver(int cell)
+		{
+			return flux(cell) >= minFlux && directions.get(cell / cols, cell % cols) != Hydrology.SEA;
+		}
+		
+		private int flux(int cell)
+		{
+			return accumulation.get(cell / cols, cell % cols);
+		}
+		
+		public GridCellRiverVertex vertex(int cell)
+		{
+			int row = cell / cols;
+			int col = cell % cols;
+			return new GridCellRiverVertex(new Point3D(col, row, heights.get(row, col)), flux(cell));
+		}
+		
+		private int cell(GridCellRiverVertex vertex)
+		{
+			return (int) vertex.getPosition().y * cols + (int) vertex.getPosition().x;
+		}
+	}
+
+	/**
+	 * Computes the flow directions of a heightmap, shared by {@link #createWatersheds(IntGrid2D)} and
+	 * {@link #createMultiple(ComparableGrid2D, IntGrid2D, int)} so that the depressions are filled only once.
+	 * The depressions of the heightmap are filled, then every cell drains to its steepest lower neighbour, see {@link Hydrology}.
+	 * @param heightmap
+	 * @return the flow direction of each cell
+	 */
+	public static IntGrid2D createFlowDirections(ComparableGrid2D<Double> heightmap)
+	{
+		DoubleGrid2D filled = Hydrology.fillDepressions(DoubleGrid2D.valueOf(heightmap), SEA_LEVEL);
+		return Hydrology.flowDirections(filled, SEA_LEVEL);
+	}
+
+	/**
+	 * Uses a heightmap to create a watersheds map.
+	 * @param heightmap
+	 * @return the label of the watershed of each cell, see {@link #createWatersheds(IntGrid2D)}
+	 */
+	public static IntGrid2D createWatersheds(ComparableGrid2D<Double> heightmap)
+	{
+		return createWatersheds(createFlowDirections(heightmap));
+	}
+
+	/**
+	 * Creates a watersheds map from the flow directions of a heightmap.
+	 * All cells draining to the same outlet at the border of the map, or into the sea through the same cell, form a watershed.
+	 * @param directions the flow directions, see {@link #createFlowDirections(ComparableGrid2D)}
+	 * @return the label of the watershed of each cell, 0, 1, ..., or {@link Hydrology#NO_BASIN} for the sea
+	 */
+	public static IntGrid2D createWatersheds(IntGrid2D directions)
+	{
+		return Hydrology.basins(directions);
 	}
 }
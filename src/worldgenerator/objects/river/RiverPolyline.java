@@ -0,0 +1,403 @@
+/**
+ * 
+ */
+package worldgenerator.objects.river;
+
+import geometry.Point3D;
+
+import java.util.Arrays;
+
+/**
+ * The vertices of a river as a polyline, stored in arrays of primitive values instead of one object per vertex.
+ * Each vertex is identified by a handle that stays valid while the polyline grows.
+ * The order of the vertices is kept in links between the handles, so a vertex can be inserted after or before any other vertex in O(1).
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class RiverPolyline
+{
+	/**
+	 * Handle of no vertex, returned for the neighbour of the first or last vertex.
+	 */
+	public static final int NONE = -1;
+
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private double[] flux;
+	private int[] next;
+	private int[] previous;
+	private int first = NONE;
+	private int last = NONE;
+	private int size;
+
+	public RiverPolyline()
+	{
+		this(16);
+	}
+
+	/**
+	 * @param capacity number of vertices the polyline can hold before its arrays grow
+	 */
+	public RiverPolyline(int capacity)
+	{
+		if(capacity < 0)
+			throw new IllegalArgumentException("the capacity must not be negative, but was " + capacity + ".");
+
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+		flux = new double[capacity];
+		next = new int[capacity];
+		previous = new int[capacity];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the handle of the first vertex, {@link #NONE} if the polyline is empty
+	 */
+	public int first()
+	{
+		return first;
+	}
+
+	/**
+	 * @return the handle of the last vertex, {@link #NONE} if the polyline is empty
+	 */
+	public int last()
+	{
+		return last;
+	}
+
+	/**
+	 * @param handle
+	 * @return the handle of the vertex after the given one, {@link #NONE} for the last vertex
+	 */
+	public int next(int handle)
+	{
+		return next[check(handle)];
+	}
+
+	/**
+	 * @param handle
+	 * @return the handle of the vertex before the given one, {@link #NONE} for the first vertex
+	 */
+	public int previous(int handle)
+	{
+		return previous[check(handle)];
+	}
+
+	public double x(int handle)
+	{
+		return x[check(handle)];
+	}
+
+	public double y(int handle)
+	{
+		return y[check(handle)];
+	}
+
+	public double z(int handle)
+	{
+		return z[check(handle)];
+	}
+
+	public double flux(int handle)
+	{
+		return flux[check(handle)];
+	}
+
+	/**
+	 * @param handle
+	 * @return a new vertex with the position and flux of the given vertex
+	 */
+	public GridCellRiverVertex vertex(int handle)
+	{
+		check(handle);
+		return new GridCellRiverVertex(new Point3D(x[handle], y[handle], z[handle]), flux[handle]);
+	}
+
+	/**
+	 * Searches the vertex with the position and flux of the given one, in O(n).
+	 * @param vertex
+	 * @return the handle of the first equal vertex, {@link #NONE} if there is none
+	 */
+	public int find(GridCellRiverVertex vertex)
+	{
+		for(int handle=first; handle!=NONE; handle=next[handle])
+		{
+			if(matches(handle, vertex))
+				return handle;
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param handle
+	 * @param vertex
+	 * @return true if the vertex with the given handle has the position and flux of the given vertex
+	 */
+	public boolean matches(int handle, GridCellRiverVertex vertex)
+	{
+		check(handle);
+		return vertex.getFlux() == flux[handle] && vertex.getPosition().equals(new Point3D(x[handle], y[handle], z[handle]));
+	}
+
+	/**
+	 * Adds a vertex after the last one.
+	 * @param vertex
+	 * @return the handle of the new vertex
+	 */
+	public int append(GridCellRiverVertex vertex)
+	{
+		return insertAfter(last, vertex);
+	}
+
+	/**
+	 * Adds a vertex after the given one.
+	 * @param handle the vertex before the new one, {@link #NONE} to add the vertex at the start
+	 * @param vertex
+	 * @return the handle of the new vertex
+	 */
+	public int insertAfter(int handle, GridCellRiverVertex vertex)
+	{
+		int after = handle == NONE ? first : next[check(handle)];
+		int result = add(vertex.getPosition().x, vertex.getPosition().y, vertex.getPosition().z, vertex.getFlux());
+		link(handle, result, after);
+		return result;
+	}
+
+	/**
+	 * Adds a vertex before the given one.
+	 * @param handle the vertex after the new one, {@link #NONE} to add the vertex at the end
+	 * @param vertex
+	 * @return the handle of the new vertex
+	 */
+	public int insertBefore(int handle, GridCellRiverVertex vertex)
+	{
+		return insertAfter(handle == NONE ? last : previous[check(handle)], vertex);
+	}
+
+	/**
+	 * Adds count vertices before the given one, with their coordinates and fluxes taken from the arrays.
+	 * The arrays grow at most once and the values are copied in bulk.
+	 * @param handle the vertex after the new ones, {@link #NONE} to add the vertices at the end
+	 * @param xs
+	 * @param ys
+	 * @param zs
+	 * @param fluxes
+	 * @param count
+	 * @return the handle of the first new vertex, the others follow in ascending order
+	 */
+	public int insertBefore(int handle, double[] xs, double[] ys, double[] zs, double[] fluxes, int count)
+	{
+		int before = handle == NONE ? last : previous[check(handle)];
+		if(count == 0)
+			return NONE;
+
+		ensureCapacity(size + count);
+		int result = size;
+		System.arraycopy(xs, 0, x, result, count);
+		System.arraycopy(ys, 0, y, result, count);
+		System.arraycopy(zs, 0, z, result, count);
+		System.arraycopy(fluxes, 0, flux, result, count);
+		size += count;
+		for(int i=result; i<result+count-1; i++)
+		{
+			next[i] = i + 1;
+			previous[i + 1] = i;
+		}
+		int end = result + count - 1;
+		previous[result] = before;
+		next[end] = handle;
+		if(before == NONE)
+			first = result;
+		else
+			next[before] = result;
+		if(handle == NONE)
+			last = end;
+		else
+			previous[handle] = end;
+		return result;
+	}
+
+	/**
+	 * Stores the values of a new vertex without linking it.
+	 */
+	private int add(double vx, double vy, double vz, double vflux)
+	{
+		ensureCapacity(size + 1);
+		x[size] = vx;
+		y[size] = vy;
+		z[size] = vz;
+		flux[size] = vflux;
+		return size++;
+	}
+
+	/**
+	 * Links the vertex between the two given ones.
+	 */
+	private void link(int before, int handle, int after)
+	{
+		previous[handle] = before;
+		next[handle] = after;
+		if(before == NONE)
+			first = handle;
+		else
+			next[before] = handle;
+		if(after == NONE)
+			last = handle;
+		else
+			previous[after] = handle;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if(capacity <= x.length)
+			return;
+
+		int newCapacity = Math.max(capacity, 2 * x.length);
+		x = Arrays.copyOf(x, newCapacity);
+		y = Arrays.copyOf(y, newCapacity);
+		z = Arrays.copyOf(z, newCapacity);
+		flux = Arrays.copyOf(flux, newCapacity);
+		next = Arrays.copyOf(next, newCapacity);
+		previous = Arrays.copyOf(previous, newCapacity);
+	}
+
+	private int check(int handle)
+	{
+		if(handle < 0 || handle >= size)
+			throw new IllegalArgumentException("Handle " + handle + " is not a vertex of this polyline.");
+		return handle;
+	}
+
+	/**
+	 * Creates a read-only view of this polyline. The view always shows the current vertices, adding vertices to it throws an UnsupportedOperationException.
+	 * @return the view
+	 */
+	public RiverPolyline readOnly()
+	{
+		return new ReadOnlyPolyline(this);
+	}
+
+	private static class ReadOnlyPolyline extends RiverPolyline
+	{
+		private final RiverPolyline source;
+
+		public ReadOnlyPolyline(RiverPolyline source)
+		{
+			super(0);
+			this.source = source;
+		}
+
+		@Override
+		public int size()
+		{
+			return source.size();
+		}
+
+		@Override
+		public int first()
+		{
+			return source.first();
+		}
+
+		@Override
+		public int last()
+		{
+			return source.last();
+		}
+
+		@Override
+		public int next(int handle)
+		{
+			return source.next(handle);
+		}
+
+		@Override
+		public int previous(int handle)
+		{
+			return source.previous(handle);
+		}
+
+		@Override
+		public double x(int handle)
+		{
+			return source.x(handle);
+		}
+
+		@Override
+		public double y(int handle)
+		{
+			return source.y(handle);
+		}
+
+		@Override
+		public double z(int handle)
+		{
+			return source.z(handle);
+		}
+
+		@Override
+		public double flux(int handle)
+		{
+			return source.flux(handle);
+		}
+
+		@Override
+		public GridCellRiverVertex vertex(int handle)
+		{
+			return source.vertex(handle);
+		}
+
+		@Override
+		public int find(GridCellRiverVertex vertex)
+		{
+			return source.find(vertex);
+		}
+
+		@Override
+		public boolean matches(int handle, GridCellRiverVertex vertex)
+		{
+			return source.matches(handle, vertex);
+		}
+
+		@Override
+		public RiverPolyline readOnly()
+		{
+			return this;
+		}
+
+		// the view is read-only
+
+		@Override
+		public int append(GridCellRiverVertex vertex)
+		{
+			throw new UnsupportedOperationException("The polyline is a read-only view.");
+		}
+
+		@Override
+		public int insertAfter(int handle, GridCellRiverVertex vertex)
+		{
+			throw new UnsupportedOperationException("The polyline is a read-only view.");
+		}
+
+		@Override
+		public int insertBefore(int handle, GridCellRiverVertex vertex)
+		{
+			throw new UnsupportedOperationException("The polyline is a read-only view.");
+		}
+
+		@Override
+		public int insertBefore(int handle, double[] xs, double[] ys, double[] zs, double[] fluxes, int count)
+		{
+			throw new UnsupportedOperationException("The polyline is a read-only view.");
+		}
+	}
+}
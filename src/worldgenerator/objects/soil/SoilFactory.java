@@ -4,6 +4,7 @@
 package worldgenerator.objects.soil;
 
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridType;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
@@ -16,22 +17,25 @@ public class SoilFactory
 {
 	/**
 	 * Computes a soil quality map from given height and water data.
+	 * The heightmap is read cell by cell and not copied. The result is a DoubleGrid2D of the same size, so the map must fit into one array.
 	 * @param heightmap
 	 * @param watersheds
 	 * @return
 	 */
-	public static ComparableGrid2D<Double> computeQualityMap(ComparableGrid2D<Double> heightmap, ComparableGrid2D<Integer> watersheds, GridAttributes attributes)
+	public static DoubleGrid2D computeQualityMap(ComparableGrid2D<Double> heightmap, ComparableGrid2D<Integer> watersheds, GridAttributes attributes)
 	{
-		ComparableGrid2D<Double> qualityMap = GridFactory.create2D(GridType.DOUBLE_2D, attributes);
+		DoubleGrid2D qualityMap = GridFactory.create2D(GridType.DOUBLE_2D, attributes);
+		// primitive grids are read directly, without creating cells
+		DoubleGrid2D heights = heightmap instanceof DoubleGrid2D ? (DoubleGrid2D) heightmap : null;
 		
 		for(int r=0; r < qualityMap.rows(); r++)
 		{
 			for(int c=0; c < qualityMap.cols(); c++)
 			{
-				double h = heightmap.getDataAt(r, c).getData();
+				double h = heights != null ? heights.get(r, c) : heightmap.getDataAt(r, c).getData();
 				// TODO: change arbitrary formula for soil quality
 				double val = Math.max(-Math.sqrt(Math.abs(h)) + 1, 0);
-				qualityMap.setDataAt(r, c, val);
+				qualityMap.set(r, c, val);
 			}
 		}
 		
@@ -6,11 +6,14 @@ package worldgenerator.objects.terrain;
 import java.util.Random;
 
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.Grid2D;
 import worldgenerator.util.grid.Grid2DLayer;
 import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.GridStatistics;
 import worldgenerator.util.grid.ISubdivisionAlgorithm;
+import worldgenerator.util.grid.StencilPipeline;
 import worldgenerator.util.grid.Grid2D.Grid2DIterator;
 import worldgenerator.util.noise.PerlinNoiseMap;
 
@@ -83,8 +86,9 @@ public class HeightSubdivisionAlgorithm implements ISubdivisionAlgorithm<Double>
 				
 				// pertube based on height
 				perlinMap.Perturb2(8.0f, 16.0f, 32.0f);
-				perlinMap.Smoothen();
-				perlinMap.Erode2(5.0f, 3.0f);
+				perlinMap.Apply(new StencilPipeline()
+						.then(StencilPipeline.smooth())
+						.then(StencilPipeline.thermalErosion(0.0, 5.0 / perlinMap.Size, 1.0 / 32, 3.0)));
 				// copy the data back to the grid, cube it in the process
 				currentLayerGridCell.getData().iterate(new Grid2DIterator<Double>()
 				{
@@ -113,8 +117,9 @@ public class HeightSubdivisionAlgorithm implements ISubdivisionAlgorithm<Double>
 		
 		// compute rescaling factors
 		final GridCell<Double> newMinimumInverted = new GridCellDouble(-maxmin.getDataAt(0, MIN_INDEX).getData()); // 
-		final GridCell<Double> oldMinimum = new GridCellDouble(getMinimum(oldLayer));
-		double diffOld = (getMaximum(oldLayer)-oldMinimum.getData());
+		GridStatistics oldStatistics = getStatistics(oldLayer);
+		final GridCell<Double> oldMinimum = new GridCellDouble(oldStatistics.getMinimum());
+		double diffOld = (oldStatistics.getMaximum()-oldMinimum.getData());
 		double diffNew = (maxmin.getDataAt(0, MAX_INDEX).getData() - maxmin.getDataAt(0, MIN_INDEX).getData());
 		final GridCellDouble rescaleFactor = new GridCellDouble( diffOld / diffNew );
 		
@@ -124,6 +129,12 @@ public class HeightSubdivisionAlgorithm implements ISubdivisionAlgorithm<Double>
 			@Override
 			public void step(int row, int col, GridCell<Grid2D<Double>> gridCell, Grid2D<Grid2D<Double>> grid2d)
 			{
+				if(gridCell.getData() instanceof DoubleGrid2D)
+				{
+					// all three steps below in one pass
+					((DoubleGrid2D) gridCell.getData()).affine(newMinimumInverted.getData(), rescaleFactor.getData(), oldMinimum.getData());
+					return;
+				}
 				// move to zero base
 				gridCell.getData().add(newMinimumInverted);
 				// scale to new max/min
@@ -136,38 +147,20 @@ public class HeightSubdivisionAlgorithm implements ISubdivisionAlgorithm<Double>
 		return result;
 	}
 
-	private Double getMaximum(Grid2DLayer<Double> oldLayer)
-	{
-		double result = Double.MIN_VALUE;
-		
-		for(int row=0; row < oldLayer.rows(); row++)
-		{
-			for(int col=0; col < oldLayer.cols(); col++)
-			{
-				GridCell<Double> max = ((ComparableGrid2D<Double>)oldLayer.getDataAt(row, col).getData()).getMaximum();
-				if(result < max.getData())
-				{
-					result = max.getData();
-				}
-			}
-		}
-		
-		return result;
-	}
-
-	private Double getMinimum(Grid2DLayer<Double> oldLayer)
+	/**
+	 * Merges the cached statistics of all grids in the layer, so each grid is scanned at most once.
+	 * @param oldLayer
+	 * @return the statistics of all values in the layer
+	 */
+	private GridStatistics getStatistics(Grid2DLayer<Double> oldLayer)
 	{
-		double result = Double.MAX_VALUE;
+		GridStatistics result = GridStatistics.constant(0.0, 0);
 		
 		for(int row=0; row < oldLayer.rows(); row++)
 		{
 			for(int col=0; col < oldLayer.cols(); col++)
 			{
-				GridCell<Double> min = ((ComparableGrid2D<Double>)oldLayer.getDataAt(row, col).getData()).getMinimum();
-				if(result > min.getData())
-				{
-					result = min.getData();
-				}
+				result = GridStatistics.merge(result, ((ComparableGrid2D<Double>)oldLayer.getDataAt(row, col).getData()).getStatistics());
 			}
 		}
 		
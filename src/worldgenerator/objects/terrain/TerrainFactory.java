@@ -12,19 +12,23 @@ import worldgenerator.objects.river.RiverFactory;
 import worldgenerator.objects.soil.SoilFactory;
 import worldgenerator.util.factory.IWorldObjectFactory;
 import worldgenerator.util.grid.ComparableGrid2D;
-import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.DoubleGrid2D;
 import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.HydraulicErosion;
+import worldgenerator.util.grid.IntGrid2D;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.HydraulicErosion.ErosionAttributes;
 
 public class TerrainFactory implements IWorldObjectFactory<Terrain>
 {
 	public static Terrain create(GridAttributes defaultAttributes, ForestAttributes forestAttributes)
 	{
 		// heightmap
-		ComparableGrid2D<Double> heightmap = GridFactory.create2D(GridType.PERLIN_NOISE_2D, defaultAttributes);
-		heightmap.add(new GridCellDouble(0.5));
-		heightmap.mult(new GridCellDouble(1.0/1.5)); // rescale to [-1/3, 1.0]
+		DoubleGrid2D heightmap = GridFactory.create2D(GridType.PERLIN_NOISE_2D, defaultAttributes);
+		heightmap.affine(0.5, 1.0/1.5, 0.0); // rescale to [-1/3, 1.0]
+		// carve valleys with one droplet per eight cells
+		HydraulicErosion.erode(heightmap, new ErosionAttributes(defaultAttributes.seed+4, heightmap.rows() * heightmap.cols() / 8));
 		
 		// resources
 		Map<ResourceType, ComparableGrid2D<Double>> resources = new HashMap<ResourceType, ComparableGrid2D<Double>>();
@@ -32,23 +36,23 @@ public class TerrainFactory implements IWorldObjectFactory<Terrain>
 		// Gold
 		GridAttributes goldAttributes = new GridAttributes(defaultAttributes.height, defaultAttributes.width, defaultAttributes.seed+1);
 		goldAttributes.factor = 0.1;
-		ComparableGrid2D<Double> goldMap = GridFactory.create2D(GridType.SPARSE_PERLIN_NOISE_2D, goldAttributes);
+		DoubleGrid2D goldMap = GridFactory.create2D(GridType.SPARSE_PERLIN_NOISE_2D, goldAttributes);
 		resources.put(ResourceType.GOLD, goldMap);
 		
 		// Coal
 		GridAttributes coalAttributes = new GridAttributes(defaultAttributes.height, defaultAttributes.width, defaultAttributes.seed+2);
 		coalAttributes.factor = 0.8;
-		ComparableGrid2D<Double> coalMap = GridFactory.create2D(GridType.SPARSE_PERLIN_NOISE_2D, coalAttributes);
+		DoubleGrid2D coalMap = GridFactory.create2D(GridType.SPARSE_PERLIN_NOISE_2D, coalAttributes);
 		resources.put(ResourceType.COAL, coalMap);
 		
-		// watershed and rivers
-		GridAttributes waterAttributes = new GridAttributes(defaultAttributes.height, defaultAttributes.width, defaultAttributes.seed+3);
-		ComparableGrid2D<Integer> watersheds = RiverFactory.createWatersheds(heightmap, waterAttributes);
+		// watershed and rivers, the depressions are filled once for both
+		IntGrid2D flowDirections = RiverFactory.createFlowDirections(heightmap);
+		ComparableGrid2D<Integer> watersheds = RiverFactory.createWatersheds(flowDirections);
 		
-		Collection<River> rivers = RiverFactory.createMultiple(heightmap, 0);
+		Collection<River> rivers = RiverFactory.createMultiple(heightmap, flowDirections, 10);
 		
 		// soil quality
-		ComparableGrid2D<Double> soilQuality = SoilFactory.computeQualityMap(heightmap, watersheds, defaultAttributes);
+		DoubleGrid2D soilQuality = SoilFactory.computeQualityMap(heightmap, watersheds, defaultAttributes);
 		
 		// forests
 		Map<Integer, ComparableGrid2D<Double>> forests = ForestFactory.create(heightmap, soilQuality, forestAttributes);
@@ -0,0 +1,348 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import worldgenerator.util.grid.CellularAutomata.Neighbourhood;
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * A cellular automata with two states per cell, stored as one bit per cell in 64 bit words.
+ * Bit i of word w of a row is the cell in column 64*w + i, cells outside of the grid are 0.
+ * <br>
+ * The rule gets the neighbours of 64 cells at once: for each direction a word whose bit i is the neighbour of the cell of bit i,
+ * so a rule of a few bitwise operations computes 64 cells. The steps use two buffers and bands of rows are computed in parallel,
+ * so the result does not depend on the number of threads.
+ * <br>
+ * Example, Conway's game of life: new BinaryCellularAutomata(rows, cols, BinaryCellularAutomata.totalistic(Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3));
+ * <br>
+ * {@link CellularAutomata#totalistic(IntGrid2D, int, int, Neighbourhood, int, int)} runs totalistic rules on this automata
+ * if the grid only holds two values. Used directly, grids are converted with {@link #valueOf(IntGrid2D, int, BinaryRule)}
+ * before and {@link #result(int, int)} after the steps.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class BinaryCellularAutomata implements ICellularAutomata
+{
+	/**
+	 * Computes the new states of 64 cells from the words of their neighbours.
+	 * The rule is called from several threads at once, so it must not change any shared state.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public interface BinaryRule
+	{
+		/**
+		 * Bit i of each argument is the state of the respective neighbour of cell i.
+		 * @return the new states of the cells
+		 */
+		public long apply(long northWest, long north, long northEast, long west, long center, long east, long southWest, long south, long southEast);
+	}
+
+	private final int rows;
+	private final int cols;
+	/**
+	 * Number of words per row.
+	 */
+	private final int words;
+	private final BinaryRule rule;
+	private long[] current;
+	private long[] next;
+	private int stepCounter;
+	private boolean converged;
+	private volatile boolean changed;
+
+	/**
+	 * Creates an automata with all cells 0.
+	 * @param rows
+	 * @param cols
+	 * @param rule
+	 */
+	public BinaryCellularAutomata(int rows, int cols, BinaryRule rule)
+	{
+		if(rows < 0 || cols < 0)
+			throw new IllegalArgumentException("the size of the automata must not be negative, but was " + rows + "x" + cols + ".");
+
+		this.rows = rows;
+		this.cols = cols;
+		this.words = (cols + 63) / 64;
+		this.rule = rule;
+		this.current = new long[rows * words];
+		this.next = new long[rows * words];
+	}
+
+	/**
+	 * Creates an automata with the cells that have the given value in the grid set to 1.
+	 * @param grid
+	 * @param value
+	 * @param rule
+	 * @return the automata
+	 */
+	public static BinaryCellularAutomata valueOf(IntGrid2D grid, int value, BinaryRule rule)
+	{
+		BinaryCellularAutomata result = new BinaryCellularAutomata(grid.rows(), grid.cols(), rule);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				if(grid.get(r, c) == value)
+					result.set(r, c, true);
+			}
+		}
+		return result;
+	}
+
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int cols()
+	{
+		return cols;
+	}
+
+	/**
+	 * Returns the state of the cell. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return true if the cell is 1
+	 */
+	public boolean get(int row, int col)
+	{
+		return (current[row * words + (col >>> 6)] & (1L << col)) != 0;
+	}
+
+	/**
+	 * Sets the state of the cell.
+	 * If the indices are out of range, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param state
+	 */
+	public void set(int row, int col, boolean state)
+	{
+		if(row < 0 || col < 0 || row >= rows || col >= cols)
+			return;
+
+		if(state)
+			current[row * words + (col >>> 6)] |= 1L << col;
+		else
+			current[row * words + (col >>> 6)] &= ~(1L << col);
+		converged = false;
+	}
+
+	/**
+	 * @return the number of cells that are 1
+	 */
+	public long count()
+	{
+		long result = 0;
+		for(long word : current)
+		{
+			result += Long.bitCount(word);
+		}
+		return result;
+	}
+
+	@Override
+	public void step()
+	{
+		changed = false;
+		RowBandExecutor.execute(rows, words * 64, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				BinaryCellularAutomata.this.compute(firstRow, endRow);
+			}
+		});
+		long[] previous = current;
+		current = next;
+		next = previous;
+		converged = !changed;
+		stepCounter++;
+	}
+
+	private void compute(int firstRow, int endRow)
+	{
+		// the bits beyond the last column must stay 0
+		long lastMask = cols % 64 == 0 ? -1L : (1L << cols) - 1;
+		boolean bandChanged = false;
+		for(int r=firstRow; r<endRow; r++)
+		{
+			int row = r * words;
+			int above = r > 0 ? row - words : -1;
+			int below = r < rows - 1 ? row + words : -1;
+			for(int w=0; w<words; w++)
+			{
+				long north = above < 0 ? 0L : current[above + w];
+				long center = current[row + w];
+				long south = below < 0 ? 0L : current[below + w];
+
+				long result = rule.apply(
+						west(above, w), north, east(above, w),
+						west(row, w), center, east(row, w),
+						west(below, w), south, east(below, w));
+				if(w == words - 1)
+					result &= lastMask;
+				if(result != center)
+					bandChanged = true;
+				next[row + w] = result;
+			}
+		}
+		if(bandChanged)
+			changed = true;
+	}
+
+	/**
+	 * @return the word of the west neighbours of the cells in word w of the row starting at the given index, 0 if there is no such row
+	 */
+	private long west(int row, int w)
+	{
+		if(row < 0)
+			return 0L;
+		long result = current[row + w] << 1;
+		if(w > 0)
+			result |= current[row + w - 1] >>> 63;
+		return result;
+	}
+
+	/**
+	 * @return the word of the east neighbours of the cells in word w of the row starting at the given index, 0 if there is no such row
+	 */
+	private long east(int row, int w)
+	{
+		if(row < 0)
+			return 0L;
+		long result = current[row + w] >>> 1;
+		if(w < words - 1)
+			result |= current[row + w + 1] << 63;
+		return result;
+	}
+
+	/**
+	 * Progresses a given number of steps, or fewer if the automata converges before.
+	 * @param steps
+	 */
+	public void step(int steps)
+	{
+		for(int i=0; i<steps && !converged; i++)
+		{
+			step();
+		}
+	}
+
+	/**
+	 * @return the number of steps so far
+	 */
+	public int steps()
+	{
+		return stepCounter;
+	}
+
+	/**
+	 * @return true if the last step did not change any cell
+	 */
+	public boolean converged()
+	{
+		return converged;
+	}
+
+	/**
+	 * @param one value of the cells that are 1
+	 * @param zero value of the cells that are 0
+	 * @return a new grid with the states of the cells
+	 */
+	public IntGrid2D result(int one, int zero)
+	{
+		IntGrid2D result = new IntGrid2D(rows, cols, zero);
+		int[] values = result.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int w=0; w<words; w++)
+			{
+				long word = current[r * words + w];
+				// visit the set bits only
+				while(word != 0)
+				{
+					int bit = Long.numberOfTrailingZeros(word);
+					values[r * cols + w * 64 + bit] = one;
+					word &= word - 1;
+				}
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * A rule that only depends on the state of the cell and the number of its neighbours that are 1.
+	 * The neighbours are counted in parallel for all 64 cells of a word, in four words holding the bits of the counts.
+	 * @param neighbourhood
+	 * @param birth bit n is set if a cell that is 0 becomes 1 with n neighbours that are 1
+	 * @param survival bit n is set if a cell that is 1 stays 1 with n neighbours that are 1
+	 * @return the rule
+	 */
+	public static BinaryRule totalistic(final Neighbourhood neighbourhood, final int birth, final int survival)
+	{
+		if(birth >>> (neighbourhood.size() + 1) != 0 || survival >>> (neighbourhood.size() + 1) != 0)
+			throw new IllegalArgumentException("the counts must be at most " + neighbourhood.size() + ", but birth was " + Integer.toBinaryString(birth) + " and survival " + Integer.toBinaryString(survival) + ".");
+
+		final boolean moore = neighbourhood == Neighbourhood.MOORE;
+		return new BinaryRule()
+		{
+			@Override
+			public long apply(long northWest, long north, long northEast, long west, long center, long east, long southWest, long south, long southEast)
+			{
+				// bits 0 to 2 of the number of edge neighbours that are 1, from three half adders;
+				// at most one of the carries is set unless all four are 1
+				long half0 = north ^ west;
+				long half1 = east ^ south;
+				long carry0 = north & west;
+				long carry1 = east & south;
+				long sum0 = half0 ^ half1;
+				long sum1 = carry0 ^ carry1 ^ (half0 & half1);
+				long sum2 = carry0 & carry1;
+				long sum3 = 0L;
+				if(moore)
+				{
+					// the same for the corner neighbours
+					half0 = northWest ^ northEast;
+					half1 = southWest ^ southEast;
+					carry0 = northWest & northEast;
+					carry1 = southWest & southEast;
+					long corner0 = half0 ^ half1;
+					long corner1 = carry0 ^ carry1 ^ (half0 & half1);
+					long corner2 = carry0 & carry1;
+
+					// add both counts bit by bit
+					carry0 = sum0 & corner0;
+					sum0 ^= corner0;
+					carry1 = (sum1 & corner1) | ((sum1 ^ corner1) & carry0);
+					sum1 ^= corner1 ^ carry0;
+					sum3 = (sum2 & corner2) | ((sum2 ^ corner2) & carry1);
+					sum2 ^= corner2 ^ carry1;
+				}
+
+				long result = 0L;
+				for(int n=0; n<=neighbourhood.size(); n++)
+				{
+					long rule = 0L;
+					if(((birth >>> n) & 1) != 0)
+						rule |= ~center;
+					if(((survival >>> n) & 1) != 0)
+						rule |= center;
+					if(rule == 0)
+						continue;
+					// the cells with exactly n neighbours that are 1
+					long equal = ((n & 1) != 0 ? sum0 : ~sum0) & ((n & 2) != 0 ? sum1 : ~sum1)
+							& ((n & 4) != 0 ? sum2 : ~sum2) & ((n & 8) != 0 ? sum3 : ~sum3);
+					result |= equal & rule;
+				}
+				return result;
+			}
+		};
+	}
+}
@@ -3,7 +3,32 @@
  */
 package worldgenerator.util.grid;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import worldgenerator.util.grid.BinaryCellularAutomata.BinaryRule;
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
 /**
+ * A cellular automata on a grid. The step is either a {@link CAStep}, which gets the whole grid and changes it in place,
+ * or a {@link CARule}, which computes the new value of one cell from its neighbourhood.
+ * <br>
+ * Rules are evaluated with two buffers in {@link UpdateMode#DOUBLE_BUFFERED} mode: all cells read the values before the step
+ * and write into the other buffer, so the result does not depend on the order of the cells, and bands of rows are computed in parallel.
+ * {@link UpdateMode#IN_PLACE} keeps the semantics of the in-place steps: the cells are computed one after the other in scan order
+ * and see the new values of the cells before them.
+ * {@link UpdateMode#FRONTIER} gives the same result as double buffers, but after the first step it only evaluates the cells
+ * whose neighbourhood changed in the last step, so sparse automata cost about as much as the cells that change.
+ * <br>
+ * A rule automata has converged after a step in which no cell changed and no cell was kept active,
+ * further steps do not change it and {@link #step(int)} stops early.
+ * <br>
+ * Int and double grids are read and written in their value arrays, other grids are copied into an array of values.
+ * Totalistic rules with two states are created with {@link #totalistic(IntGrid2D, int, int, Neighbourhood, int, int)},
+ * which runs them on a {@link BinaryCellularAutomata} with one bit per cell if the grid only holds the two states.
+ *
  * @author Felix Dietrich
  *
  */
@@ -12,7 +37,36 @@ public class CellularAutomata<T extends Comparable<T>> implements ICellularAutom
 	private ComparableGrid2D<T> grid;
 	private int stepCounter;
 	private CAStep<T> stepFunction;
-	
+
+	private CARule<T> rule;
+	private Neighbourhood neighbourhood;
+	private UpdateMode mode;
+	/**
+	 * The values before and after the step of a rule, the same buffer in in-place mode.
+	 */
+	private Buffer<T> current;
+	private Buffer<T> next;
+	private boolean converged;
+	/**
+	 * Set by the bands of a step if a cell changed or was kept active.
+	 */
+	private volatile boolean changed;
+	/**
+	 * The sorted indices row*cols+col of the cells evaluated in the next frontier step, null for all cells.
+	 */
+	private int[] frontier;
+	private int frontierSize;
+	/**
+	 * One bit per cell, set while the next frontier is collected.
+	 */
+	private long[] scheduled;
+	/**
+	 * The bit-packed automata of a totalistic rule, null for all other automata.
+	 */
+	private BinaryCellularAutomata binary;
+	private int one;
+	private int zero;
+
 	/**
 	 * Represents a customizable step of a cellular automata.
 	 * @author Felix Dietrich
@@ -23,9 +77,227 @@ public class CellularAutomata<T extends Comparable<T>> implements ICellularAutom
 	{
 		public abstract ComparableGrid2D<R> work(ComparableGrid2D<R> grid);
 	}
-	
+
+	/**
+	 * Computes the new value of a cell from its neighbourhood.
+	 * In double buffered mode the rule is called from several threads at once, so it must not change any shared state.
+	 * <br>
+	 * If the cell and its neighbours do not change, the rule must return the same value again,
+	 * unless it calls {@link Neighbours#keepActive()}, for example if the value depends on the step.
+	 * Otherwise the frontier mode and the detection of convergence skip changes.
+	 * @author Felix Dietrich
+	 *
+	 * @param <R> data type of the grid cells used in the CA.
+	 */
+	public interface CARule<R extends Comparable<R>>
+	{
+		/**
+		 * @param cell the cell and its neighbours
+		 * @return the new value of the cell
+		 */
+		public R apply(Neighbours<R> cell);
+	}
+
+	/**
+	 * The cells around a cell, in scan order.
+	 */
+	public enum Neighbourhood
+	{
+		/**
+		 * The four cells sharing an edge with the cell.
+		 */
+		VON_NEUMANN(new int[]{ -1, 0, 0, 1 }, new int[]{ 0, -1, 1, 0 }),
+		/**
+		 * The eight cells sharing an edge or a corner with the cell.
+		 */
+		MOORE(new int[]{ -1, -1, -1, 0, 0, 1, 1, 1 }, new int[]{ -1, 0, 1, -1, 1, -1, 0, 1 });
+
+		private final int[] rowOffsets;
+		private final int[] colOffsets;
+
+		private Neighbourhood(int[] rowOffsets, int[] colOffsets)
+		{
+			this.rowOffsets = rowOffsets;
+			this.colOffsets = colOffsets;
+		}
+
+		/**
+		 * @return the number of neighbours
+		 */
+		public int size()
+		{
+			return rowOffsets.length;
+		}
+
+		/**
+		 * @param index
+		 * @return the row of the neighbour relative to the cell
+		 */
+		public int rowOffset(int index)
+		{
+			return rowOffsets[index];
+		}
+
+		/**
+		 * @param index
+		 * @return the column of the neighbour relative to the cell
+		 */
+		public int colOffset(int index)
+		{
+			return colOffsets[index];
+		}
+	}
+
+	/**
+	 * How the values written by a rule are stored.
+	 */
+	public enum UpdateMode
+	{
+		/**
+		 * All cells read the values before the step, the cells are computed in parallel.
+		 */
+		DOUBLE_BUFFERED,
+		/**
+		 * The cells are computed in scan order and read the new values of the cells before them, as the former in-place steps did.
+		 */
+		IN_PLACE,
+		/**
+		 * Like {@link #DOUBLE_BUFFERED}, but only the cells that changed in the last step, their neighbours and the cells
+		 * kept active are computed. Rules may only read the cell and its neighbourhood in this mode.
+		 */
+		FRONTIER
+	}
+
+	/**
+	 * Read access to a cell and its neighbours, given to {@link CARule#apply(Neighbours)}.
+	 * The object is reused for the next cell, rules must not keep it.
+	 * @author Felix Dietrich
+	 *
+	 * @param <R> data type of the grid cells used in the CA.
+	 */
+	public static class Neighbours<R extends Comparable<R>>
+	{
+		private final Buffer<R> values;
+		private final Neighbourhood neighbourhood;
+		private final int step;
+		private int row;
+		private int col;
+		private boolean active;
+
+		private Neighbours(Buffer<R> values, Neighbourhood neighbourhood, int step)
+		{
+			this.values = values;
+			this.neighbourhood = neighbourhood;
+			this.step = step;
+		}
+
+		private void moveTo(int row, int col)
+		{
+			this.row = row;
+			this.col = col;
+			this.active = false;
+		}
+
+		/**
+		 * Computes the cell again in the next step, even if it and its neighbours do not change.
+		 */
+		public void keepActive()
+		{
+			active = true;
+		}
+
+		public int row()
+		{
+			return row;
+		}
+
+		public int col()
+		{
+			return col;
+		}
+
+		/**
+		 * @return the number of steps before this one
+		 */
+		public int step()
+		{
+			return step;
+		}
+
+		/**
+		 * @return the value of the cell
+		 */
+		public R get()
+		{
+			return values.get(row, col);
+		}
+
+		/**
+		 * @param rowOffset
+		 * @param colOffset
+		 * @return the value of the cell at the given offset, null if it is outside of the grid
+		 */
+		public R get(int rowOffset, int colOffset)
+		{
+			int r = row + rowOffset;
+			int c = col + colOffset;
+			if(r < 0 || c < 0 || r >= values.rows || c >= values.cols)
+				return null;
+			return values.get(r, c);
+		}
+
+		/**
+		 * Reads numbers without creating objects for them.
+		 * @param rowOffset
+		 * @param colOffset
+		 * @return the value of the cell at the given offset, NaN if it is outside of the grid
+		 */
+		public double getDouble(int rowOffset, int colOffset)
+		{
+			int r = row + rowOffset;
+			int c = col + colOffset;
+			if(r < 0 || c < 0 || r >= values.rows || c >= values.cols)
+				return Double.NaN;
+			return values.getDouble(r, c);
+		}
+
+		/**
+		 * @return the neighbourhood of the automata
+		 */
+		public Neighbourhood neighbourhood()
+		{
+			return neighbourhood;
+		}
+
+		/**
+		 * @param index in [0, neighbourhood().size())
+		 * @return the value of the neighbour, null if it is outside of the grid
+		 */
+		public R neighbour(int index)
+		{
+			return get(neighbourhood.rowOffset(index), neighbourhood.colOffset(index));
+		}
+
+		/**
+		 * @param value
+		 * @return the number of neighbours with the given value
+		 */
+		public int count(R value)
+		{
+			int result = 0;
+			for(int i=0; i<neighbourhood.size(); i++)
+			{
+				R neighbour = neighbour(i);
+				if(neighbour != null && neighbour.compareTo(value) == 0)
+					result++;
+			}
+			return result;
+		}
+	}
+
 	/**
 	 * Initializes the automata with a copy of the initial data.
+	 * Primitive grids are copied on write, so the copy is only made if the initial data or the automata changes it.
 	 * @param initialData
 	 */
 	public CellularAutomata(ComparableGrid2D<T> initialData, CAStep<T> step)
@@ -35,28 +307,577 @@ public class CellularAutomata<T extends Comparable<T>> implements ICellularAutom
 		this.stepFunction = step;
 	}
 
+	/**
+	 * Initializes the automata with a copy of the initial data and a rule, which is evaluated with double buffers.
+	 * @param initialData
+	 * @param rule
+	 * @param neighbourhood the neighbours of a cell
+	 */
+	public CellularAutomata(ComparableGrid2D<T> initialData, CARule<T> rule, Neighbourhood neighbourhood)
+	{
+		this(initialData, rule, neighbourhood, UpdateMode.DOUBLE_BUFFERED);
+	}
+
+	/**
+	 * Initializes the automata with a copy of the initial data and a rule.
+	 * @param initialData
+	 * @param rule
+	 * @param neighbourhood the neighbours of a cell
+	 * @param mode
+	 */
+	public CellularAutomata(ComparableGrid2D<T> initialData, CARule<T> rule, Neighbourhood neighbourhood, UpdateMode mode)
+	{
+		this.stepCounter = 0;
+		this.rule = rule;
+		this.neighbourhood = neighbourhood;
+		this.mode = mode;
+		this.current = Buffer.of(initialData.clone());
+		this.next = mode == UpdateMode.IN_PLACE ? current : Buffer.of(initialData.clone());
+		if(mode == UpdateMode.FRONTIER)
+			this.scheduled = new long[(current.rows * current.cols + 63) / 64];
+	}
+
+	/**
+	 * Initializes the automata with the bit-packed automata of a totalistic rule.
+	 */
+	private CellularAutomata(BinaryCellularAutomata binary, int one, int zero)
+	{
+		this.stepCounter = 0;
+		this.binary = binary;
+		this.one = one;
+		this.zero = zero;
+	}
+
+	/**
+	 * Creates an automata for a rule that only depends on whether a cell is one and on the number of its neighbours that are one.
+	 * If the grid only holds the values one and zero, the automata runs on a {@link BinaryCellularAutomata} with one bit per cell
+	 * and its result only holds these values again.
+	 * Otherwise it runs on a double buffered rule with the same result, where the cells that are not one count as zero
+	 * and keep their value unless they become one.
+	 * @param initialData
+	 * @param one value of the cells that are 1
+	 * @param zero value of the cells that are 0 and of the cells that are no longer 1
+	 * @param neighbourhood the neighbours of a cell
+	 * @param birth bit n is set if a cell that is not one becomes one with n neighbours that are one
+	 * @param survival bit n is set if a cell that is one stays one with n neighbours that are one
+	 * @return the automata
+	 */
+	public static CellularAutomata<Integer> totalistic(IntGrid2D initialData, final int one, final int zero, Neighbourhood neighbourhood, final int birth, final int survival)
+	{
+		if(one == zero)
+			throw new IllegalArgumentException("the two states must differ, but both were " + one + ".");
+		// checks the counts for both backends
+		BinaryRule binaryRule = BinaryCellularAutomata.totalistic(neighbourhood, birth, survival);
+
+		boolean twoStates = true;
+		for(int r=0; r<initialData.rows() && twoStates; r++)
+		{
+			for(int c=0; c<initialData.cols(); c++)
+			{
+				int value = initialData.get(r, c);
+				if(value != one && value != zero)
+				{
+					twoStates = false;
+					break;
+				}
+			}
+		}
+		if(twoStates)
+			return new CellularAutomata<Integer>(BinaryCellularAutomata.valueOf(initialData, one, binaryRule), one, zero);
+
+		return new CellularAutomata<Integer>(initialData, new CARule<Integer>()
+		{
+			@Override
+			public Integer apply(Neighbours<Integer> cell)
+			{
+				int count = cell.count(one);
+				Integer value = cell.get();
+				if(value == one)
+					return ((survival >>> count) & 1) != 0 ? one : zero;
+				return ((birth >>> count) & 1) != 0 ? one : value;
+			}
+		}, neighbourhood);
+	}
+
 	@Override
 	public void step()
 	{
-		grid = stepFunction.work(grid);
+		if(binary != null)
+		{
+			binary.step();
+			converged = binary.converged();
+		}
+		else if(stepFunction != null)
+		{
+			grid = stepFunction.work(grid);
+		}
+		else if(mode == UpdateMode.FRONTIER)
+		{
+			stepFrontier();
+		}
+		else if(mode == UpdateMode.IN_PLACE)
+		{
+			changed = false;
+			current.prepare();
+			compute(0, current.rows, current);
+			current.written();
+			converged = !changed;
+		}
+		else
+		{
+			changed = false;
+			final Buffer<T> target = next;
+			target.prepare();
+			RowBandExecutor.execute(current.rows, current.cols, new RowBand()
+			{
+				@Override
+				public void compute(int firstRow, int endRow)
+				{
+					CellularAutomata.this.compute(firstRow, endRow, target);
+				}
+			});
+			target.written();
+			next = current;
+			current = target;
+			converged = !changed;
+		}
 		this.stepCounter++;
 	}
-	
+
+	/**
+	 * Applies the rule to the rows firstRow, ..., endRow-1 of the current values.
+	 */
+	private void compute(int firstRow, int endRow, Buffer<T> target)
+	{
+		Neighbours<T> cell = new Neighbours<T>(current, neighbourhood, stepCounter);
+		boolean bandChanged = false;
+		for(int r=firstRow; r<endRow; r++)
+		{
+			for(int c=0; c<current.cols; c++)
+			{
+				cell.moveTo(r, c);
+				T value = rule.apply(cell);
+				// compare before writing, the target is the current buffer in in-place mode
+				if(!bandChanged && (cell.active || value.compareTo(current.get(r, c)) != 0))
+					bandChanged = true;
+				target.set(r, c, value);
+			}
+		}
+		if(bandChanged)
+			changed = true;
+	}
+
 	/**
-	 * Progresses a given number of steps.
+	 * Computes the cells of the frontier into the next buffer in parallel, then copies the changed ones
+	 * into the current buffer and collects the next frontier.
+	 */
+	private void stepFrontier()
+	{
+		final int cols = current.cols;
+		final int count = frontier == null ? current.rows * cols : frontierSize;
+		final int[] cells = frontier;
+		final Buffer<T> target = next;
+		final List<IntList> activeCells = Collections.synchronizedList(new ArrayList<IntList>());
+
+		target.prepare();
+		RowBandExecutor.execute(count, neighbourhood.size() + 1, new RowBand()
+		{
+			@Override
+			public void compute(int first, int end)
+			{
+				Neighbours<T> cell = new Neighbours<T>(current, neighbourhood, stepCounter);
+				IntList active = new IntList();
+				for(int i=first; i<end; i++)
+				{
+					int index = cells == null ? i : cells[i];
+					int r = index / cols;
+					cell.moveTo(r, index - r * cols);
+					target.set(r, index - r * cols, rule.apply(cell));
+					if(cell.active)
+						active.add(index);
+				}
+				if(active.size > 0)
+					activeCells.add(active);
+			}
+		});
+
+		IntList nextFrontier = new IntList();
+		boolean written = false;
+		current.prepare();
+		for(int i=0; i<count; i++)
+		{
+			int index = cells == null ? i : cells[i];
+			if(current.same(target, index))
+				continue;
+
+			current.copy(target, index);
+			written = true;
+			int r = index / cols;
+			int c = index - r * cols;
+			schedule(index, nextFrontier);
+			for(int n=0; n<neighbourhood.size(); n++)
+			{
+				int neighbourRow = r + neighbourhood.rowOffset(n);
+				int neighbourCol = c + neighbourhood.colOffset(n);
+				if(neighbourRow >= 0 && neighbourCol >= 0 && neighbourRow < current.rows && neighbourCol < cols)
+					schedule(neighbourRow * cols + neighbourCol, nextFrontier);
+			}
+		}
+		for(IntList active : activeCells)
+		{
+			for(int i=0; i<active.size; i++)
+			{
+				schedule(active.values[i], nextFrontier);
+			}
+		}
+		if(written)
+			current.written();
+
+		// clear the marks and sort the cells for the memory access of the next step
+		for(int i=0; i<nextFrontier.size; i++)
+		{
+			scheduled[nextFrontier.values[i] >>> 6] = 0L;
+		}
+		Arrays.sort(nextFrontier.values, 0, nextFrontier.size);
+		frontier = nextFrontier.values;
+		frontierSize = nextFrontier.size;
+		converged = frontierSize == 0;
+	}
+
+	private void schedule(int index, IntList cells)
+	{
+		long bit = 1L << index;
+		if((scheduled[index >>> 6] & bit) != 0)
+			return;
+		scheduled[index >>> 6] |= bit;
+		cells.add(index);
+	}
+
+	/**
+	 * Progresses a given number of steps, or fewer if the automata converges before.
 	 * @param steps
 	 */
 	public void step(int steps)
 	{
-		for(int i=0; i<steps; i++)
+		for(int i=0; i<steps && !converged; i++)
 		{
 			step();
 		}
 	}
 
+	/**
+	 * Automata with a {@link CAStep} never converge.
+	 * @return true if the last step did not change any cell and no cell was kept active
+	 */
+	public boolean converged()
+	{
+		return converged;
+	}
+
+	/**
+	 * @return the number of cells computed in the next step
+	 */
+	public int frontierSize()
+	{
+		if(binary != null)
+			return binary.rows() * binary.cols();
+		if(mode != UpdateMode.FRONTIER || frontier == null)
+			return current == null ? grid.rows() * grid.cols() : current.rows * current.cols;
+		return frontierSize;
+	}
+
+	/**
+	 * @return the number of steps so far
+	 */
+	public int steps()
+	{
+		return stepCounter;
+	}
+
+	/**
+	 * The grid of a rule is a copy, further steps do not change it. The copy of an int or double grid shares its values until one of them is changed.
+	 * @return the current values
+	 */
+	@SuppressWarnings("unchecked")
 	public ComparableGrid2D<T> result()
 	{
-		return grid;
+		if(binary != null)
+			return (ComparableGrid2D<T>) (ComparableGrid2D<?>) binary.result(one, zero);
+		if(stepFunction != null)
+			return grid;
+		return current.grid();
+	}
+
+	/**
+	 * The values of a grid, read and written without bounds checks and without {@link ComparableGrid2D#modified()} for each cell.
+	 */
+	private static abstract class Buffer<R extends Comparable<R>>
+	{
+		protected final int rows;
+		protected final int cols;
+
+		protected Buffer(int rows, int cols)
+		{
+			this.rows = rows;
+			this.cols = cols;
+		}
+
+		@SuppressWarnings("unchecked")
+		public static <R extends Comparable<R>> Buffer<R> of(ComparableGrid2D<R> grid)
+		{
+			if(grid instanceof IntGrid2D)
+				return (Buffer<R>) new IntBuffer((IntGrid2D) grid);
+			if(grid instanceof DoubleGrid2D)
+				return (Buffer<R>) new DoubleBuffer((DoubleGrid2D) grid);
+			return new ObjectBuffer<R>(grid);
+		}
+
+		public abstract R get(int row, int col);
+
+		public abstract double getDouble(int row, int col);
+
+		public abstract void set(int row, int col, R value);
+
+		/**
+		 * @return true if the cell with the given index row*cols+col has the same value in both buffers
+		 */
+		public abstract boolean same(Buffer<R> other, int index);
+
+		/**
+		 * Copies the value of the cell with the given index from the other buffer.
+		 */
+		public abstract void copy(Buffer<R> other, int index);
+
+		/**
+		 * Called before the values are written.
+		 */
+		public abstract void prepare();
+
+		/**
+		 * Called after the values are written.
+		 */
+		public abstract void written();
+
+		/**
+		 * @return a grid with the values, which does not change with the buffer
+		 */
+		public abstract ComparableGrid2D<R> grid();
+	}
+
+	private static class IntBuffer extends Buffer<Integer>
+	{
+		private final IntGrid2D grid;
+		private int[] values;
+
+		public IntBuffer(IntGrid2D grid)
+		{
+			super(grid.rows(), grid.cols());
+			this.grid = grid;
+			this.values = grid.values;
+		}
+
+		@Override
+		public Integer get(int row, int col)
+		{
+			return values[row * cols + col];
+		}
+
+		@Override
+		public double getDouble(int row, int col)
+		{
+			return values[row * cols + col];
+		}
+
+		@Override
+		public void set(int row, int col, Integer value)
+		{
+			values[row * cols + col] = value;
+		}
+
+		@Override
+		public boolean same(Buffer<Integer> other, int index)
+		{
+			return values[index] == ((IntBuffer) other).values[index];
+		}
+
+		@Override
+		public void copy(Buffer<Integer> other, int index)
+		{
+			values[index] = ((IntBuffer) other).values[index];
+		}
+
+		@Override
+		public void prepare()
+		{
+			values = grid.writableValues();
+		}
+
+		@Override
+		public void written()
+		{
+			grid.modified();
+		}
+
+		@Override
+		public ComparableGrid2D<Integer> grid()
+		{
+			return grid.clone();
+		}
+	}
+
+	private static class DoubleBuffer extends Buffer<Double>
+	{
+		private final DoubleGrid2D grid;
+		private double[] values;
+
+		public DoubleBuffer(DoubleGrid2D grid)
+		{
+			super(grid.rows(), grid.cols());
+			this.grid = grid;
+			this.values = grid.values;
+		}
+
+		@Override
+		public Double get(int row, int col)
+		{
+			return values[row * cols + col];
+		}
+
+		@Override
+		public double getDouble(int row, int col)
+		{
+			return values[row * cols + col];
+		}
+
+		@Override
+		public void set(int row, int col, Double value)
+		{
+			values[row * cols + col] = value;
+		}
+
+		@Override
+		public boolean same(Buffer<Double> other, int index)
+		{
+			return Double.compare(values[index], ((DoubleBuffer) other).values[index]) == 0;
+		}
+
+		@Override
+		public void copy(Buffer<Double> other, int index)
+		{
+			values[index] = ((DoubleBuffer) other).values[index];
+		}
+
+		@Override
+		public void prepare()
+		{
+			values = grid.writableValues();
+		}
+
+		@Override
+		public void written()
+		{
+			grid.modified();
+		}
+
+		@Override
+		public ComparableGrid2D<Double> grid()
+		{
+			return grid.clone();
+		}
 	}
 
+	/**
+	 * Values of any other grid, which are written back into a copy of the grid when it is requested.
+	 */
+	private static class ObjectBuffer<R extends Comparable<R>> extends Buffer<R>
+	{
+		private final ComparableGrid2D<R> template;
+		private final Object[] values;
+
+		public ObjectBuffer(ComparableGrid2D<R> grid)
+		{
+			super(grid.rows(), grid.cols());
+			this.template = grid;
+			this.values = new Object[rows * cols];
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					values[r * cols + c] = grid.getDataAt(r, c).getData();
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public R get(int row, int col)
+		{
+			return (R) values[row * cols + col];
+		}
+
+		@Override
+		public double getDouble(int row, int col)
+		{
+			return ((Number) values[row * cols + col]).doubleValue();
+		}
+
+		@Override
+		public void set(int row, int col, R value)
+		{
+			values[row * cols + col] = value;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean same(Buffer<R> other, int index)
+		{
+			return ((R) values[index]).compareTo((R) ((ObjectBuffer<R>) other).values[index]) == 0;
+		}
+
+		@Override
+		public void copy(Buffer<R> other, int index)
+		{
+			values[index] = ((ObjectBuffer<R>) other).values[index];
+		}
+
+		@Override
+		public void prepare()
+		{
+		}
+
+		@Override
+		public void written()
+		{
+		}
+
+		@Override
+		public ComparableGrid2D<R> grid()
+		{
+			ComparableGrid2D<R> result = template.clone();
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					result.setDataAt(r, c, get(r, c));
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A growing list of cell indices.
+	 */
+	private static class IntList
+	{
+		private int[] values = new int[16];
+		private int size;
+
+		public void add(int value)
+		{
+			if(size == values.length)
+				values = Arrays.copyOf(values, 2 * size);
+			values[size++] = value;
+		}
+	}
 }
@@ -9,26 +9,154 @@ package worldgenerator.util.grid;
  */
 public class ComparableGrid2D<T extends Comparable<T>> extends Grid2D<T> {
 
+	/**
+	 * Maximum and minimum cell, only valid if rangeValid is true.
+	 */
 	protected GridCellComparable<T> maximum;
 	protected GridCellComparable<T> minimum;
+	private boolean rangeValid;
+	/**
+	 * Cached statistics and histogram, null until they are requested after the last change.
+	 */
+	protected GridStatistics statistics;
+	private int[] histogram;
+	/**
+	 * Counts the calls of {@link #modified()}, so that views can detect changes of the grid they show.
+	 */
+	protected int modifications;
 
 	public ComparableGrid2D(int rows, int cols, GridCell<T> fillTemplate)
 	{
 		super(rows, cols, fillTemplate);
 		
-		maximum = null;
-		minimum = null;
+		modified();
+	}
+
+	/**
+	 * Creates a grid without allocating the cell array, see {@link Grid2D#Grid2D(GridCell)}.
+	 * @param fillTemplate
+	 */
+	protected ComparableGrid2D(GridCell<T> fillTemplate)
+	{
+		super(fillTemplate);
+		
+		modified();
 	}
 
+	/**
+	 * The maximum is computed when it is requested after a change of the grid, not on every write.
+	 * @return the cell with the largest value
+	 */
 	public GridCellComparable<T> getMaximum()
 	{
+		validateCache();
+		if(!rangeValid)
+			updateRange();
 		return this.maximum;
 	}
 
+	/**
+	 * The minimum is computed when it is requested after a change of the grid, not on every write.
+	 * @return the cell with the smallest value
+	 */
 	public GridCellComparable<T> getMinimum()
 	{
+		validateCache();
+		if(!rangeValid)
+			updateRange();
 		return this.minimum;
 	}
+
+	/**
+	 * Returns minimum, maximum, mean and variance of all values, which must be numbers.
+	 * They are computed in one pass when they are requested and cached until the grid is changed.
+	 * @return the statistics of this grid
+	 */
+	public GridStatistics getStatistics()
+	{
+		validateCache();
+		if(statistics == null)
+			statistics = computeStatistics();
+		return statistics;
+	}
+
+	/**
+	 * Counts the values in bins of equal width between minimum and maximum, the maximum is counted in the last bin.
+	 * The histogram is cached until the grid is changed.
+	 * @param bins number of bins, must be positive
+	 * @return the number of values in each bin
+	 */
+	public int[] getHistogram(int bins)
+	{
+		if(bins <= 0)
+			throw new IllegalArgumentException("the number of bins must be positive, but was " + bins + ".");
+		validateCache();
+		if(histogram != null && histogram.length == bins)
+			return histogram.clone();
+
+		GridStatistics stats = getStatistics();
+		double scale = stats.getMaximum() > stats.getMinimum() ? bins / (stats.getMaximum() - stats.getMinimum()) : 0.0;
+		int[] result = new int[bins];
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				int bin = (int) ((doubleValueAt(r, c) - stats.getMinimum()) * scale);
+				result[Math.min(bin, bins - 1)]++;
+			}
+		}
+		histogram = result;
+		return result.clone();
+	}
+
+	/**
+	 * Computes the statistics in one pass over all values. Subclasses with primitive storage override this.
+	 * @return the statistics of all values
+	 */
+	protected GridStatistics computeStatistics()
+	{
+		GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				accumulator.add(doubleValueAt(r, c));
+			}
+		}
+		return accumulator.build();
+	}
+
+	/**
+	 * The value at the given position as a double, used by the statistics.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	protected double doubleValueAt(int row, int col)
+	{
+		T value = getDataAt(row, col).getData();
+		if(!(value instanceof Number))
+			throw new UnsupportedOperationException("statistics are only available for grids of numbers.");
+		return ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Must be called after every change of the values, drops the cached range, statistics and histogram.
+	 */
+	protected void modified()
+	{
+		modifications++;
+		rangeValid = false;
+		statistics = null;
+		histogram = null;
+	}
+	
+	/**
+	 * Called before cached values are used. Views override this to call {@link #modified()} if the grid they show has changed.
+	 */
+	protected void validateCache()
+	{
+	}
 	
 	protected void checkRange(GridCellComparable<T> newData)
 	{
@@ -46,49 +174,98 @@ public class ComparableGrid2D<T extends Comparable<T>> extends Grid2D<T> {
 	public void setDataAt(int row, int col, GridCell<T> data)
 	{
 		super.setDataAt(row, col, data);
-		checkRange((GridCellComparable<T>) data);
+		modified();
 	}
 	
 	@Override
 	public void setDataAt(int row, int col, T data)
 	{
 		super.setDataAt(row, col, data);
-		if(!invalid(row, col))
+		modified();
+	}
+	
+	/**
+	 * Recomputes maximum and minimum from all cells.
+	 */
+	protected void updateRange()
+	{
+		maximum = null;
+		minimum = null;
+		for(int r=0; r<rows(); r++)
 		{
-			checkRange((GridCellComparable<T>) this.data[row][col]);
+			for(int c=0; c<cols(); c++)
+			{
+				checkRange(getDataAt(r, c));
+			}
 		}
+		rangeValid = true;
 	}
 	
+	/**
+	 * The cached range and statistics are dropped after the iteration, the iterator may have changed any value.
+	 * The iterator may write its own cell through setDataAt, the cache updates of concurrent writes race,
+	 * but they are all overwritten here.
+	 * @see worldgenerator.util.grid.Grid2D#iterateParallel(worldgenerator.util.grid.Grid2D.Grid2DIterator)
+	 */
+	@Override
+	public void iterateParallel(Grid2DIterator<T> iterator)
+	{
+		super.iterateParallel(iterator);
+		modified();
+	}
+	
+	// the arithmetic methods write the cells directly and drop the cached range once per pass
+	
 	@Override
 	public void add(Grid2D<T> grid)
 	{
-		maximum = null;
-		minimum = null;
-		super.add(grid);
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				data[r][c] = data[r][c].add(grid.getDataAt(r, c));
+			}
+		}
+		modified();
 	}
 	
 	@Override
 	public void add(GridCell<T> cell)
 	{
-		maximum = null;
-		minimum = null;
-		super.add(cell);
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				data[r][c] = data[r][c].add(cell);
+			}
+		}
+		modified();
 	}
 	
 	@Override
 	public void mult(Grid2D<T> scatter)
 	{
-		maximum = null;
-		minimum = null;
-		super.mult(scatter);
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				data[r][c] = data[r][c].mult(scatter.getDataAt(r, c));
+			}
+		}
+		modified();
 	}
 	
 	@Override
 	public void mult(GridCell<T> cell)
 	{
-		maximum = null;
-		minimum = null;
-		super.mult(cell);
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				data[r][c] = data[r][c].mult(cell);
+			}
+		}
+		modified();
 	}
 	
 	@Override
@@ -99,8 +276,6 @@ public class ComparableGrid2D<T extends Comparable<T>> extends Grid2D<T> {
 
 	public void clamp(T min, T max)
 	{
-		if(this.maximum == this.minimum)
-			return;
 		if(max.compareTo(min) < 0)
 			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
 		
@@ -110,21 +285,18 @@ public class ComparableGrid2D<T extends Comparable<T>> extends Grid2D<T> {
 			{
 				// find data value
 				T data = (getDataAt(r,c)).getData();
-				// cut off values lower than the cutoff value
+				// cut off values outside of [min,max]
 				if(data.compareTo(min) < 0)
 				{
-					data = min;
-					minimum = getDataAt(r, c);
+					setDataAt(r, c, min);
 				}
-				if(data.compareTo(max) > 0)
+				else if(data.compareTo(max) > 0)
 				{
-					data = max;
-					maximum = getDataAt(r, c);
+					setDataAt(r, c, max);
 				}
-				// clamp between min and max
-				setDataAt(r, c, data);
 			}	
 		}
+		modified();
 	}
 
 	@Override
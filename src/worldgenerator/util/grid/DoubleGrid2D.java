@@ -0,0 +1,516 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.util.Arrays;
+
+/**
+ * A two-dimensional grid of primitive double values.
+ * The values are stored row-major in one double array instead of one {@link GridCellDouble} per cell.
+ * The {@link GridCell} based methods of {@link Grid2D} are still supported, but every read creates a new cell,
+ * so performance critical code should use {@link #get(int, int)} and {@link #set(int, int, double)}.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class DoubleGrid2D extends ComparableGrid2D<Double>
+{
+	private final int rows;
+	private final int cols;
+	private final int precision;
+
+	/**
+	 * The values of this grid, cell (row,col) is stored at index row*cols+col.
+	 * The array may be shared with clones, so it must only be written through {@link #writableValues()}.
+	 */
+	protected double[] values;
+	/**
+	 * The owners of the value array if it is shared with clones, null if this grid is the only one.
+	 * It is only changed while holding the lock of this grid, and read without it to keep writes fast.
+	 */
+	private volatile SharedValues sharing;
+
+	public DoubleGrid2D(int rows, int cols)
+	{
+		this(rows, cols, new GridCellDouble(0.0));
+	}
+
+	public DoubleGrid2D(int rows, int cols, double fillValue)
+	{
+		this(rows, cols, new GridCellDouble(fillValue));
+	}
+
+	/**
+	 * Creates a grid filled with the value of the given template.
+	 * The precision of the template is used for the string representation of all cells.
+	 * @param rows
+	 * @param cols
+	 * @param fillTemplate
+	 */
+	public DoubleGrid2D(int rows, int cols, GridCellDouble fillTemplate)
+	{
+		super(fillTemplate);
+		checkArrayDimensions(rows, cols);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.precision = fillTemplate.getPrecision();
+		this.values = new double[rows * cols];
+
+		fill(fillTemplate);
+	}
+
+	/**
+	 * Creates a copy that shares the value array with the original until one of them is changed.
+	 * @param original
+	 */
+	private DoubleGrid2D(DoubleGrid2D original)
+	{
+		super(original.fillTemplate);
+
+		this.rows = original.rows;
+		this.cols = original.cols;
+		this.precision = original.precision;
+		synchronized(original)
+		{
+			if(original.sharing == null)
+				original.sharing = new SharedValues();
+			original.sharing.share();
+			this.values = original.values;
+			this.sharing = original.sharing;
+		}
+		this.statistics = original.statistics;
+	}
+
+	/**
+	 * Returns the given grid if it already is a DoubleGrid2D, otherwise a primitive copy of it.
+	 * @param grid
+	 * @return a DoubleGrid2D with the values of the given grid
+	 */
+	public static DoubleGrid2D valueOf(ComparableGrid2D<Double> grid)
+	{
+		if(grid instanceof DoubleGrid2D)
+		{
+			return (DoubleGrid2D) grid;
+		}
+
+		DoubleGrid2D result = new DoubleGrid2D(grid.rows(), grid.cols(), (GridCellDouble) grid.fillTemplate);
+		for(int r=0; r<result.rows; r++)
+		{
+			for(int c=0; c<result.cols; c++)
+			{
+				result.values[r * result.cols + c] = grid.getDataAt(r, c).getData();
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * Returns the value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		return values[row * cols + col];
+	}
+
+	/**
+	 * Sets the value at the given position.
+	 * If the indices are out of range, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	public void set(int row, int col, double value)
+	{
+		if(invalid(row, col))
+			return;
+
+		writableValues()[row * cols + col] = value;
+		modified();
+	}
+
+	/**
+	 * Returns the value array for writing. If it is shared with clones, it is copied first,
+	 * so the other grids keep their values (copy-on-write).
+	 * @return the value array owned by this grid
+	 */
+	protected double[] writableValues()
+	{
+		if(sharing != null)
+			unshare();
+		return values;
+	}
+
+	/**
+	 * Takes ownership of the value array, copying it if other grids still share it.
+	 * Synchronized, so that concurrent writes to this grid release the array only once.
+	 */
+	private synchronized void unshare()
+	{
+		if(sharing == null)
+			return;
+
+		values = sharing.release(values);
+		sharing = null;
+	}
+
+	/**
+	 * The value array is copied here if it is shared, before the iterator runs,
+	 * so the iterator may write its own cell through {@link #set(int, int, double)} or setDataAt.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#iterateParallel(worldgenerator.util.grid.Grid2D.Grid2DIterator)
+	 */
+	@Override
+	public void iterateParallel(Grid2DIterator<Double> iterator)
+	{
+		writableValues();
+		super.iterateParallel(iterator);
+	}
+
+	/**
+	 * Computes the statistics in one pass over the value array.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#computeStatistics()
+	 */
+	@Override
+	protected GridStatistics computeStatistics()
+	{
+		GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+		for(int i=0; i<values.length; i++)
+		{
+			accumulator.add(values[i]);
+		}
+		return accumulator.build();
+	}
+
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return values[row * cols + col];
+	}
+
+	@Override
+	public GridCellDouble getMaximum()
+	{
+		if(values.length == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMaximum(), precision);
+	}
+
+	@Override
+	public GridCellDouble getMinimum()
+	{
+		if(values.length == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMinimum(), precision);
+	}
+
+	/**
+	 * Starts a lazy expression on the values of this grid, which is evaluated in a single pass.
+	 * @return a new expression without operations
+	 * @see GridExpression
+	 */
+	public GridExpression expression()
+	{
+		return GridExpression.of(this);
+	}
+
+	/**
+	 * Creates a view of the given rectangle that reads and writes the values of this grid without copying them.
+	 * @param firstRow
+	 * @param firstCol
+	 * @param rows
+	 * @param cols
+	 * @return a view on the given rectangle
+	 * @see DoubleGrid2DRegion
+	 */
+	public DoubleGrid2DRegion region(int firstRow, int firstCol, int rows, int cols)
+	{
+		return new DoubleGrid2DRegion(this, firstRow, firstCol, rows, cols);
+	}
+
+	/**
+	 * @return the number of decimals used for the string representation of the cells
+	 */
+	public int getPrecision()
+	{
+		return precision;
+	}
+
+	@Override
+	public int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	public int cols()
+	{
+		return cols;
+	}
+
+	@Override
+	public GridCellDouble getDataAt(int row, int col)
+	{
+		return new GridCellDouble(get(row, col), precision);
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Double> data)
+	{
+		set(row, col, data.getData());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Double data)
+	{
+		set(row, col, data);
+	}
+
+	/**
+	 * Creates new cells for the given row. Changes to the cells are not written back to this grid.
+	 * @see worldgenerator.util.grid.Grid2D#getRow(int)
+	 */
+	@Override
+	public GridCellDouble[] getRow(int index)
+	{
+		GridCellDouble[] result = new GridCellDouble[cols];
+		for(int c=0; c<cols; c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	@Override
+	public void fill(GridCell<Double> template)
+	{
+		double[] values = writableValues();
+		double value = template.getData();
+		Arrays.fill(values, value);
+		modified();
+		statistics = GridStatistics.constant(value, values.length);
+	}
+
+	@Override
+	public void add(GridCell<Double> cell)
+	{
+		add(cell.getData().doubleValue());
+	}
+
+	@Override
+	public void mult(GridCell<Double> cell)
+	{
+		mult(cell.getData().doubleValue());
+	}
+
+	/**
+	 * Adds the given value to all values of this grid.
+	 * @param summand
+	 */
+	public void add(double summand)
+	{
+		double[] values = writableValues();
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] += summand;
+		}
+		modified();
+	}
+
+	/**
+	 * Multiplies all values of this grid with the given factor.
+	 * @param factor
+	 */
+	public void mult(double factor)
+	{
+		double[] values = writableValues();
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] *= factor;
+		}
+		modified();
+	}
+
+	/**
+	 * Multiplies all values with the given factor and adds the summand in one pass: value*factor + summand.
+	 * @param factor
+	 * @param summand
+	 */
+	public void multAdd(double factor, double summand)
+	{
+		affine(0.0, factor, summand);
+	}
+
+	/**
+	 * Applies an affine transformation to all values in one pass: (value + summandBefore) * factor + summandAfter.
+	 * This replaces a chain of add, mult and add calls with the same result.
+	 * @param summandBefore
+	 * @param factor
+	 * @param summandAfter
+	 */
+	public void affine(double summandBefore, double factor, double summandAfter)
+	{
+		double[] values = writableValues();
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] = (values[i] + summandBefore) * factor + summandAfter;
+		}
+		modified();
+	}
+
+	/**
+	 * Linearly maps all values from the current range [minimum, maximum] to [newMinimum, newMaximum] in one pass.
+	 * If all values are equal, they are set to newMinimum.
+	 * @param newMinimum
+	 * @param newMaximum
+	 */
+	public void rescale(double newMinimum, double newMaximum)
+	{
+		if(values.length == 0)
+			return;
+		GridStatistics stats = getStatistics();
+		if(stats.getMaximum() == stats.getMinimum())
+		{
+			fill(new GridCellDouble(newMinimum));
+			return;
+		}
+		
+		double[] values = writableValues();
+		double oldMinimum = stats.getMinimum();
+		double oldRange = stats.getMaximum() - stats.getMinimum();
+		double newRange = newMaximum - newMinimum;
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] = (values[i] - oldMinimum) / oldRange * newRange + newMinimum;
+		}
+		modified();
+	}
+
+	/**
+	 * Adds the values of the given grid, multiplied with factor, to the values of this grid in one pass.
+	 * @param grid a grid with the same dimensions as this grid
+	 * @param factor
+	 */
+	public void addScaled(DoubleGrid2D grid, double factor)
+	{
+		double[] values = writableValues();
+		double[] other = grid.values;
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] += other[i] * factor;
+		}
+		modified();
+	}
+
+	@Override
+	public void add(Grid2D<Double> grid)
+	{
+		double[] values = writableValues();
+		if(grid instanceof DoubleGrid2D)
+		{
+			double[] other = ((DoubleGrid2D) grid).values;
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] += other[i];
+			}
+		}
+		else
+		{
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					values[r * cols + c] += grid.getDataAt(r, c).getData();
+				}
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(Grid2D<Double> scatter)
+	{
+		double[] values = writableValues();
+		if(scatter instanceof DoubleGrid2D)
+		{
+			double[] other = ((DoubleGrid2D) scatter).values;
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] *= other[i];
+			}
+		}
+		else
+		{
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					values[r * cols + c] *= scatter.getDataAt(r, c).getData();
+				}
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Sums values over an area of kernelSize*kernelSize cells, see {@link Grid2D#sumDataOverArea(int, int, int)}.
+	 * If any invalid position is encountered, the center value is added instead. This demands that the center is valid.
+	 * @param row
+	 * @param col
+	 * @param kernelSize
+	 * @return the sum of all values in the given square.
+	 */
+	public double sumOverArea(int row, int col, int kernelSize)
+	{
+		double center = get(row, col);
+		double result = center;
+		for(int lrow = row-kernelSize/2; lrow < row+kernelSize/2; lrow++)
+		{
+			for(int lcol = col-kernelSize/2; lcol < col+kernelSize/2; lcol++)
+			{
+				// if the data is invalid, add the center
+				if(invalid(lrow, lcol))
+					result += center;
+				else
+					result += values[lrow * cols + lcol];
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public GridCellDouble sumDataOverArea(int row, int col, int kernelSize)
+	{
+		return new GridCellDouble(sumOverArea(row, col, kernelSize), precision);
+	}
+
+	@Override
+	public void clamp(Double min, Double max)
+	{
+		double[] values = writableValues();
+		if(max.compareTo(min) < 0)
+			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
+
+		double lower = min;
+		double upper = max;
+		for(int i=0; i<values.length; i++)
+		{
+			// cut off values outside of [min,max]
+			if(values[i] < lower)
+				values[i] = lower;
+			if(values[i] > upper)
+				values[i] = upper;
+		}
+		modified();
+	}
+
+	@Override
+	public DoubleGrid2D clone()
+	{
+		return new DoubleGrid2D(this);
+	}
+}
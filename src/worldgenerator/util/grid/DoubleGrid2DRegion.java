@@ -0,0 +1,295 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+/**
+ * A rectangular region of a {@link DoubleGrid2D} that reads and writes the values of the grid directly, without copying them.
+ * Cell (row,col) of the region is cell (firstRow+row, firstCol+col) of the grid,
+ * i.e. it is stored at offset + row*stride + col in the value array of the grid, with the number of columns of the grid as stride.
+ * Changes of the grid are visible in the region and vice versa.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class DoubleGrid2DRegion extends ComparableGrid2D<Double>
+{
+	private final DoubleGrid2D grid;
+	private final int firstRow;
+	private final int firstCol;
+	private final int rows;
+	private final int cols;
+	private final int offset;
+	private final int stride;
+	/**
+	 * Modification count of the grid when the cached statistics of this region were dropped last.
+	 */
+	private int gridModifications;
+
+	/**
+	 * Use {@link DoubleGrid2D#region(int, int, int, int)} to create regions.
+	 */
+	DoubleGrid2DRegion(DoubleGrid2D grid, int firstRow, int firstCol, int rows, int cols)
+	{
+		super(grid.fillTemplate);
+		checkDimensions(rows, cols);
+		if(firstRow < 0 || firstCol < 0 || firstRow + rows > grid.rows() || firstCol + cols > grid.cols())
+			throw new IllegalArgumentException(String.format("region %dx%d at (%d,%d) is not inside the grid of size %dx%d.", rows, cols, firstRow, firstCol, grid.rows(), grid.cols()));
+
+		this.grid = grid;
+		this.firstRow = firstRow;
+		this.firstCol = firstCol;
+		this.rows = rows;
+		this.cols = cols;
+		this.offset = firstRow * grid.cols() + firstCol;
+		this.stride = grid.cols();
+		this.gridModifications = grid.modifications;
+	}
+
+	/**
+	 * Creates a region of this region, which is a region of the same grid.
+	 * @param firstRow
+	 * @param firstCol
+	 * @param rows
+	 * @param cols
+	 * @return a view on the given rectangle
+	 */
+	public DoubleGrid2DRegion region(int firstRow, int firstCol, int rows, int cols)
+	{
+		if(firstRow < 0 || firstCol < 0 || firstRow + rows > this.rows || firstCol + cols > this.cols)
+			throw new IllegalArgumentException(String.format("region %dx%d at (%d,%d) is not inside the region of size %dx%d.", rows, cols, firstRow, firstCol, this.rows, this.cols));
+		return new DoubleGrid2DRegion(grid, this.firstRow + firstRow, this.firstCol + firstCol, rows, cols);
+	}
+
+	/**
+	 * Returns the value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		return grid.values[offset + row * stride + col];
+	}
+
+	/**
+	 * Sets the value at the given position in the grid.
+	 * If the indices are out of range of the region, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	public void set(int row, int col, double value)
+	{
+		if(invalid(row, col))
+			return;
+
+		grid.set(firstRow + row, firstCol + col, value);
+	}
+
+	@Override
+	protected void validateCache()
+	{
+		if(grid.modifications != gridModifications)
+		{
+			gridModifications = grid.modifications;
+			modified();
+		}
+	}
+
+	@Override
+	protected GridStatistics computeStatistics()
+	{
+		double[] values = grid.values;
+		GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+		for(int r=0; r<rows; r++)
+		{
+			for(int i=offset + r * stride, end=i + cols; i<end; i++)
+			{
+				accumulator.add(values[i]);
+			}
+		}
+		return accumulator.build();
+	}
+
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return get(row, col);
+	}
+
+	@Override
+	public GridCellDouble getMaximum()
+	{
+		if(rows == 0 || cols == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMaximum(), grid.getPrecision());
+	}
+
+	@Override
+	public GridCellDouble getMinimum()
+	{
+		if(rows == 0 || cols == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMinimum(), grid.getPrecision());
+	}
+
+	@Override
+	public int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	public int cols()
+	{
+		return cols;
+	}
+
+	@Override
+	public GridCellDouble getDataAt(int row, int col)
+	{
+		return new GridCellDouble(get(row, col), grid.getPrecision());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Double> data)
+	{
+		set(row, col, data.getData());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Double data)
+	{
+		set(row, col, data);
+	}
+
+	/**
+	 * Creates new cells for the given row. Changes to the cells are not written back to the grid.
+	 * @see worldgenerator.util.grid.Grid2D#getRow(int)
+	 */
+	@Override
+	public GridCellDouble[] getRow(int index)
+	{
+		GridCellDouble[] result = new GridCellDouble[cols];
+		for(int c=0; c<cols; c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	// the bulk operations write the value array of the grid directly and mark the grid as modified once
+
+	@Override
+	public void fill(GridCell<Double> template)
+	{
+		double value = template.getData();
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int i=offset + r * stride, end=i + cols; i<end; i++)
+			{
+				values[i] = value;
+			}
+		}
+		grid.modified();
+	}
+
+	@Override
+	public void add(GridCell<Double> cell)
+	{
+		double summand = cell.getData();
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int i=offset + r * stride, end=i + cols; i<end; i++)
+			{
+				values[i] += summand;
+			}
+		}
+		grid.modified();
+	}
+
+	@Override
+	public void mult(GridCell<Double> cell)
+	{
+		double factor = cell.getData();
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int i=offset + r * stride, end=i + cols; i<end; i++)
+			{
+				values[i] *= factor;
+			}
+		}
+		grid.modified();
+	}
+
+	@Override
+	public void add(Grid2D<Double> other)
+	{
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				values[offset + r * stride + c] += other.getDataAt(r, c).getData();
+			}
+		}
+		grid.modified();
+	}
+
+	@Override
+	public void mult(Grid2D<Double> scatter)
+	{
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				values[offset + r * stride + c] *= scatter.getDataAt(r, c).getData();
+			}
+		}
+		grid.modified();
+	}
+
+	@Override
+	public void clamp(Double min, Double max)
+	{
+		if(max.compareTo(min) < 0)
+			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
+
+		double lower = min;
+		double upper = max;
+		double[] values = grid.writableValues();
+		for(int r=0; r<rows; r++)
+		{
+			for(int i=offset + r * stride, end=i + cols; i<end; i++)
+			{
+				// cut off values outside of [min,max]
+				if(values[i] < lower)
+					values[i] = lower;
+				if(values[i] > upper)
+					values[i] = upper;
+			}
+		}
+		grid.modified();
+	}
+
+	/**
+	 * Copies the values of the region into a new grid.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#clone()
+	 */
+	@Override
+	public DoubleGrid2D clone()
+	{
+		DoubleGrid2D copy = new DoubleGrid2D(rows, cols, (GridCellDouble) fillTemplate);
+		for(int r=0; r<rows; r++)
+		{
+			System.arraycopy(grid.values, offset + r * stride, copy.values, r * cols, cols);
+		}
+		copy.modified();
+		return copy;
+	}
+}
@@ -5,6 +5,8 @@ package worldgenerator.util.grid;
 
 import java.lang.reflect.Array;
 
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
 /**
  * A generic two-dimensional grid.
  * @author Felix Dietrich
@@ -27,10 +29,7 @@ public abstract class Grid2D<T> implements Grid<T>
 
 	@SuppressWarnings("unchecked")
 	public Grid2D(int height, int width, GridCell<T> fillTemplate) {
-		if(height < 0)
-			throw new IllegalArgumentException("Height must not be smaller than zero.");
-		if(width < 0)
-			throw new IllegalArgumentException("Width must not be smaller than zero.");
+		checkDimensions(height, width);
 		
 		this.fillTemplate = fillTemplate;
 		
@@ -39,6 +38,32 @@ public abstract class Grid2D<T> implements Grid<T>
 		fill(fillTemplate);
 	}
 
+	/**
+	 * Creates a grid without allocating the cell array.
+	 * Used by subclasses that store their values in their own data structure. These must override
+	 * {@link #rows()}, {@link #cols()}, {@link #getRow(int)}, {@link #getDataAt(int, int)} and both setDataAt methods.
+	 * @param fillTemplate
+	 */
+	protected Grid2D(GridCell<T> fillTemplate) {
+		this.fillTemplate = fillTemplate;
+	}
+
+	protected static void checkDimensions(int height, int width) {
+		if(height < 0)
+			throw new IllegalArgumentException("Height must not be smaller than zero.");
+		if(width < 0)
+			throw new IllegalArgumentException("Width must not be smaller than zero.");
+	}
+
+	/**
+	 * Checks the dimensions of a grid that stores its cells in one array.
+	 */
+	protected static void checkArrayDimensions(int height, int width) {
+		checkDimensions(height, width);
+		if((long) height * width > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("A grid of " + height + " x " + width + " cells does not fit into one array.");
+	}
+
 	public GridCell<T>[] getRow(int index) {
 		return data[index];
 	}
@@ -184,6 +209,36 @@ public abstract class Grid2D<T> implements Grid<T>
 		}
 	}
 
+	/**
+	 * Iterates over all values of this grid like {@link #iterate(Grid2DIterator)}, but processes bands of rows in parallel.
+	 * The iterator is called from several threads at once, so it may only write the cell it is called for
+	 * and must not read cells of this grid that are written by other calls. Any other state it changes must be thread safe.
+	 * The order of the calls is undefined.
+	 * <p>
+	 * Note that setDataAt is not thread safe in general: grids of cell objects update their cached range on every write,
+	 * and copy-on-write grids copy their shared values on the first write. Subclasses that allow setDataAt of the own cell
+	 * from the iterator override this method and say so.
+	 * @param iterator
+	 */
+	public void iterateParallel(final Grid2DIterator<T> iterator)
+	{
+		final int cols = cols();
+		RowBandExecutor.execute(rows(), cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				for(int r=firstRow; r<endRow; r++)
+				{
+					for(int c=0; c<cols; c++)
+					{
+						iterator.step(r, c, getDataAt(r, c), Grid2D.this);
+					}
+				}
+			}
+		});
+	}
+
 	public boolean invalid(int row, int col)
 	{
 		return (row < 0 || row >= rows() || col < 0 || col >= cols());
@@ -22,6 +22,10 @@ public class GridCellDouble extends GridCellComparable<Double> {
 		this.precision = precision;
 	}
 	
+	public int getPrecision() {
+		return precision;
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("%.0" + precision + "f", this.data);
@@ -0,0 +1,474 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * Convolution of double grids with a kernel, in place.
+ * Separable kernels (gaussian, box) are applied as one pass along the rows and one along the columns, which costs O(N*k) instead of O(N*k^2).
+ * General kernels are applied directly or, if they are large, by multiplication in the frequency domain (FFT).
+ * All passes are split into row bands that are processed in parallel.
+ * <br>
+ * As in {@link GridUtils#ApplyGaussianFilter(ComparableGrid2D, int)}, the kernel is not flipped and its center is at index size/2,
+ * i.e. result(row,col) = sum over u,v of grid(row+u-rows/2, col+v-cols/2) * kernel[u][v].
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class GridConvolution
+{
+	/**
+	 * Defines the values used for positions outside of the grid.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public enum Boundary
+	{
+		/** positions outside of the grid are zero. */
+		ZERO,
+		/** the value of the closest edge cell is used. */
+		CLAMP,
+		/** the grid is periodic. */
+		WRAP,
+		/** the grid is mirrored at its edges, the edge cells are repeated. */
+		MIRROR
+	}
+
+	/**
+	 * General kernels with more entries than this are applied with the FFT by {@link #convolve(DoubleGrid2D, double[][], Boundary)}.
+	 */
+	public static final int FFT_KERNEL_CELLS = 24 * 24;
+
+	/**
+	 * Creates a normalized one dimensional gaussian kernel with standard deviation size/10,
+	 * the same as the one used by {@link GridUtils#ApplyGaussianFilter(ComparableGrid2D, int)} in each dimension.
+	 * @param size
+	 * @return a kernel with the given number of entries that sum up to one
+	 */
+	public static double[] gaussianKernel(int size)
+	{
+		double[] kernel = new double[size];
+		double sigma = size / 10.0;
+		double integral = 0.0;
+		for(int i=0; i<size; i++)
+		{
+			double dist = (i - size / 2.0) / sigma;
+			kernel[i] = Math.exp(-0.5 * dist * dist);
+			integral += kernel[i];
+		}
+		for(int i=0; i<size; i++)
+		{
+			kernel[i] /= integral;
+		}
+		return kernel;
+	}
+
+	/**
+	 * Creates a normalized one dimensional box kernel.
+	 * @param size
+	 * @return a kernel with the given number of equal entries that sum up to one
+	 */
+	public static double[] boxKernel(int size)
+	{
+		double[] kernel = new double[size];
+		for(int i=0; i<size; i++)
+		{
+			kernel[i] = 1.0 / size;
+		}
+		return kernel;
+	}
+
+	/**
+	 * Applies a gaussian filter of the given size, see {@link #gaussianKernel(int)}.
+	 * @param grid
+	 * @param kernelSize
+	 * @param boundary
+	 */
+	public static void gaussianFilter(DoubleGrid2D grid, int kernelSize, Boundary boundary)
+	{
+		double[] kernel = gaussianKernel(kernelSize);
+		convolveSeparable(grid, kernel, kernel, boundary);
+	}
+
+	/**
+	 * Replaces each value by the mean of the kernelSize*kernelSize values around it.
+	 * @param grid
+	 * @param kernelSize
+	 * @param boundary
+	 */
+	public static void boxFilter(DoubleGrid2D grid, int kernelSize, Boundary boundary)
+	{
+		double[] kernel = boxKernel(kernelSize);
+		convolveSeparable(grid, kernel, kernel, boundary);
+	}
+
+	/**
+	 * Convolves the grid with the separable kernel verticalKernel[u]*horizontalKernel[v] in two passes.
+	 * @param grid
+	 * @param verticalKernel kernel along the columns, i.e. over the rows
+	 * @param horizontalKernel kernel along the rows, i.e. over the columns
+	 * @param boundary
+	 */
+	public static void convolveSeparable(final DoubleGrid2D grid, final double[] verticalKernel, final double[] horizontalKernel, final Boundary boundary)
+	{
+		final int rows = grid.rows();
+		final int cols = grid.cols();
+		final double[] values = grid.writableValues();
+		final double[] temp = new double[values.length];
+
+		// pass along the rows
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				int anchor = horizontalKernel.length / 2;
+				for(int row=firstRow; row<endRow; row++)
+				{
+					int offset = row * cols;
+					for(int col=0; col<cols; col++)
+					{
+						int start = col - anchor;
+						double sum = 0;
+						if(start >= 0 && start + horizontalKernel.length <= cols)
+						{
+							for(int v=0; v<horizontalKernel.length; v++)
+							{
+								sum += values[offset + start + v] * horizontalKernel[v];
+							}
+						}
+						else
+						{
+							for(int v=0; v<horizontalKernel.length; v++)
+							{
+								int index = boundaryIndex(start + v, cols, boundary);
+								if(index >= 0)
+									sum += values[offset + index] * horizontalKernel[v];
+							}
+						}
+						temp[offset + col] = sum;
+					}
+				}
+			}
+		});
+
+		// pass along the columns, whole rows are accumulated to keep the memory access sequential
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				int anchor = verticalKernel.length / 2;
+				for(int row=firstRow; row<endRow; row++)
+				{
+					int offset = row * cols;
+					for(int col=0; col<cols; col++)
+					{
+						values[offset + col] = 0;
+					}
+					for(int u=0; u<verticalKernel.length; u++)
+					{
+						int sourceRow = boundaryIndex(row - anchor + u, rows, boundary);
+						if(sourceRow < 0)
+							continue;
+						int sourceOffset = sourceRow * cols;
+						double weight = verticalKernel[u];
+						for(int col=0; col<cols; col++)
+						{
+							values[offset + col] += temp[sourceOffset + col] * weight;
+						}
+					}
+				}
+			}
+		});
+
+		grid.modified();
+	}
+
+	/**
+	 * Convolves the grid with a general kernel, directly for small kernels and with the FFT for kernels with more than {@link #FFT_KERNEL_CELLS} entries.
+	 * @param grid
+	 * @param kernel
+	 * @param boundary
+	 */
+	public static void convolve(DoubleGrid2D grid, double[][] kernel, Boundary boundary)
+	{
+		if(kernel.length * (kernel.length > 0 ? kernel[0].length : 0) > FFT_KERNEL_CELLS)
+		{
+			convolveFFT(grid, kernel, boundary);
+		}
+		else
+		{
+			convolveDirect(grid, kernel, boundary);
+		}
+	}
+
+	/**
+	 * Convolves the grid with a general kernel by summing over the kernel for each cell, O(N*k^2).
+	 * @param grid
+	 * @param kernel
+	 * @param boundary
+	 */
+	public static void convolveDirect(final DoubleGrid2D grid, final double[][] kernel, final Boundary boundary)
+	{
+		final int rows = grid.rows();
+		final int cols = grid.cols();
+		final double[] values = grid.writableValues();
+		final double[] result = new double[values.length];
+
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				int rowAnchor = kernel.length / 2;
+				for(int row=firstRow; row<endRow; row++)
+				{
+					for(int u=0; u<kernel.length; u++)
+					{
+						int sourceRow = boundaryIndex(row - rowAnchor + u, rows, boundary);
+						if(sourceRow < 0)
+							continue;
+						double[] kernelRow = kernel[u];
+						int colAnchor = kernelRow.length / 2;
+						for(int col=0; col<cols; col++)
+						{
+							double sum = 0;
+							for(int v=0; v<kernelRow.length; v++)
+							{
+								int sourceCol = boundaryIndex(col - colAnchor + v, cols, boundary);
+								if(sourceCol >= 0)
+									sum += values[sourceRow * cols + sourceCol] * kernelRow[v];
+							}
+							result[row * cols + col] += sum;
+						}
+					}
+				}
+			}
+		});
+
+		System.arraycopy(result, 0, values, 0, values.length);
+		grid.modified();
+	}
+
+	/**
+	 * Convolves the grid with a general kernel by multiplication in the frequency domain, O(N log N) independent of the kernel size.
+	 * The grid is extended by the kernel size according to the boundary and padded to powers of two,
+	 * so this needs four double arrays of about four times the size of the grid.
+	 * @param grid
+	 * @param kernel
+	 * @param boundary
+	 */
+	public static void convolveFFT(DoubleGrid2D grid, double[][] kernel, Boundary boundary)
+	{
+		int rows = grid.rows();
+		int cols = grid.cols();
+		int kernelRows = kernel.length;
+		int kernelCols = kernelRows > 0 ? kernel[0].length : 0;
+		if(rows == 0 || cols == 0)
+			return;
+		if(kernelRows == 0 || kernelCols == 0)
+		{
+			grid.fill(new GridCellDouble(0.0));
+			return;
+		}
+
+		// the grid extended by the kernel according to the boundary
+		int extendedRows = rows + kernelRows - 1;
+		int extendedCols = cols + kernelCols - 1;
+		// padding so that the cyclic convolution of the FFT equals the linear one
+		int paddedRows = nextPowerOfTwo(extendedRows + kernelRows - 1);
+		int paddedCols = nextPowerOfTwo(extendedCols + kernelCols - 1);
+
+		double[] imageRe = new double[paddedRows * paddedCols];
+		double[] imageIm = new double[paddedRows * paddedCols];
+		double[] kernelRe = new double[paddedRows * paddedCols];
+		double[] kernelIm = new double[paddedRows * paddedCols];
+
+		for(int row=0; row<extendedRows; row++)
+		{
+			int sourceRow = boundaryIndex(row - kernelRows / 2, rows, boundary);
+			if(sourceRow < 0)
+				continue;
+			for(int col=0; col<extendedCols; col++)
+			{
+				int sourceCol = boundaryIndex(col - kernelCols / 2, cols, boundary);
+				if(sourceCol >= 0)
+					imageRe[row * paddedCols + col] = grid.values[sourceRow * cols + sourceCol];
+			}
+		}
+		// flip the kernel, since the convolution theorem holds for the flipped kernel
+		for(int u=0; u<kernelRows; u++)
+		{
+			for(int v=0; v<kernelCols; v++)
+			{
+				kernelRe[u * paddedCols + v] = kernel[kernelRows - 1 - u][kernelCols - 1 - v];
+			}
+		}
+
+		fft2D(imageRe, imageIm, paddedRows, paddedCols, false);
+		fft2D(kernelRe, kernelIm, paddedRows, paddedCols, false);
+		for(int i=0; i<imageRe.length; i++)
+		{
+			double re = imageRe[i] * kernelRe[i] - imageIm[i] * kernelIm[i];
+			double im = imageRe[i] * kernelIm[i] + imageIm[i] * kernelRe[i];
+			imageRe[i] = re;
+			imageIm[i] = im;
+		}
+		fft2D(imageRe, imageIm, paddedRows, paddedCols, true);
+
+		double[] values = grid.writableValues();
+		double scale = 1.0 / ((double) paddedRows * paddedCols);
+		for(int row=0; row<rows; row++)
+		{
+			for(int col=0; col<cols; col++)
+			{
+				values[row * cols + col] = imageRe[(row + kernelRows - 1) * paddedCols + col + kernelCols - 1] * scale;
+			}
+		}
+		grid.modified();
+	}
+
+	/**
+	 * Maps an index outside of [0,size) to an index inside according to the boundary.
+	 * @param index
+	 * @param size
+	 * @param boundary
+	 * @return the index to use, or -1 if the value is zero.
+	 */
+	private static int boundaryIndex(int index, int size, Boundary boundary)
+	{
+		if(index >= 0 && index < size)
+			return index;
+
+		switch(boundary)
+		{
+		case CLAMP:
+			return index < 0 ? 0 : size - 1;
+		case WRAP:
+			return ((index % size) + size) % size;
+		case MIRROR:
+			int period = 2 * size;
+			int mirrored = ((index % period) + period) % period;
+			return mirrored < size ? mirrored : period - 1 - mirrored;
+		default:
+			return -1;
+		}
+	}
+
+	private static int nextPowerOfTwo(int n)
+	{
+		int result = 1;
+		while(result < n)
+		{
+			result <<= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * In place two dimensional FFT of a row-major complex array, rows and columns are transformed in parallel bands.
+	 * The inverse transform is not scaled.
+	 */
+	private static void fft2D(final double[] re, final double[] im, final int rows, final int cols, final boolean inverse)
+	{
+		// transform the rows
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				double[] lineRe = new double[cols];
+				double[] lineIm = new double[cols];
+				for(int row=firstRow; row<endRow; row++)
+				{
+					System.arraycopy(re, row * cols, lineRe, 0, cols);
+					System.arraycopy(im, row * cols, lineIm, 0, cols);
+					fft(lineRe, lineIm, inverse);
+					System.arraycopy(lineRe, 0, re, row * cols, cols);
+					System.arraycopy(lineIm, 0, im, row * cols, cols);
+				}
+			}
+		});
+
+		// transform the columns, the bands are bands of columns here
+		RowBandExecutor.execute(cols, rows, new RowBand()
+		{
+			@Override
+			public void compute(int firstCol, int endCol)
+			{
+				double[] lineRe = new double[rows];
+				double[] lineIm = new double[rows];
+				for(int col=firstCol; col<endCol; col++)
+				{
+					for(int row=0; row<rows; row++)
+					{
+						lineRe[row] = re[row * cols + col];
+						lineIm[row] = im[row * cols + col];
+					}
+					fft(lineRe, lineIm, inverse);
+					for(int row=0; row<rows; row++)
+					{
+						re[row * cols + col] = lineRe[row];
+						im[row * cols + col] = lineIm[row];
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Iterative radix-2 FFT, the length must be a power of two. The inverse transform is not scaled.
+	 */
+	private static void fft(double[] re, double[] im, boolean inverse)
+	{
+		int n = re.length;
+
+		// bit reversal permutation
+		for(int i=1, j=0; i<n; i++)
+		{
+			int bit = n >> 1;
+			for(; (j & bit) != 0; bit >>= 1)
+			{
+				j ^= bit;
+			}
+			j ^= bit;
+			if(i < j)
+			{
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		double sign = inverse ? 1.0 : -1.0;
+		for(int length=2; length<=n; length<<=1)
+		{
+			int half = length >> 1;
+			double angle = sign * 2 * Math.PI / length;
+			double stepRe = Math.cos(angle);
+			double stepIm = Math.sin(angle);
+			for(int start=0; start<n; start+=length)
+			{
+				double wRe = 1.0;
+				double wIm = 0.0;
+				for(int k=0; k<half; k++)
+				{
+					int a = start + k;
+					int b = a + half;
+					double xRe = re[b] * wRe - im[b] * wIm;
+					double xIm = re[b] * wIm + im[b] * wRe;
+					re[b] = re[a] - xRe;
+					im[b] = im[a] - xIm;
+					re[a] += xRe;
+					im[a] += xIm;
+
+					double nextRe = wRe * stepRe - wIm * stepIm;
+					wIm = wRe * stepIm + wIm * stepRe;
+					wRe = nextRe;
+				}
+			}
+		}
+	}
+}
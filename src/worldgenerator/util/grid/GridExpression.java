@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package worldgenerator.util.grid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * A lazy expression over the values of a {@link DoubleGrid2D}.
+ * Operations such as {@link #scale(double)}, {@link #offset(double)} and {@link #clamp(double, double)} are only recorded.
+ * {@link #evaluate()} and {@link #evaluateInto(DoubleGrid2D)} apply all of them in one pass over the grid,
+ * split into row bands that are processed in parallel.
+ * <br>
+ * Example: GridExpression.of(grid).scale(2.0).offset(-1.0).clamp(-1.0, 1.0).evaluateInto(grid);
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class GridExpression
+{
+	/**
+	 * A function applied to each value of the grid.
+	 * In parallel evaluation, it is called from several threads at once and must not have side effects.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public interface CellFunction
+	{
+		public double apply(int row, int col, double value);
+	}
+
+	/**
+	 * A recorded operation. The index is the position of the cell in the row-major value arrays.
+	 */
+	private interface Operation
+	{
+		public double apply(int row, int col, int index, double value);
+	}
+
+	private final DoubleGrid2D source;
+	private final List<Operation> operations;
+	private boolean parallel;
+
+	private GridExpression(DoubleGrid2D source)
+	{
+		this.source = source;
+		this.operations = new ArrayList<Operation>();
+		this.parallel = true;
+	}
+
+	/**
+	 * Starts an expression on the values of the given grid.
+	 * The grid is converted with {@link DoubleGrid2D#valueOf(ComparableGrid2D)}.
+	 * @param source
+	 * @return a new expression without operations
+	 */
+	public static GridExpression of(ComparableGrid2D<Double> source)
+	{
+		return new GridExpression(DoubleGrid2D.valueOf(source));
+	}
+
+	/**
+	 * Applies the given function to every value.
+	 * @param function
+	 * @return this expression
+	 */
+	public GridExpression map(final CellFunction function)
+	{
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				return function.apply(row, col, value);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Multiplies every value with the given factor.
+	 * @param factor
+	 * @return this expression
+	 */
+	public GridExpression scale(final double factor)
+	{
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				return value * factor;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Adds the given summand to every value.
+	 * @param summand
+	 * @return this expression
+	 */
+	public GridExpression offset(final double summand)
+	{
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				return value + summand;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Cuts off every value outside of [min, max].
+	 * @param min
+	 * @param max
+	 * @return this expression
+	 */
+	public GridExpression clamp(final double min, final double max)
+	{
+		if(max < min)
+			throw new IllegalArgumentException("maximum should be greater than minimum when clamping. max: " + max + ", min: " + min);
+
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				if(value < min)
+					return min;
+				if(value > max)
+					return max;
+				return value;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Adds the values of the given grid cell by cell.
+	 * @param grid a grid with the same dimensions as the source
+	 * @return this expression
+	 */
+	public GridExpression add(ComparableGrid2D<Double> grid)
+	{
+		final double[] other = checkDimensions(grid).values;
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				return value + other[index];
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Multiplies with the values of the given grid cell by cell.
+	 * @param grid a grid with the same dimensions as the source
+	 * @return this expression
+	 */
+	public GridExpression mult(ComparableGrid2D<Double> grid)
+	{
+		final double[] other = checkDimensions(grid).values;
+		operations.add(new Operation()
+		{
+			@Override
+			public double apply(int row, int col, int index, double value)
+			{
+				return value * other[index];
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Evaluates the expression in the calling thread only. Needed if a {@link CellFunction} is not thread safe.
+	 * @return this expression
+	 */
+	public GridExpression sequential()
+	{
+		this.parallel = false;
+		return this;
+	}
+
+	/**
+	 * Evaluates the expression into a new grid. The source grid is not changed.
+	 * @return a new grid with the values of the expression
+	 */
+	public DoubleGrid2D evaluate()
+	{
+		return evaluateInto(new DoubleGrid2D(source.rows(), source.cols(), (GridCellDouble) source.fillTemplate));
+	}
+
+	/**
+	 * Evaluates the expression into the given grid in a single pass. The target may be the source grid.
+	 * The statistics of the target are computed in the same pass.
+	 * @param target a grid with the same dimensions as the source
+	 * @return the target
+	 */
+	public DoubleGrid2D evaluateInto(final DoubleGrid2D target)
+	{
+		checkDimensions(target);
+
+		final double[] in = source.values;
+		final double[] out = target.writableValues();
+		final int cols = source.cols();
+		final Operation[] ops = operations.toArray(new Operation[operations.size()]);
+		// the statistics are collected per band and merged here
+		final GridStatistics[] statistics = new GridStatistics[] { GridStatistics.constant(0.0, 0) };
+
+		RowBand band = new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+				for(int row=firstRow; row<endRow; row++)
+				{
+					for(int col=0, index=row*cols; col<cols; col++, index++)
+					{
+						double value = in[index];
+						for(int op=0; op<ops.length; op++)
+						{
+							value = ops[op].apply(row, col, index, value);
+						}
+						out[index] = value;
+						accumulator.add(value);
+					}
+				}
+				GridStatistics bandStatistics = accumulator.build();
+				synchronized(statistics)
+				{
+					statistics[0] = GridStatistics.merge(statistics[0], bandStatistics);
+				}
+			}
+		};
+
+		if(parallel)
+		{
+			RowBandExecutor.execute(source.rows(), cols, band);
+		}
+		else
+		{
+			band.compute(0, source.rows());
+		}
+
+		target.modified();
+		target.statistics = statistics[0];
+		return target;
+	}
+
+	private DoubleGrid2D checkDimensions(ComparableGrid2D<Double> grid)
+	{
+		if(grid.rows() != source.rows() || grid.cols() != source.cols())
+			throw new IllegalArgumentException(String.format("grid dimensions %dx%d do not match the source dimensions %dx%d.", grid.rows(), grid.cols(), source.rows(), source.cols()));
+		return DoubleGrid2D.valueOf(grid);
+	}
+}
@@ -1,5 +1,7 @@
 package worldgenerator.util.grid;
 
+import worldgenerator.util.noise.FractalNoise;
+import worldgenerator.util.noise.NoiseType;
 import worldgenerator.util.noise.PerlinNoiseMap;
 
 public class GridFactory {
@@ -13,6 +15,10 @@ public class GridFactory {
 		
 		public double factor = 1.0;
 		public double scale = 1.0;
+		/**
+		 * If true, perlin and simplex noise grids wrap around at their borders, so that copies of them fit seamlessly.
+		 */
+		public boolean tileable = false;
 
 		/**
 		 * @param height
@@ -41,81 +47,126 @@ public class GridFactory {
 		public GridAttributes(GridAttributes copyAttributes)
 		{
 			this(copyAttributes.height, copyAttributes.width, copyAttributes.seed, copyAttributes.factor);
+			this.tileable = copyAttributes.tileable;
 		}
 	}
 	
-	public static ComparableGrid2D<Double> create2D(GridType gridType, GridAttributes attributes)
+	public static DoubleGrid2D create2D(GridType gridType, GridAttributes attributes)
 	{
-		ComparableGrid2D<Double> result = null;
+		DoubleGrid2D result = null;
 		double max = 0;
 		double min = 0;
 		
 		switch(gridType)
 		{
 		case DOUBLE_2D:
-			result = new ComparableGrid2D<Double>(attributes.height, attributes.width, new GridCellDouble(0.0));
+			result = new DoubleGrid2D(attributes.height, attributes.width);
 			break;
 		case PERLIN_NOISE_2D:
-			result = new ComparableGrid2D<Double>(attributes.height, attributes.width, new GridCellDouble(0.0));
-			generatePerlinNoiseGrid2D(result, attributes.seed);
-			max = result.getMaximum().getData();
-			min = result.getMinimum().getData();
-			rescaleGrid2D(result, min, max);
-			result.mult(new GridCellDouble(2.0));
-			result.add(new GridCellDouble(-1.0));
+			result = new DoubleGrid2D(attributes.height, attributes.width);
+			generatePerlinNoiseGrid2D(result, attributes, NoiseType.PERLIN);
+			// rescale to -1...1
+			result.rescale(-1.0, 1.0);
+			break;
+		case SIMPLEX_NOISE_2D:
+			result = new DoubleGrid2D(attributes.height, attributes.width);
+			generatePerlinNoiseGrid2D(result, attributes, NoiseType.SIMPLEX);
+			// rescale to -1...1
+			result.rescale(-1.0, 1.0);
 			break;
 		case SPARSE_PERLIN_NOISE_2D:
 			result = create2D(GridType.PERLIN_NOISE_2D, attributes);
-			result.clamp(result.getMaximum().getData() * (1.0-attributes.factor), result.getMaximum().getData());
-
-			// rescale to 0...1
 			max = result.getMaximum().getData();
-			min = result.getMinimum().getData();
-			result.add(new GridCellDouble(-min));
-			result.mult(new GridCellDouble(1.0/(max-min)));
+			double cutoff = max * (1.0-attributes.factor);
+			min = Math.max(result.getMinimum().getData(), cutoff);
+
+			// clamp and rescale to 0...1 in one pass
+			result.expression().clamp(cutoff, max).offset(-min).scale(1.0/(max-min)).evaluateInto(result);
+			break;
+		case FRACTAL_NOISE_2D:
+			result = new DoubleGrid2D(attributes.height, attributes.width);
+			generateFractalNoiseGrid2D(result, attributes);
+			// rescale to -1...1
+			result.rescale(-1.0, 1.0);
+			break;
 		default:
 			break;
 		}
 		return result;
 	}
 
-	private static void rescaleGrid2D(ComparableGrid2D<Double> result, double min, double max)
+	/**
+	 * Creates a grid of primitive int values, filled with zeros.
+	 * @param gridType only INTEGER_2D is supported.
+	 * @param attributes
+	 * @return a new IntGrid2D, or null if the grid type is not supported.
+	 */
+	public static IntGrid2D createInt2D(GridType gridType, GridAttributes attributes)
 	{
-		double rows = result.rows();
-		double cols = result.cols();
+		IntGrid2D result = null;
 		
-		for(int r=0; r<rows; r++)
+		switch(gridType)
 		{
-			for(int c=0; c<cols; c++)
-			{
-				// get data
-				double data = result.getDataAt(r, c).getData();
-				// scale data
-				data = (data-min)/(max-min);
-				result.setDataAt(r, c, new GridCellDouble(data));
-			}
+		case INTEGER_2D:
+			result = new IntGrid2D(attributes.height, attributes.width);
+			break;
+		default:
+			break;
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a grid stored in lazily allocated tiles, see {@link TiledGrid2D}.
+	 * Noise grids are generated as in {@link #create2D(GridType, GridAttributes)} and then copied into tiles,
+	 * so sparse grids only keep the tiles that are not zero.
+	 * @param gridType DOUBLE_2D, PERLIN_NOISE_2D, SPARSE_PERLIN_NOISE_2D, FRACTAL_NOISE_2D or SIMPLEX_NOISE_2D.
+	 * @param attributes
+	 * @return a new TiledGrid2D, or null if the grid type is not supported.
+	 */
+	public static TiledGrid2D createTiled2D(GridType gridType, GridAttributes attributes)
+	{
+		TiledGrid2D result = null;
+		
+		switch(gridType)
+		{
+		case DOUBLE_2D:
+			result = new TiledGrid2D(attributes.height, attributes.width);
+			break;
+		case PERLIN_NOISE_2D:
+		case SPARSE_PERLIN_NOISE_2D:
+		case FRACTAL_NOISE_2D:
+		case SIMPLEX_NOISE_2D:
+			result = TiledGrid2D.valueOf(create2D(gridType, attributes));
+			break;
+		default:
+			break;
 		}
+		return result;
 	}
 
 	/**
 	 * Generate a 2d grid filled with perlin noise.
+	 * The map has the size of the grid, a rectangular grid matches the square grid with its longer edge away from the cropped borders.
 	 * 
 	 * @param result
+	 * @param attributes the seed and whether the grid is tileable
+	 * @param noiseType the generator for the noise and the perturbations
 	 */
-	private static void generatePerlinNoiseGrid2D(ComparableGrid2D<Double> result, int seed) {
-		double rows = result.rows();
-		double cols = result.cols();
+	private static void generatePerlinNoiseGrid2D(DoubleGrid2D result, GridAttributes attributes, NoiseType noiseType) {
+		int rows = result.rows();
+		int cols = result.cols();
 		
-		float factor = (float) (Math.max(result.rows(), result.cols()) / 128.0);
+		float factor = (float) (Math.max(rows, cols) / 128.0);
 		
-		PerlinNoiseMap h = new PerlinNoiseMap(Math.max(result.rows(), result.cols()), seed);
+		PerlinNoiseMap h = new PerlinNoiseMap(rows, cols, attributes.seed, noiseType, attributes.tileable);
 		h.AddPerlinNoise(3.0f * factor);
 		h.Perturb(64.0f * factor, 6.0f * factor);
-		for (int i = 0; i < 10; i++ )
-			h.Erode(10.0f);
-		h.Smoothen();
-		for (int i = 0; i < 2; i++ )
-			h.Erode2(7.0f,3.0f);
+		// erosion of gentle slopes, smoothing and height dependent erosion in one sweep
+		h.Apply(new StencilPipeline()
+				.then(StencilPipeline.thermalErosion(0.0, 10.0 / h.Size, 1.0 / 16), 10)
+				.then(StencilPipeline.smooth())
+				.then(StencilPipeline.thermalErosion(0.0, 7.0 / h.Size, 1.0 / 32, 3.0), 2));
 		h.Perturb2(16.0f * factor, 32.0f * factor, 6.0f);
 		
 		for(int r=0; r<rows; r++)
@@ -123,7 +174,31 @@ public class GridFactory {
 			for(int c=0; c<cols; c++)
 			{
 				double noise = h.Heights[r][c];
-				result.setDataAt(r, c, new GridCellDouble(noise,6));
+				result.set(r, c, noise);
+			}
+		}
+	}
+
+	/**
+	 * Generate a 2d grid filled with fractal noise, with the same base frequency as the perlin noise grid.
+	 * attributes.scale multiplies the frequency.
+	 * 
+	 * @param result
+	 * @param attributes
+	 */
+	private static void generateFractalNoiseGrid2D(DoubleGrid2D result, GridAttributes attributes) {
+		int rows = result.rows();
+		int cols = result.cols();
+		
+		FractalNoise noise = new FractalNoise(attributes.seed, FractalNoise.Type.FBM, 8, 2.0f, 0.5f);
+		float[] values = new float[rows * cols];
+		noise.fill(values, rows, cols, (float) (3.0 / 128.0 * attributes.scale));
+		
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				result.set(r, c, values[r * cols + c]);
 			}
 		}
 	}
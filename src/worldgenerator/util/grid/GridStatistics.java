@@ -0,0 +1,177 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+/**
+ * Minimum, maximum, mean and variance of the values of a grid.
+ * The statistics are a snapshot: {@link ComparableGrid2D#getStatistics()} computes them in one pass
+ * and caches them until the grid is changed.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class GridStatistics
+{
+	private final long count;
+	private final double minimum;
+	private final double maximum;
+	private final double mean;
+	private final double variance;
+
+	public GridStatistics(long count, double minimum, double maximum, double mean, double variance)
+	{
+		this.count = count;
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.mean = mean;
+		this.variance = variance;
+	}
+
+	/**
+	 * Statistics of count equal values.
+	 * @param value
+	 * @param count
+	 * @return the statistics of a uniform grid
+	 */
+	public static GridStatistics constant(double value, long count)
+	{
+		if(count == 0)
+			return new Accumulator().build();
+		return new GridStatistics(count, value, value, value, 0.0);
+	}
+
+	/**
+	 * Combines the statistics of two disjoint sets of values, for example two row bands of a grid.
+	 * @param first
+	 * @param second
+	 * @return the statistics of all values
+	 */
+	public static GridStatistics merge(GridStatistics first, GridStatistics second)
+	{
+		if(first.count == 0)
+			return second;
+		if(second.count == 0)
+			return first;
+
+		long count = first.count + second.count;
+		double delta = second.mean - first.mean;
+		double mean = first.mean + delta * second.count / count;
+		// sums of squared differences from the mean, combined as in Chan et al.
+		double squares = first.variance * first.count + second.variance * second.count
+				+ delta * delta * ((double) first.count * second.count / count);
+		return new GridStatistics(count, Math.min(first.minimum, second.minimum), Math.max(first.maximum, second.maximum), mean, squares / count);
+	}
+
+	/**
+	 * @return the number of values
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the smallest value, positive infinity if there are no values
+	 */
+	public double getMinimum()
+	{
+		return minimum;
+	}
+
+	/**
+	 * @return the largest value, negative infinity if there are no values
+	 */
+	public double getMaximum()
+	{
+		return maximum;
+	}
+
+	/**
+	 * @return the mean of all values, NaN if there are no values
+	 */
+	public double getMean()
+	{
+		return mean;
+	}
+
+	/**
+	 * @return the population variance of all values, NaN if there are no values
+	 */
+	public double getVariance()
+	{
+		return variance;
+	}
+
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(variance);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count: %d, min: %f, max: %f, mean: %f, variance: %f", count, minimum, maximum, mean, variance);
+	}
+
+	/**
+	 * Collects statistics value by value. The sums are taken relative to the first value,
+	 * which keeps the variance accurate for values far away from zero.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public static class Accumulator
+	{
+		private long count;
+		private double shift;
+		private double sum;
+		private double sumOfSquares;
+		private double minimum = Double.POSITIVE_INFINITY;
+		private double maximum = Double.NEGATIVE_INFINITY;
+
+		public void add(double value)
+		{
+			if(count == 0)
+				shift = value;
+			double shifted = value - shift;
+			sum += shifted;
+			sumOfSquares += shifted * shifted;
+			count++;
+			if(value < minimum)
+				minimum = value;
+			if(value > maximum)
+				maximum = value;
+		}
+
+		/**
+		 * Adds the same value several times.
+		 * @param value
+		 * @param times
+		 */
+		public void add(double value, long times)
+		{
+			if(times <= 0)
+				return;
+			if(count == 0)
+				shift = value;
+			double shifted = value - shift;
+			sum += shifted * times;
+			sumOfSquares += shifted * shifted * times;
+			count += times;
+			if(value < minimum)
+				minimum = value;
+			if(value > maximum)
+				maximum = value;
+		}
+
+		public GridStatistics build()
+		{
+			if(count == 0)
+				return new GridStatistics(0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN, Double.NaN);
+
+			double shiftedMean = sum / count;
+			double variance = Math.max(0.0, sumOfSquares / count - shiftedMean * shiftedMean);
+			return new GridStatistics(count, minimum, maximum, shift + shiftedMean, variance);
+		}
+	}
+}
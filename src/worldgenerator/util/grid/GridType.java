@@ -8,5 +8,5 @@ package worldgenerator.util.grid;
  *
  */
 public enum GridType {
-	PERLIN_NOISE_2D, DOUBLE_2D, SPARSE_PERLIN_NOISE_2D, INTEGER_2D
+	PERLIN_NOISE_2D, DOUBLE_2D, SPARSE_PERLIN_NOISE_2D, INTEGER_2D, FRACTAL_NOISE_2D, SIMPLEX_NOISE_2D
 }
@@ -0,0 +1,274 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * Hydraulic erosion of a heightmap by water droplets.
+ * Each droplet starts at a random position, flows downhill with some inertia, picks up sediment where it is faster
+ * than its load allows and deposits sediment where it slows down or flows uphill, until it evaporates or leaves the map.
+ * The droplet model follows Hans Theobald Beyer, "Implementation of a method for hydraulic erosion" (2015).
+ * <br>
+ * A droplet moves one cell per step, so it stays within lifetime+1 cells of its start.
+ * The map is split into square tiles at least twice as large, each tile gets a share of the droplets starting in it.
+ * The tiles are colored like a checkerboard with four colors, all tiles of one color are eroded in parallel:
+ * their droplets cannot reach the same cells, so no locks are needed. The droplets of one tile run one after the other
+ * and change the heights directly. The start positions only depend on the seed, the tile and the number of the droplet,
+ * so the result only depends on the heightmap and the attributes, not on the number of threads.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class HydraulicErosion
+{
+	/**
+	 * Parameters of the droplets. The defaults suit heightmaps with values in about [-1,1].
+	 * @author Felix Dietrich
+	 *
+	 */
+	public static class ErosionAttributes
+	{
+		public final int seed;
+		/**
+		 * Total number of droplets, the iteration budget of the erosion together with the lifetime.
+		 */
+		public final int droplets;
+
+		/**
+		 * Maximum number of steps of one droplet.
+		 */
+		public int lifetime = 30;
+		/**
+		 * The droplets of each tile are split into this number of rounds, so that the tiles erode alternately.
+		 */
+		public int rounds = 4;
+		/**
+		 * How much of its direction a droplet keeps in each step, between 0 and 1.
+		 */
+		public double inertia = 0.05;
+		/**
+		 * Sediment a droplet can carry per unit of height difference, speed and water.
+		 */
+		public double capacity = 4.0;
+		public double minCapacity = 0.0001;
+		/**
+		 * Fraction of the sediment above the capacity that is deposited in one step.
+		 */
+		public double deposition = 0.3;
+		/**
+		 * Fraction of the free capacity that is eroded in one step.
+		 */
+		public double erosion = 0.3;
+		/**
+		 * Fraction of the water that evaporates in one step.
+		 */
+		public double evaporation = 0.01;
+		public double gravity = 4.0;
+
+		/**
+		 * @param seed
+		 * @param droplets
+		 */
+		public ErosionAttributes(int seed, int droplets)
+		{
+			this.seed = seed;
+			this.droplets = droplets;
+		}
+	}
+
+	/**
+	 * Smallest edge length of the tiles.
+	 */
+	private static final int MIN_TILE_SIZE = 64;
+
+	/**
+	 * Erodes the heightmap with attributes.droplets droplets.
+	 * @param heightmap
+	 * @param attributes
+	 */
+	public static void erode(final DoubleGrid2D heightmap, final ErosionAttributes attributes)
+	{
+		if(attributes.droplets < 0)
+			throw new IllegalArgumentException("the number of droplets must not be negative, but was " + attributes.droplets + ".");
+		if(attributes.inertia < 0 || attributes.inertia > 1)
+			throw new IllegalArgumentException("the inertia must be in [0,1], but was " + attributes.inertia + ".");
+		if(attributes.rounds <= 0)
+			throw new IllegalArgumentException("the number of rounds must be positive, but was " + attributes.rounds + ".");
+
+		final int rows = heightmap.rows();
+		final int cols = heightmap.cols();
+		// droplets need a cell with four corners
+		if(rows < 2 || cols < 2 || attributes.droplets == 0)
+			return;
+
+		final double[] heights = heightmap.writableValues();
+		// tiles of the same color are one tile apart, the droplets of both must not reach the same cell
+		final int tileSize = Math.max(MIN_TILE_SIZE, 2 * (attributes.lifetime + 2));
+		final int tileRows = (rows + tileSize - 1) / tileSize;
+		final int tileCols = (cols + tileSize - 1) / tileSize;
+		final long cells = (long) (rows - 1) * (cols - 1);
+
+		for(int round=0; round<attributes.rounds; round++)
+		{
+			final int currentRound = round;
+			for(int color=0; color<4; color++)
+			{
+				final int rowParity = color >> 1;
+				final int colParity = color & 1;
+				// the tile rows of this color, with all their tiles of this color
+				int selectedTileRows = (tileRows - rowParity + 1) / 2;
+				RowBandExecutor.execute(selectedTileRows, tileSize * cols / 2, new RowBand()
+				{
+					@Override
+					public void compute(int firstRow, int endRow)
+					{
+						for(int selected=firstRow; selected<endRow; selected++)
+						{
+							int tileRow = 2 * selected + rowParity;
+							for(int tileCol=colParity; tileCol<tileCols; tileCol+=2)
+							{
+								erodeTile(heights, rows, cols, tileRow, tileCol, tileSize, cells, currentRound, attributes);
+							}
+						}
+					}
+				});
+			}
+		}
+		heightmap.modified();
+	}
+
+	/**
+	 * Simulates the droplets of one round in one tile.
+	 */
+	private static void erodeTile(double[] heights, int rows, int cols, int tileRow, int tileCol, int tileSize, long cells, int round, ErosionAttributes attributes)
+	{
+		int firstRow = tileRow * tileSize;
+		int firstCol = tileCol * tileSize;
+		// start positions lie in [0, rows-1) x [0, cols-1)
+		int tileHeight = Math.min(tileSize, rows - 1 - firstRow);
+		int tileWidth = Math.min(tileSize, cols - 1 - firstCol);
+		if(tileHeight <= 0 || tileWidth <= 0)
+			return;
+
+		// share of the droplets proportional to the area of the tile, from the cumulative count of the tiles before it
+		long cellsBefore = (long) firstRow * (cols - 1) + (long) tileHeight * firstCol;
+		long first = attributes.droplets * cellsBefore / cells;
+		long end = attributes.droplets * (cellsBefore + (long) tileHeight * tileWidth) / cells;
+		long count = end - first;
+		long roundFirst = first + count * round / attributes.rounds;
+		long roundEnd = first + count * (round + 1) / attributes.rounds;
+
+		double[] gradient = new double[2];
+		for(long droplet=roundFirst; droplet<roundEnd; droplet++)
+		{
+			long random = mix(attributes.seed * 0x9E3779B97F4A7C15L + droplet);
+			double y = firstRow + (random >>> 11) * 0x1.0p-53 * tileHeight;
+			random = mix(random);
+			double x = firstCol + (random >>> 11) * 0x1.0p-53 * tileWidth;
+			simulate(heights, rows, cols, x, y, gradient, attributes);
+		}
+	}
+
+	/**
+	 * Follows one droplet and changes the heights along its path.
+	 */
+	private static void simulate(double[] heights, int rows, int cols, double x, double y, double[] gradient, ErosionAttributes attributes)
+	{
+		double directionX = 0.0;
+		double directionY = 0.0;
+		double speed = 1.0;
+		double water = 1.0;
+		double sediment = 0.0;
+
+		for(int step=0; step<attributes.lifetime; step++)
+		{
+			int col = (int) x;
+			int row = (int) y;
+			double offsetX = x - col;
+			double offsetY = y - row;
+
+			double height = interpolate(heights, cols, x, y, gradient);
+			directionX = directionX * attributes.inertia - gradient[0] * (1 - attributes.inertia);
+			directionY = directionY * attributes.inertia - gradient[1] * (1 - attributes.inertia);
+			double length = Math.sqrt(directionX * directionX + directionY * directionY);
+			if(length == 0)
+				break;
+			directionX /= length;
+			directionY /= length;
+			x += directionX;
+			y += directionY;
+			if(x < 0 || y < 0 || x >= cols - 1 || y >= rows - 1)
+				break;
+
+			double deltaHeight = interpolate(heights, cols, x, y, null) - height;
+			double capacity = Math.max(-deltaHeight * speed * water * attributes.capacity, attributes.minCapacity);
+
+			if(sediment > capacity || deltaHeight > 0)
+			{
+				// fill the pit when flowing uphill, otherwise drop a part of the surplus
+				double deposit = deltaHeight > 0 ? Math.min(deltaHeight, sediment) : (sediment - capacity) * attributes.deposition;
+				sediment -= deposit;
+				distribute(heights, cols, row, col, offsetX, offsetY, deposit);
+			}
+			else
+			{
+				// never dig deeper than the next position
+				double erode = Math.min((capacity - sediment) * attributes.erosion, -deltaHeight);
+				sediment += erode;
+				distribute(heights, cols, row, col, offsetX, offsetY, -erode);
+			}
+
+			speed = Math.sqrt(Math.max(0.0, speed * speed - deltaHeight * attributes.gravity));
+			water *= 1 - attributes.evaporation;
+		}
+	}
+
+	/**
+	 * Bilinear interpolation of the heights at (x,y), which must lie inside the map.
+	 * @param gradient if not null, receives the gradient in x and y direction
+	 * @return the interpolated height
+	 */
+	private static double interpolate(double[] heights, int cols, double x, double y, double[] gradient)
+	{
+		int col = (int) x;
+		int row = (int) y;
+		double u = x - col;
+		double v = y - row;
+		int index = row * cols + col;
+		double northWest = heights[index];
+		double northEast = heights[index + 1];
+		double southWest = heights[index + cols];
+		double southEast = heights[index + cols + 1];
+
+		if(gradient != null)
+		{
+			gradient[0] = (northEast - northWest) * (1 - v) + (southEast - southWest) * v;
+			gradient[1] = (southWest - northWest) * (1 - u) + (southEast - northEast) * u;
+		}
+		return northWest * (1 - u) * (1 - v) + northEast * u * (1 - v) + southWest * (1 - u) * v + southEast * u * v;
+	}
+
+	/**
+	 * Adds the amount to the four corners of the cell, weighted by the distance of the droplet.
+	 */
+	private static void distribute(double[] heights, int cols, int row, int col, double u, double v, double amount)
+	{
+		int index = row * cols + col;
+		heights[index] += amount * (1 - u) * (1 - v);
+		heights[index + 1] += amount * u * (1 - v);
+		heights[index + cols] += amount * (1 - u) * v;
+		heights[index + cols + 1] += amount * u * v;
+	}
+
+	/**
+	 * The finalizer of the SplitMix64 generator, gives well distributed bits for consecutive inputs.
+	 */
+	private static long mix(long value)
+	{
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+}
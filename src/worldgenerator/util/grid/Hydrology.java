@@ -0,0 +1,427 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.util.Arrays;
+
+import worldgenerator.util.grid.CellularAutomata.Neighbourhood;
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * Flow of water over a heightmap: depression filling, flow directions, flow accumulation and drainage basins.
+ * <br>
+ * The depressions are filled with the Priority-Flood+epsilon algorithm of Barnes, Lehman and Mulla,
+ * "Priority-Flood: An optimal depression-filling and watershed-labeling algorithm for digital elevation models" (2014).
+ * Starting from the border and the sea, the cells are visited from the lowest to the highest,
+ * a cell lower than the cell it was reached from is raised just above it. Cells in depressions are kept in a plain queue
+ * instead of the priority queue, so the algorithm runs in O(N log N) for N cells and in O(N) on flat or filled terrain.
+ * <br>
+ * Every cell of a filled heightmap that is neither sea nor an outlet has a strictly lower neighbour,
+ * so the D8 flow directions (to the neighbour with the steepest descent) lead every cell to an outlet or the sea without cycles.
+ * Only D8 is implemented: all water of a cell flows to one neighbour. Methods that split the flow between two neighbours,
+ * such as D-infinity, are not.
+ * The cells draining to the same cell form a basin, the basins are labelled with a union-find structure.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class Hydrology
+{
+	/**
+	 * Flow direction of a cell at the border of the map without a lower neighbour, the water leaves the map here.
+	 */
+	public static final int OUTLET = -1;
+	/**
+	 * Flow direction of a cell at or below sea level.
+	 */
+	public static final int SEA = -2;
+	/**
+	 * Basin label of the cells at or below sea level.
+	 */
+	public static final int NO_BASIN = -1;
+
+	/**
+	 * The flow directions are indices of the neighbours in this neighbourhood.
+	 */
+	public static final Neighbourhood DIRECTIONS = Neighbourhood.MOORE;
+
+	/**
+	 * Distances to the neighbours in {@link #DIRECTIONS}.
+	 */
+	private static final double[] DISTANCES = new double[DIRECTIONS.size()];
+	static
+	{
+		for(int i=0; i<DISTANCES.length; i++)
+		{
+			DISTANCES[i] = Math.hypot(DIRECTIONS.rowOffset(i), DIRECTIONS.colOffset(i));
+		}
+	}
+
+	/**
+	 * Fills the depressions of the heightmap, so that water can flow from every cell to the border of the map or to the sea.
+	 * Filled cells are raised to the smallest double above the cell they drain to, so they have a strictly lower neighbour.
+	 * @param heightmap is not changed
+	 * @param seaLevel cells at or below this height are sea and not filled, Double.NEGATIVE_INFINITY for no sea
+	 * @return a new grid with the filled heights
+	 */
+	public static DoubleGrid2D fillDepressions(DoubleGrid2D heightmap, double seaLevel)
+	{
+		final int rows = heightmap.rows();
+		final int cols = heightmap.cols();
+		DoubleGrid2D result = heightmap.clone();
+		double[] heights = result.writableValues();
+
+		boolean[] closed = new boolean[rows * cols];
+		HeightQueue open = new HeightQueue();
+		// every cell enters the pit queue at most once
+		int[] pits = new int[rows * cols];
+		int pitFirst = 0;
+		int pitEnd = 0;
+
+		// the water leaves the map at the border and in the sea.
+		// The sea is lower than all land, so its cells are visited first in any order, they do not need the priority queue
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				int index = r * cols + c;
+				if(heights[index] <= seaLevel)
+				{
+					closed[index] = true;
+					pits[pitEnd++] = index;
+				}
+				else if(r == 0 || c == 0 || r == rows - 1 || c == cols - 1)
+				{
+					closed[index] = true;
+					open.push(index, heights[index]);
+				}
+			}
+		}
+
+		int[] offsets = offsets(cols);
+		while(pitFirst < pitEnd || !open.isEmpty())
+		{
+			int index = pitFirst < pitEnd ? pits[pitFirst++] : open.pop();
+			int row = index / cols;
+			int col = index - row * cols;
+			boolean interior = row > 0 && col > 0 && row < rows - 1 && col < cols - 1;
+			double spill = Math.nextUp(heights[index]);
+			for(int i=0; i<offsets.length; i++)
+			{
+				if(!interior && !inside(row, col, i, rows, cols))
+					continue;
+				int neighbour = index + offsets[i];
+				if(closed[neighbour])
+					continue;
+
+				closed[neighbour] = true;
+				if(heights[neighbour] <= spill)
+				{
+					// the neighbour is in a depression, it drains over this cell
+					heights[neighbour] = spill;
+					pits[pitEnd++] = neighbour;
+				}
+				else
+				{
+					open.push(neighbour, heights[neighbour]);
+				}
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * Computes the D8 flow direction of every cell, the index in {@link #DIRECTIONS} of the neighbour with the steepest descent.
+	 * The descent to a diagonal neighbour is divided by sqrt(2). Cells without a lower neighbour are {@link #OUTLET}s,
+	 * cells at or below sea level are {@link #SEA}.
+	 * The cells are computed in parallel.
+	 * @param heightmap should be filled with {@link #fillDepressions(DoubleGrid2D, double)}, otherwise the pits are outlets as well
+	 * @param seaLevel
+	 * @return a new grid with the flow directions
+	 */
+	public static IntGrid2D flowDirections(DoubleGrid2D heightmap, final double seaLevel)
+	{
+		final int rows = heightmap.rows();
+		final int cols = heightmap.cols();
+		final double[] heights = heightmap.values;
+		final IntGrid2D result = new IntGrid2D(rows, cols);
+		final int[] directions = result.writableValues();
+		final int[] offsets = offsets(cols);
+
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				for(int row=firstRow; row<endRow; row++)
+				{
+					for(int col=0; col<cols; col++)
+					{
+						int index = row * cols + col;
+						double height = heights[index];
+						if(height <= seaLevel)
+						{
+							directions[index] = SEA;
+							continue;
+						}
+
+						int direction = OUTLET;
+						double steepest = 0.0;
+						boolean interior = row > 0 && col > 0 && row < rows - 1 && col < cols - 1;
+						for(int i=0; i<offsets.length; i++)
+						{
+							if(!interior && !inside(row, col, i, rows, cols))
+								continue;
+							double descent = (height - heights[index + offsets[i]]) / DISTANCES[i];
+							if(descent > steepest)
+							{
+								steepest = descent;
+								direction = i;
+							}
+						}
+						directions[index] = direction;
+					}
+				}
+			}
+		});
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * Computes the flow accumulation, the number of cells whose water flows through each cell, including the cell itself.
+	 * The cells are visited in topological order, every cell after all cells draining to it, so the accumulation takes O(N) for N cells.
+	 * Cells of the sea collect the water of the cells draining to them, but do not pass it on.
+	 * @param directions flow directions as computed by {@link #flowDirections(DoubleGrid2D, double)}
+	 * @return a new grid with the accumulation
+	 */
+	public static IntGrid2D flowAccumulation(IntGrid2D directions)
+	{
+		int rows = directions.rows();
+		int cols = directions.cols();
+		int[] flow = directions.values;
+
+		// number of neighbours draining to each cell that are not visited yet, -1 after the cell is visited
+		byte[] inflows = new byte[rows * cols];
+		for(int index=0; index<flow.length; index++)
+		{
+			int target = target(flow, index, cols);
+			if(target >= 0)
+				inflows[target]++;
+		}
+
+		IntGrid2D result = new IntGrid2D(rows, cols, 1);
+		int[] accumulation = result.writableValues();
+		for(int index=0; index<flow.length; index++)
+		{
+			if(inflows[index] != 0)
+				continue;
+
+			// follow the water downstream as long as all cells draining to the next cell are visited
+			int cell = index;
+			while(true)
+			{
+				inflows[cell] = -1;
+				int target = target(flow, cell, cols);
+				if(target < 0)
+					break;
+				accumulation[target] += accumulation[cell];
+				if(--inflows[target] != 0)
+					break;
+				cell = target;
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * @return the differences of the indices of the neighbours in {@link #DIRECTIONS} to the index of the cell
+	 */
+	private static int[] offsets(int cols)
+	{
+		int[] result = new int[DIRECTIONS.size()];
+		for(int i=0; i<result.length; i++)
+		{
+			result[i] = DIRECTIONS.rowOffset(i) * cols + DIRECTIONS.colOffset(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the neighbour with the given index in {@link #DIRECTIONS} is inside the grid
+	 */
+	private static boolean inside(int row, int col, int i, int rows, int cols)
+	{
+		int r = row + DIRECTIONS.rowOffset(i);
+		int c = col + DIRECTIONS.colOffset(i);
+		return r >= 0 && c >= 0 && r < rows && c < cols;
+	}
+
+	/**
+	 * @return the index of the cell the given cell drains to, -1 for outlets and the sea
+	 */
+	private static int target(int[] flow, int index, int cols)
+	{
+		int direction = flow[index];
+		if(direction < 0)
+			return -1;
+		return index + DIRECTIONS.rowOffset(direction) * cols + DIRECTIONS.colOffset(direction);
+	}
+
+	/**
+	 * Labels the drainage basins: all cells whose water flows to the same outlet, or into the sea through the same cell, get the same label.
+	 * The labels are 0, 1, ... in the order of the first cell of each basin, row by row. Cells of the sea get {@link #NO_BASIN}.
+	 * @param directions flow directions as computed by {@link #flowDirections(DoubleGrid2D, double)}
+	 * @return a new grid with the basin labels
+	 */
+	public static IntGrid2D basins(IntGrid2D directions)
+	{
+		int rows = directions.rows();
+		int cols = directions.cols();
+		int[] flow = directions.values;
+
+		// union-find with union by size and path halving
+		int[] parents = new int[rows * cols];
+		int[] sizes = new int[rows * cols];
+		for(int index=0; index<parents.length; index++)
+		{
+			parents[index] = index;
+			sizes[index] = 1;
+		}
+		for(int index=0; index<flow.length; index++)
+		{
+			int target = target(flow, index, cols);
+			// the first cell on land is the lowest cell of the basin
+			if(target < 0 || flow[target] == SEA)
+				continue;
+
+			int root = find(parents, index);
+			int targetRoot = find(parents, target);
+			if(root == targetRoot)
+				continue;
+			if(sizes[root] < sizes[targetRoot])
+			{
+				int swap = root;
+				root = targetRoot;
+				targetRoot = swap;
+			}
+			parents[targetRoot] = root;
+			sizes[root] += sizes[targetRoot];
+		}
+
+		IntGrid2D result = new IntGrid2D(rows, cols, NO_BASIN);
+		int[] labels = result.writableValues();
+		// the label of each basin is stored at its root first
+		int[] rootLabels = sizes;
+		Arrays.fill(rootLabels, NO_BASIN);
+		int basinCount = 0;
+		for(int index=0; index<labels.length; index++)
+		{
+			if(flow[index] == SEA)
+				continue;
+			int root = find(parents, index);
+			if(rootLabels[root] == NO_BASIN)
+				rootLabels[root] = basinCount++;
+			labels[index] = rootLabels[root];
+		}
+		result.modified();
+		return result;
+	}
+
+	private static int find(int[] parents, int index)
+	{
+		while(parents[index] != index)
+		{
+			parents[index] = parents[parents[index]];
+			index = parents[index];
+		}
+		return index;
+	}
+
+	/**
+	 * A radix heap of cell indices, ordered by their heights. The cells must be popped in ascending order of their heights,
+	 * a pushed height must not be lower than the last popped one, as in the Priority-Flood.
+	 * <br>
+	 * The heights are mapped to longs with the same order. A cell is stored in the bucket of the highest bit in which its key differs from the key
+	 * of the last popped cell, bucket 0 holds the cells with the same key. When bucket 0 is empty, the first nonempty bucket is split by its smallest key.
+	 * A cell moves to a lower bucket at most 64 times and is only appended to arrays, so the queue is much faster than a binary heap on large maps.
+	 */
+	private static class HeightQueue
+	{
+		private static final int BUCKETS = 65;
+		
+		private final long[][] keys = new long[BUCKETS][];
+		private final int[][] cells = new int[BUCKETS][];
+		private final int[] sizes = new int[BUCKETS];
+		private long last = Long.MIN_VALUE;
+		private int size;
+
+		public HeightQueue()
+		{
+			for(int bucket=0; bucket<BUCKETS; bucket++)
+			{
+				keys[bucket] = new long[16];
+				cells[bucket] = new int[16];
+			}
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		public void push(int cell, double height)
+		{
+			long bits = Double.doubleToLongBits(height);
+			// negative doubles are ordered in reverse by their bits
+			long key = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+			add(key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last), key, cell);
+			size++;
+		}
+
+		public int pop()
+		{
+			if(sizes[0] == 0)
+			{
+				int bucket = 1;
+				while(sizes[bucket] == 0)
+				{
+					bucket++;
+				}
+				long[] bucketKeys = keys[bucket];
+				int[] bucketCells = cells[bucket];
+				int bucketSize = sizes[bucket];
+				long minimum = bucketKeys[0];
+				for(int i=1; i<bucketSize; i++)
+				{
+					minimum = Math.min(minimum, bucketKeys[i]);
+				}
+				// all cells of the bucket go to lower buckets
+				last = minimum;
+				sizes[bucket] = 0;
+				for(int i=0; i<bucketSize; i++)
+				{
+					long key = bucketKeys[i];
+					add(key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last), key, bucketCells[i]);
+				}
+			}
+			size--;
+			return cells[0][--sizes[0]];
+		}
+
+		private void add(int bucket, long key, int cell)
+		{
+			int position = sizes[bucket]++;
+			if(position == keys[bucket].length)
+			{
+				keys[bucket] = Arrays.copyOf(keys[bucket], 2 * position);
+				cells[bucket] = Arrays.copyOf(cells[bucket], 2 * position);
+			}
+			keys[bucket][position] = key;
+			cells[bucket][position] = cell;
+		}
+	}
+}
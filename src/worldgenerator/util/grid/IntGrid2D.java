@@ -0,0 +1,386 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.util.Arrays;
+
+/**
+ * A two-dimensional grid of primitive int values, used for labels such as watersheds and city positions.
+ * The values are stored row-major in one int array instead of one {@link GridCellInteger} per cell.
+ * The {@link GridCell} based methods of {@link Grid2D} are still supported, but every read creates a new cell,
+ * so performance critical code should use {@link #get(int, int)} and {@link #set(int, int, int)}.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class IntGrid2D extends ComparableGrid2D<Integer>
+{
+	private final int rows;
+	private final int cols;
+
+	/**
+	 * The values of this grid, cell (row,col) is stored at index row*cols+col.
+	 * The array may be shared with clones, so it must only be written through {@link #writableValues()}.
+	 */
+	protected int[] values;
+	/**
+	 * The owners of the value array if it is shared with clones, null if this grid is the only one.
+	 * It is only changed while holding the lock of this grid, and read without it to keep writes fast.
+	 */
+	private volatile SharedValues sharing;
+
+	public IntGrid2D(int rows, int cols)
+	{
+		this(rows, cols, 0);
+	}
+
+	public IntGrid2D(int rows, int cols, int fillValue)
+	{
+		super(new GridCellInteger(fillValue));
+		checkArrayDimensions(rows, cols);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.values = new int[rows * cols];
+
+		fill(fillValue);
+	}
+
+	/**
+	 * Creates a copy that shares the value array with the original until one of them is changed.
+	 * @param original
+	 */
+	private IntGrid2D(IntGrid2D original)
+	{
+		super(original.fillTemplate);
+
+		this.rows = original.rows;
+		this.cols = original.cols;
+		synchronized(original)
+		{
+			if(original.sharing == null)
+				original.sharing = new SharedValues();
+			original.sharing.share();
+			this.values = original.values;
+			this.sharing = original.sharing;
+		}
+		this.statistics = original.statistics;
+	}
+
+	/**
+	 * Returns the given grid if it already is an IntGrid2D, otherwise a primitive copy of it.
+	 * @param grid
+	 * @return an IntGrid2D with the values of the given grid
+	 */
+	public static IntGrid2D valueOf(ComparableGrid2D<Integer> grid)
+	{
+		if(grid instanceof IntGrid2D)
+		{
+			return (IntGrid2D) grid;
+		}
+
+		IntGrid2D result = new IntGrid2D(grid.rows(), grid.cols(), grid.fillTemplate.getData());
+		for(int r=0; r<result.rows; r++)
+		{
+			for(int c=0; c<result.cols; c++)
+			{
+				result.values[r * result.cols + c] = grid.getDataAt(r, c).getData();
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * Returns the value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public int get(int row, int col)
+	{
+		return values[row * cols + col];
+	}
+
+	/**
+	 * Sets the value at the given position.
+	 * If the indices are out of range, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	public void set(int row, int col, int value)
+	{
+		if(invalid(row, col))
+			return;
+
+		writableValues()[row * cols + col] = value;
+		modified();
+	}
+
+	/**
+	 * Returns the value array for writing. If it is shared with clones, it is copied first,
+	 * so the other grids keep their values (copy-on-write).
+	 * @return the value array owned by this grid
+	 */
+	protected int[] writableValues()
+	{
+		if(sharing != null)
+			unshare();
+		return values;
+	}
+
+	/**
+	 * Takes ownership of the value array, copying it if other grids still share it.
+	 * Synchronized, so that concurrent writes to this grid release the array only once.
+	 */
+	private synchronized void unshare()
+	{
+		if(sharing == null)
+			return;
+
+		values = sharing.release(values);
+		sharing = null;
+	}
+
+	/**
+	 * The value array is copied here if it is shared, before the iterator runs,
+	 * so the iterator may write its own cell through {@link #set(int, int, int)} or setDataAt.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#iterateParallel(worldgenerator.util.grid.Grid2D.Grid2DIterator)
+	 */
+	@Override
+	public void iterateParallel(Grid2DIterator<Integer> iterator)
+	{
+		writableValues();
+		super.iterateParallel(iterator);
+	}
+
+	/**
+	 * Computes the statistics in one pass over the value array.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#computeStatistics()
+	 */
+	@Override
+	protected GridStatistics computeStatistics()
+	{
+		GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+		for(int i=0; i<values.length; i++)
+		{
+			accumulator.add(values[i]);
+		}
+		return accumulator.build();
+	}
+
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return values[row * cols + col];
+	}
+
+	@Override
+	public GridCellInteger getMaximum()
+	{
+		if(values.length == 0)
+			return null;
+		return new GridCellInteger((int) getStatistics().getMaximum());
+	}
+
+	@Override
+	public GridCellInteger getMinimum()
+	{
+		if(values.length == 0)
+			return null;
+		return new GridCellInteger((int) getStatistics().getMinimum());
+	}
+
+	@Override
+	public int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	public int cols()
+	{
+		return cols;
+	}
+
+	@Override
+	public GridCellInteger getDataAt(int row, int col)
+	{
+		return new GridCellInteger(get(row, col));
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Integer> data)
+	{
+		set(row, col, data.getData());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Integer data)
+	{
+		set(row, col, data);
+	}
+
+	/**
+	 * Creates new cells for the given row. Changes to the cells are not written back to this grid.
+	 * @see worldgenerator.util.grid.Grid2D#getRow(int)
+	 */
+	@Override
+	public GridCellInteger[] getRow(int index)
+	{
+		GridCellInteger[] result = new GridCellInteger[cols];
+		for(int c=0; c<cols; c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	@Override
+	public void fill(GridCell<Integer> template)
+	{
+		fill(template.getData());
+	}
+
+	public void fill(int value)
+	{
+		int[] values = writableValues();
+		Arrays.fill(values, value);
+		modified();
+		statistics = GridStatistics.constant(value, values.length);
+	}
+
+	@Override
+	public void add(GridCell<Integer> cell)
+	{
+		int[] values = writableValues();
+		int value = cell.getData();
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] += value;
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(GridCell<Integer> cell)
+	{
+		int[] values = writableValues();
+		int value = cell.getData();
+		for(int i=0; i<values.length; i++)
+		{
+			values[i] *= value;
+		}
+		modified();
+	}
+
+	@Override
+	public void add(Grid2D<Integer> grid)
+	{
+		int[] values = writableValues();
+		if(grid instanceof IntGrid2D)
+		{
+			int[] other = ((IntGrid2D) grid).values;
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] += other[i];
+			}
+		}
+		else
+		{
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					values[r * cols + c] += grid.getDataAt(r, c).getData();
+				}
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(Grid2D<Integer> scatter)
+	{
+		int[] values = writableValues();
+		if(scatter instanceof IntGrid2D)
+		{
+			int[] other = ((IntGrid2D) scatter).values;
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] *= other[i];
+			}
+		}
+		else
+		{
+			for(int r=0; r<rows; r++)
+			{
+				for(int c=0; c<cols; c++)
+				{
+					values[r * cols + c] *= scatter.getDataAt(r, c).getData();
+				}
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Sums values over an area of kernelSize*kernelSize cells, see {@link Grid2D#sumDataOverArea(int, int, int)}.
+	 * If any invalid position is encountered, the center value is added instead. This demands that the center is valid.
+	 * @param row
+	 * @param col
+	 * @param kernelSize
+	 * @return the sum of all values in the given square.
+	 */
+	public int sumOverArea(int row, int col, int kernelSize)
+	{
+		int center = get(row, col);
+		int result = center;
+		for(int lrow = row-kernelSize/2; lrow < row+kernelSize/2; lrow++)
+		{
+			for(int lcol = col-kernelSize/2; lcol < col+kernelSize/2; lcol++)
+			{
+				// if the data is invalid, add the center
+				if(invalid(lrow, lcol))
+					result += center;
+				else
+					result += values[lrow * cols + lcol];
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public GridCellInteger sumDataOverArea(int row, int col, int kernelSize)
+	{
+		return new GridCellInteger(sumOverArea(row, col, kernelSize));
+	}
+
+	@Override
+	public void clamp(Integer min, Integer max)
+	{
+		int[] values = writableValues();
+		if(max.compareTo(min) < 0)
+			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
+
+		int lower = min;
+		int upper = max;
+		for(int i=0; i<values.length; i++)
+		{
+			// cut off values outside of [min,max]
+			if(values[i] < lower)
+				values[i] = lower;
+			if(values[i] > upper)
+				values[i] = upper;
+		}
+		modified();
+	}
+
+	@Override
+	public IntGrid2D clone()
+	{
+		return new IntGrid2D(this);
+	}
+}
@@ -0,0 +1,420 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A two-dimensional grid of primitive values stored in a memory-mapped file, for grids that do not fit into the heap.
+ * The values are stored row-major as doubles or, with single precision, as floats.
+ * The file is mapped in pages of whole rows, each smaller than {@link #PAGE_BYTES}. The operating system loads and evicts
+ * the pages on demand, {@link #load(int, int)} loads a region in advance and {@link #flush()} writes changes to the file.
+ * <br>
+ * A file that already has the size of the grid is reused with its values, otherwise it is resized and filled with zeros.
+ * Reads through the {@link GridCell} based methods create a new cell, so performance critical code should use
+ * {@link #get(int, int)} and {@link #set(int, int, double)}.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class MappedGrid2D extends ComparableGrid2D<Double> implements Closeable
+{
+	/**
+	 * Maximum size of one mapped page in bytes.
+	 */
+	public static final int PAGE_BYTES = 1 << 28;
+
+	private final int rows;
+	private final int cols;
+	private final boolean singlePrecision;
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+
+	/**
+	 * Number of rows per page, all pages but the last one have this number of rows.
+	 */
+	private final int pageRows;
+	private final MappedByteBuffer[] pages;
+	private final DoubleBuffer[] doublePages;
+	private final FloatBuffer[] floatPages;
+
+
+	/**
+	 * Maps a grid of doubles.
+	 * @param file
+	 * @param rows
+	 * @param cols
+	 * @throws IOException if the file cannot be created or mapped.
+	 */
+	public MappedGrid2D(File file, int rows, int cols) throws IOException
+	{
+		this(file, rows, cols, false);
+	}
+
+	/**
+	 * Maps a grid of doubles or floats.
+	 * @param file
+	 * @param rows
+	 * @param cols
+	 * @param singlePrecision if true, the values are stored as floats, which halves the size of the file.
+	 * @throws IOException if the file cannot be created or mapped.
+	 */
+	public MappedGrid2D(File file, int rows, int cols, boolean singlePrecision) throws IOException
+	{
+		super(new GridCellDouble(0.0));
+		checkDimensions(rows, cols);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.singlePrecision = singlePrecision;
+		this.file = file;
+
+		int cellBytes = singlePrecision ? 4 : 8;
+		long rowBytes = (long) cols * cellBytes;
+		if(rowBytes > PAGE_BYTES)
+			throw new IllegalArgumentException("a single row of " + cols + " cells is larger than a page of " + PAGE_BYTES + " bytes.");
+		this.pageRows = (int) Math.max(1, PAGE_BYTES / Math.max(1, rowBytes));
+
+		int pageCount = rows == 0 ? 0 : (rows + pageRows - 1) / pageRows;
+		this.pages = new MappedByteBuffer[pageCount];
+		this.doublePages = singlePrecision ? null : new DoubleBuffer[pageCount];
+		this.floatPages = singlePrecision ? new FloatBuffer[pageCount] : null;
+
+		long size = rowBytes * rows;
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		boolean reused = randomAccessFile.length() == size;
+		if(!reused)
+		{
+			// new parts of the file are zero
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(size);
+		}
+
+		FileChannel channel = randomAccessFile.getChannel();
+		for(int p=0; p<pageCount; p++)
+		{
+			int firstRow = p * pageRows;
+			int endRow = Math.min(rows, firstRow + pageRows);
+			pages[p] = channel.map(MapMode.READ_WRITE, firstRow * rowBytes, (endRow - firstRow) * rowBytes);
+			if(singlePrecision)
+				floatPages[p] = pages[p].asFloatBuffer();
+			else
+				doublePages[p] = pages[p].asDoubleBuffer();
+		}
+
+		// the statistics of reused files are computed when they are needed
+		if(!reused)
+			statistics = GridStatistics.constant(0.0, (long) rows * cols);
+	}
+
+	/**
+	 * @return the file this grid is stored in.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return true if the values are stored as floats.
+	 */
+	public boolean isSinglePrecision()
+	{
+		return singlePrecision;
+	}
+
+	/**
+	 * Returns the value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		int page = row / pageRows;
+		int index = (row - page * pageRows) * cols + col;
+		if(singlePrecision)
+			return floatPages[page].get(index);
+		return doublePages[page].get(index);
+	}
+
+	/**
+	 * Sets the value at the given position.
+	 * If the indices are out of range, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	public void set(int row, int col, double value)
+	{
+		if(invalid(row, col))
+			return;
+
+		put(row, col, value);
+		modified();
+	}
+
+	private void put(int row, int col, double value)
+	{
+		int page = row / pageRows;
+		int index = (row - page * pageRows) * cols + col;
+		if(singlePrecision)
+			floatPages[page].put(index, (float) value);
+		else
+			doublePages[page].put(index, value);
+	}
+
+	/**
+	 * Loads the pages of the given rows into physical memory, so that the following accesses do not wait for the disk.
+	 * @param firstRow
+	 * @param endRow exclusive
+	 */
+	public void load(int firstRow, int endRow)
+	{
+		for(int p=Math.max(0, firstRow / pageRows); p<pages.length && p * pageRows < endRow; p++)
+		{
+			pages[p].load();
+		}
+	}
+
+	/**
+	 * Writes all changes to the file.
+	 */
+	public void flush()
+	{
+		flush(0, rows);
+	}
+
+	/**
+	 * Writes the changes in the pages of the given rows to the file.
+	 * @param firstRow
+	 * @param endRow exclusive
+	 */
+	public void flush(int firstRow, int endRow)
+	{
+		for(int p=Math.max(0, firstRow / pageRows); p<pages.length && p * pageRows < endRow; p++)
+		{
+			pages[p].force();
+		}
+	}
+
+	/**
+	 * Flushes all changes and closes the file. The pages stay mapped until the grid is garbage collected.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+		randomAccessFile.close();
+	}
+
+	/**
+	 * The statistics read the whole file.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#doubleValueAt(int, int)
+	 */
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return get(row, col);
+	}
+
+	@Override
+	public GridCellDouble getMaximum()
+	{
+		if(rows == 0 || cols == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMaximum());
+	}
+
+	@Override
+	public GridCellDouble getMinimum()
+	{
+		if(rows == 0 || cols == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMinimum());
+	}
+
+	@Override
+	public int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	public int cols()
+	{
+		return cols;
+	}
+
+	@Override
+	public GridCellDouble getDataAt(int row, int col)
+	{
+		return new GridCellDouble(get(row, col));
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Double> data)
+	{
+		set(row, col, data.getData());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Double data)
+	{
+		set(row, col, data);
+	}
+
+	/**
+	 * Creates new cells for the given row. Changes to the cells are not written back to this grid.
+	 * @see worldgenerator.util.grid.Grid2D#getRow(int)
+	 */
+	@Override
+	public GridCellDouble[] getRow(int index)
+	{
+		GridCellDouble[] result = new GridCellDouble[cols];
+		for(int c=0; c<cols; c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	@Override
+	public void fill(GridCell<Double> template)
+	{
+		double value = template.getData();
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				put(r, c, value);
+			}
+		}
+		modified();
+		statistics = GridStatistics.constant(value, (long) rows * cols);
+	}
+
+	@Override
+	public void add(GridCell<Double> cell)
+	{
+		double summand = cell.getData();
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				put(r, c, get(r, c) + summand);
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(GridCell<Double> cell)
+	{
+		double factor = cell.getData();
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				put(r, c, get(r, c) * factor);
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void add(Grid2D<Double> grid)
+	{
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				put(r, c, get(r, c) + grid.getDataAt(r, c).getData());
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(Grid2D<Double> scatter)
+	{
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				put(r, c, get(r, c) * scatter.getDataAt(r, c).getData());
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void clamp(Double min, Double max)
+	{
+		if(max.compareTo(min) < 0)
+			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
+
+		double lower = min;
+		double upper = max;
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				// cut off values outside of [min,max]
+				double value = get(r, c);
+				if(value < lower)
+					put(r, c, lower);
+				else if(value > upper)
+					put(r, c, upper);
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Copies this grid into a temporary file in the same directory, which is deleted when the virtual machine exits.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#clone()
+	 */
+	@Override
+	public MappedGrid2D clone()
+	{
+		try
+		{
+			flush();
+			File copyFile = File.createTempFile(file.getName(), ".copy", file.getAbsoluteFile().getParentFile());
+			copyFile.deleteOnExit();
+			RandomAccessFile target = new RandomAccessFile(copyFile, "rw");
+			try
+			{
+				FileChannel source = randomAccessFile.getChannel();
+				long size = source.size();
+				for(long position = 0; position < size; )
+				{
+					position += source.transferTo(position, size - position, target.getChannel());
+				}
+			}
+			finally
+			{
+				target.close();
+			}
+
+			MappedGrid2D copy = new MappedGrid2D(copyFile, rows, cols, singlePrecision);
+			copy.statistics = statistics;
+			return copy;
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException("could not copy the grid file " + file + ".", e);
+		}
+	}
+}
@@ -29,8 +29,18 @@ public class MipMapGrid2D<T extends Comparable<T>> extends Grid2D<T>
 	 */
 	public MipMapGrid2D(int height, int width, GridCell<T> fillTemplate, int subdivisionsPerLevel)
 	{
-		// creates the basis level of this Grid2D.
-		super(height, width, fillTemplate);
+		this(new ComparableGrid2D<T>(height, width, fillTemplate), subdivisionsPerLevel);
+	}
+	
+	/**
+	 * Creates a MipMapGrid2D with the given grid as base level.
+	 * The cells of this grid are the cells of the base level, they are not copied.
+	 * @param basemap
+	 * @param subdivisionsPerLevel
+	 */
+	public MipMapGrid2D(ComparableGrid2D<T> basemap, int subdivisionsPerLevel)
+	{
+		super(basemap.fillTemplate);
 		
 		if(subdivisionsPerLevel < 0)
 			throw new IllegalArgumentException("subdivisions per level must be >= 0.");
@@ -45,14 +55,7 @@ public class MipMapGrid2D<T extends Comparable<T>> extends Grid2D<T>
 		
 		// put the base level in the grids
 		grids = new HashMap<Integer, Grid2DLayer<T>>();
-		grids.put(maxLevel, new Grid2DLayer<T>(new ComparableGrid2D<T>(height, width, fillTemplate)));
-	}
-	
-	public MipMapGrid2D(ComparableGrid2D<T> basemap, int subdivisionsPerLevel)
-	{
-		this(basemap.rows(), basemap.cols(), basemap.fillTemplate, subdivisionsPerLevel);
-		this.data = basemap.clone().data;
-		this.setLayer(0, new Grid2DLayer<T>(basemap));
+		grids.put(maxLevel, new Grid2DLayer<T>(basemap));
 	}
 	
 	/**
@@ -87,17 +90,18 @@ public class MipMapGrid2D<T extends Comparable<T>> extends Grid2D<T>
 	@Override
 	public MipMapGrid2D<T> clone()
 	{
-		MipMapGrid2D<T> result = new MipMapGrid2D<T>(this.rows(), this.cols(), fillTemplate, subdivisionsPerLevel);
-		
 		// clone the basis grid
-		ComparableGrid2D<T> basis = getBasisGrid();
-		result.data = basis.data;
+		MipMapGrid2D<T> result = new MipMapGrid2D<T>(getBasisGrid().clone(), subdivisionsPerLevel);
 		
 		// clone the subdivisions
 		for(Entry<Integer, Grid2DLayer<T>> subdivision : grids.entrySet())
 		{
-			result.setLayer(subdivision.getKey(), subdivision.getValue().clone());
+			if(subdivision.getKey() > 0)
+			{
+				result.setLayer(subdivision.getKey(), subdivision.getValue().clone());
+			}
 		}
+		result.maxLevel = maxLevel;
 		
 		return result;
 	}
@@ -106,4 +110,46 @@ public class MipMapGrid2D<T extends Comparable<T>> extends Grid2D<T>
 	{
 		return (ComparableGrid2D<T>) grids.get(0).getDataAt(0, 0).getData();
 	}
+
+	@Override
+	public int rows()
+	{
+		return getBasisGrid().rows();
+	}
+
+	@Override
+	public int cols()
+	{
+		return getBasisGrid().cols();
+	}
+
+	@Override
+	public GridCell<T>[] getRow(int index)
+	{
+		return getBasisGrid().getRow(index);
+	}
+
+	@Override
+	public GridCell<T> getDataAt(int row, int col)
+	{
+		return getBasisGrid().getDataAt(row, col);
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<T> data)
+	{
+		getBasisGrid().setDataAt(row, col, data);
+	}
+
+	@Override
+	public void setDataAt(int row, int col, T data)
+	{
+		getBasisGrid().setDataAt(row, col, data);
+	}
+
+	@Override
+	public void fill(GridCell<T> template)
+	{
+		getBasisGrid().fill(template);
+	}
 }
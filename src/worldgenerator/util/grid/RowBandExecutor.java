@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package worldgenerator.util.grid;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of a grid into bands of consecutive rows and processes the bands in parallel.
+ * Small grids are processed in the calling thread.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class RowBandExecutor
+{
+	/**
+	 * Work on a band of rows. Implementations must only write to the rows of their band.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public interface RowBand
+	{
+		/**
+		 * Processes the rows firstRow, ..., endRow-1.
+		 * @param firstRow
+		 * @param endRow exclusive
+		 */
+		public void compute(int firstRow, int endRow);
+	}
+
+	/**
+	 * Grids with fewer cells are processed sequentially, the overhead of splitting them is larger than the gain.
+	 */
+	public static final int MIN_PARALLEL_CELLS = 1 << 14;
+
+	/**
+	 * Number of bands per thread, more bands than threads balance uneven work per row.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static volatile ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * Processes all rows of a rows x cols grid with the given band, in parallel if the grid is large enough.
+	 * Returns after all bands are processed.
+	 * @param rows
+	 * @param cols
+	 * @param band
+	 */
+	public static void execute(int rows, int cols, RowBand band)
+	{
+		ForkJoinPool pool = RowBandExecutor.pool;
+		if((long) rows * cols < MIN_PARALLEL_CELLS || pool.getParallelism() < 2 || rows < 2)
+		{
+			band.compute(0, rows);
+			return;
+		}
+
+		int bandRows = Math.max(1, rows / (pool.getParallelism() * BANDS_PER_THREAD));
+		pool.invoke(new BandTask(band, 0, rows, bandRows));
+	}
+
+	/**
+	 * @return the number of threads used for parallel execution.
+	 */
+	public static int getParallelism()
+	{
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Replaces the thread pool by one with the given number of threads, for example to limit the threads of the generator.
+	 * Bands that are already running finish in the old pool.
+	 * @param parallelism number of threads, must be positive
+	 */
+	public static synchronized void setParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+			throw new IllegalArgumentException("the parallelism must be positive, but was " + parallelism + ".");
+
+		ForkJoinPool old = pool;
+		pool = new ForkJoinPool(parallelism);
+		old.shutdown();
+	}
+
+	private static class BandTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final RowBand band;
+		private final int firstRow;
+		private final int endRow;
+		private final int bandRows;
+
+		public BandTask(RowBand band, int firstRow, int endRow, int bandRows)
+		{
+			this.band = band;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.bandRows = bandRows;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(endRow - firstRow <= bandRows)
+			{
+				band.compute(firstRow, endRow);
+				return;
+			}
+
+			int middleRow = (firstRow + endRow) >>> 1;
+			invokeAll(new BandTask(band, firstRow, middleRow, bandRows), new BandTask(band, middleRow, endRow, bandRows));
+		}
+	}
+}
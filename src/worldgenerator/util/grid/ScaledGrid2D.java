@@ -0,0 +1,200 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+/**
+ * A read-only view of a double grid with all values transformed by value*factor + offset.
+ * The values are computed on every read, so the view needs no memory of its own and always shows the current values of the source.
+ * Maximum, minimum and the other statistics are derived from the cached statistics of the source.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class ScaledGrid2D extends ComparableGrid2D<Double>
+{
+	private final ComparableGrid2D<Double> source;
+	/**
+	 * The source, if it stores primitive values, to read them without creating cells.
+	 */
+	private final DoubleGrid2D primitiveSource;
+	private final double factor;
+	private final double offset;
+	private int sourceModifications;
+
+	/**
+	 * Creates a view showing value*factor + offset for each value of the source.
+	 * @param source
+	 * @param factor
+	 * @param offset
+	 */
+	public ScaledGrid2D(ComparableGrid2D<Double> source, double factor, double offset)
+	{
+		super(source.fillTemplate);
+
+		this.source = source;
+		this.primitiveSource = source instanceof DoubleGrid2D ? (DoubleGrid2D) source : null;
+		this.factor = factor;
+		this.offset = offset;
+		this.sourceModifications = source.modifications;
+	}
+
+	/**
+	 * Returns the transformed value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		double value = primitiveSource != null ? primitiveSource.get(row, col) : source.getDataAt(row, col).getData();
+		return value * factor + offset;
+	}
+
+	@Override
+	protected void validateCache()
+	{
+		if(source.modifications != sourceModifications)
+		{
+			sourceModifications = source.modifications;
+			modified();
+		}
+	}
+
+	/**
+	 * Transforms the statistics of the source, without a pass over the values.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#getStatistics()
+	 */
+	@Override
+	public GridStatistics getStatistics()
+	{
+		GridStatistics stats = source.getStatistics();
+		if(stats.getCount() == 0)
+			return stats;
+
+		double minimum = stats.getMinimum() * factor + offset;
+		double maximum = stats.getMaximum() * factor + offset;
+		return new GridStatistics(stats.getCount(), Math.min(minimum, maximum), Math.max(minimum, maximum),
+				stats.getMean() * factor + offset, stats.getVariance() * factor * factor);
+	}
+
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return get(row, col);
+	}
+
+	@Override
+	public GridCellDouble getMaximum()
+	{
+		if(rows() == 0 || cols() == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMaximum());
+	}
+
+	@Override
+	public GridCellDouble getMinimum()
+	{
+		if(rows() == 0 || cols() == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMinimum());
+	}
+
+	@Override
+	public int rows()
+	{
+		return source.rows();
+	}
+
+	@Override
+	public int cols()
+	{
+		return source.cols();
+	}
+
+	@Override
+	public GridCellDouble getDataAt(int row, int col)
+	{
+		return new GridCellDouble(get(row, col));
+	}
+
+	@Override
+	public GridCellDouble[] getRow(int index)
+	{
+		GridCellDouble[] result = new GridCellDouble[cols()];
+		for(int c=0; c<cols(); c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	// the view is read-only
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Double> data)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Double data)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void fill(GridCell<Double> template)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void add(GridCell<Double> cell)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void mult(GridCell<Double> cell)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void add(Grid2D<Double> grid)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void mult(Grid2D<Double> scatter)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	@Override
+	public void clamp(Double min, Double max)
+	{
+		throw new UnsupportedOperationException("ScaledGrid2D is a read-only view.");
+	}
+
+	/**
+	 * Copies the transformed values into a new grid.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#clone()
+	 */
+	@Override
+	public DoubleGrid2D clone()
+	{
+		DoubleGrid2D copy = new DoubleGrid2D(rows(), cols(), (GridCellDouble) fillTemplate);
+		for(int r=0; r<rows(); r++)
+		{
+			for(int c=0; c<cols(); c++)
+			{
+				copy.values[r * cols() + c] = get(r, c);
+			}
+		}
+		copy.modified();
+		return copy;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+/**
+ * The owners of a value array that is shared by a grid and its clones until one of them is changed (copy-on-write).
+ * All grids sharing the array hold the same instance, and its lock guards the number of owners.
+ * An owner copies the array while holding the lock, so no other owner can find that it is the last one
+ * and write the array in place during the copy.
+ *
+ * @author Felix Dietrich
+ *
+ */
+class SharedValues
+{
+	private int owners = 1;
+
+	/**
+	 * Adds an owner, called when a grid sharing the array is cloned.
+	 */
+	synchronized void share()
+	{
+		owners++;
+	}
+
+	/**
+	 * Removes an owner that is about to write the array.
+	 * @param values the shared array
+	 * @return a copy of the array if other owners remain, the array itself for the last owner
+	 */
+	synchronized double[] release(double[] values)
+	{
+		return --owners > 0 ? values.clone() : values;
+	}
+
+	/**
+	 * Removes an owner that is about to write the array.
+	 * @param values the shared array
+	 * @return a copy of the array if other owners remain, the array itself for the last owner
+	 */
+	synchronized int[] release(int[] values)
+	{
+		return --owners > 0 ? values.clone() : values;
+	}
+}
@@ -0,0 +1,459 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * Applies a sequence of 3x3 stencils to a grid in one sweep over the rows.
+ * Each stage keeps the last three rows of its input in a ring buffer and computes an output row as soon as the row below it arrives,
+ * so row r of the last stage is done when row r+n of the input is read, for n stages. All buffers together are 3n rows,
+ * which stay in the cache while the grid is read and written only once, however many stages there are.
+ * <br>
+ * The rows are split into bands that are processed in parallel. Each band reads n rows more above and below,
+ * in which the missing rows at the band border change the values; the change moves one row per stage
+ * and does not reach the rows of the band. Every value is computed from the input alone, so the result does not depend on the number of threads.
+ * <br>
+ * In periodic mode the grid wraps around at all borders, the first row is below the last one and the first column right of the last one.
+ * The buffers then hold n columns more on both sides, copied from the other side of the grid, and every band reads n rows more above and below
+ * across the border. The stencils see rows without borders in the middle and are not changed.
+ * <br>
+ * Example: new StencilPipeline().then(StencilPipeline.thermalErosion(0.0, 0.05, 0.0625), 10).then(StencilPipeline.smooth()).apply(heights);
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class StencilPipeline
+{
+	/**
+	 * A function of the 3x3 neighbourhood of each cell.
+	 * @author Felix Dietrich
+	 *
+	 */
+	public interface Stencil
+	{
+		/**
+		 * Computes one row from the input rows above, at and below it.
+		 * Cells outside of the grid do not exist, stencils must not treat them as zero.
+		 * @param above the row above, null for the first row
+		 * @param center
+		 * @param below the row below, null for the last row
+		 * @param result receives the new values of the center row
+		 */
+		public void apply(double[] above, double[] center, double[] below, double[] result);
+	}
+
+	/**
+	 * Reads and writes the rows of a grid.
+	 */
+	private interface Rows
+	{
+		public void read(int row, double[] values);
+
+		public void write(int row, double[] values);
+	}
+
+	private final List<Stencil> stages = new ArrayList<Stencil>();
+
+	/**
+	 * Appends a stage.
+	 * @param stencil
+	 * @return this pipeline
+	 */
+	public StencilPipeline then(Stencil stencil)
+	{
+		stages.add(stencil);
+		return this;
+	}
+
+	/**
+	 * Appends the stencil the given number of times.
+	 * @param stencil
+	 * @param times
+	 * @return this pipeline
+	 */
+	public StencilPipeline then(Stencil stencil, int times)
+	{
+		for(int i=0; i<times; i++)
+		{
+			stages.add(stencil);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the number of stages
+	 */
+	public int size()
+	{
+		return stages.size();
+	}
+
+	/**
+	 * Applies all stages to the heights, which are not changed.
+	 * The values are computed in double precision.
+	 * @param heights rows of equal length
+	 * @return the result in a new array
+	 */
+	public float[][] apply(float[][] heights)
+	{
+		return apply(heights, false);
+	}
+
+	/**
+	 * Applies all stages to the heights, which are not changed.
+	 * The values are computed in double precision.
+	 * @param heights rows of equal length
+	 * @param periodic true if the grid wraps around at its borders, so that the result is tileable if the heights are
+	 * @return the result in a new array
+	 */
+	public float[][] apply(final float[][] heights, boolean periodic)
+	{
+		final float[][] result = new float[heights.length][];
+		final int cols = heights.length == 0 ? 0 : heights[0].length;
+		run(heights.length, cols, new Rows()
+		{
+			@Override
+			public void read(int row, double[] values)
+			{
+				float[] source = heights[row];
+				for(int c=0; c<cols; c++)
+				{
+					values[c] = source[c];
+				}
+			}
+
+			@Override
+			public void write(int row, double[] values)
+			{
+				float[] target = new float[cols];
+				for(int c=0; c<cols; c++)
+				{
+					target[c] = (float) values[c];
+				}
+				result[row] = target;
+			}
+		}, periodic);
+		return result;
+	}
+
+	/**
+	 * Applies all stages to the values of the grid.
+	 * @param grid
+	 */
+	public void apply(DoubleGrid2D grid)
+	{
+		final int cols = grid.cols();
+		final double[] source = grid.values;
+		final double[] result = new double[source.length];
+		run(grid.rows(), cols, new Rows()
+		{
+			@Override
+			public void read(int row, double[] values)
+			{
+				System.arraycopy(source, row * cols, values, 0, cols);
+			}
+
+			@Override
+			public void write(int row, double[] values)
+			{
+				System.arraycopy(values, 0, result, row * cols, cols);
+			}
+		}, false);
+		System.arraycopy(result, 0, grid.writableValues(), 0, result.length);
+		grid.modified();
+	}
+
+	private void run(final int rows, final int cols, final Rows grid, final boolean periodic)
+	{
+		if(stages.isEmpty())
+		{
+			double[] values = new double[cols];
+			for(int r=0; r<rows; r++)
+			{
+				grid.read(r, values);
+				grid.write(r, values);
+			}
+			return;
+		}
+
+		RowBandExecutor.execute(rows, cols * stages.size(), new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				// an empty grid has nothing to wrap
+				new Stream(rows, cols, firstRow, endRow, grid, periodic && rows > 0 && cols > 0).run();
+			}
+		});
+	}
+
+	/**
+	 * The state of the sweep over one band.
+	 */
+	private class Stream
+	{
+		private final Rows grid;
+		private final int rows;
+		private final int cols;
+		/**
+		 * Number of columns copied from the other side on each side of the rows, 0 if the grid is not periodic.
+		 */
+		private final int halo;
+		private final int firstRow;
+		private final int endRow;
+		/**
+		 * Range of input rows read for the band, including the rows above and below it.
+		 */
+		private final int from;
+		private final int to;
+		/**
+		 * The last three input rows of each stage, row r is in slot (r - from) % 3.
+		 */
+		private final double[][][] buffers;
+		private final double[] output;
+		/**
+		 * A row of the grid without the copied columns, only used in periodic mode.
+		 */
+		private final double[] line;
+
+		public Stream(int rows, int cols, int firstRow, int endRow, Rows grid, boolean periodic)
+		{
+			this.grid = grid;
+			this.rows = rows;
+			this.cols = cols;
+			this.halo = periodic ? stages.size() : 0;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.from = periodic ? firstRow - stages.size() : Math.max(0, firstRow - stages.size());
+			this.to = periodic ? endRow + stages.size() : Math.min(rows, endRow + stages.size());
+			this.buffers = new double[stages.size()][3][cols + 2 * halo];
+			this.output = new double[cols + 2 * halo];
+			this.line = periodic ? new double[cols] : null;
+		}
+
+		public void run()
+		{
+			for(int r=from; r<to; r++)
+			{
+				read(r, buffers[0][(r - from) % 3]);
+				arrived(0, r);
+			}
+			// the last row of each stage has no row below
+			for(int stage=0; stage<stages.size(); stage++)
+			{
+				compute(stage, to - 1, false);
+			}
+		}
+
+		/**
+		 * Input row r of the stage is in its buffer, so the row above it can be computed.
+		 */
+		private void arrived(int stage, int r)
+		{
+			if(r > from)
+				compute(stage, r - 1, true);
+		}
+
+		private void compute(int stage, int r, boolean hasBelow)
+		{
+			double[][] input = buffers[stage];
+			double[] above = r > from ? input[(r - 1 - from) % 3] : null;
+			double[] below = hasBelow ? input[(r + 1 - from) % 3] : null;
+
+			if(stage == stages.size() - 1)
+			{
+				if(r < firstRow || r >= endRow)
+					return;
+				stages.get(stage).apply(above, input[(r - from) % 3], below, output);
+				write(r, output);
+			}
+			else
+			{
+				stages.get(stage).apply(above, input[(r - from) % 3], below, buffers[stage + 1][(r - from) % 3]);
+				arrived(stage + 1, r);
+			}
+		}
+
+		/**
+		 * Reads the row, in periodic mode any row index with the columns from the other side around it.
+		 */
+		private void read(int r, double[] values)
+		{
+			if(halo == 0)
+			{
+				grid.read(r, values);
+				return;
+			}
+			grid.read(wrap(r, rows), line);
+			System.arraycopy(line, 0, values, halo, cols);
+			for(int c=0; c<halo; c++)
+			{
+				values[c] = line[wrap(c - halo, cols)];
+				values[halo + cols + c] = line[wrap(c, cols)];
+			}
+		}
+
+		private void write(int r, double[] values)
+		{
+			if(halo == 0)
+			{
+				grid.write(r, values);
+				return;
+			}
+			System.arraycopy(values, halo, line, 0, cols);
+			grid.write(r, line);
+		}
+	}
+
+	/**
+	 * @return the index modulo count, in [0,count)
+	 */
+	private static int wrap(int index, int count)
+	{
+		int result = index % count;
+		return result < 0 ? result + count : result;
+	}
+
+	/**
+	 * 3x3 box blur of the inner cells, the cells at the border keep their value.
+	 * @return the stencil
+	 */
+	public static Stencil smooth()
+	{
+		return new Stencil()
+		{
+			@Override
+			public void apply(double[] above, double[] center, double[] below, double[] result)
+			{
+				int cols = center.length;
+				if(above == null || below == null || cols < 3)
+				{
+					System.arraycopy(center, 0, result, 0, cols);
+					return;
+				}
+				result[0] = center[0];
+				result[cols - 1] = center[cols - 1];
+				for(int c=1; c<cols-1; c++)
+				{
+					result[c] = (above[c - 1] + above[c] + above[c + 1]
+							+ center[c - 1] + center[c] + center[c + 1]
+							+ below[c - 1] + below[c] + below[c + 1]) / 9.0;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Moves material between neighbouring cells with a height difference d in (talus, limit],
+	 * the higher cell gives rate*(d - talus) to the lower one. The amount only depends on the pair of cells,
+	 * so both cells compute the same transfer and the sum of all heights does not change.
+	 * With a large limit this is thermal erosion, with talus 0 and a small limit it smooths gentle slopes and keeps steep ones.
+	 * The rate should not be larger than 1/16, a cell has eight neighbours.
+	 * @param talus
+	 * @param limit
+	 * @param rate
+	 * @return the stencil
+	 */
+	public static Stencil thermalErosion(double talus, double limit, double rate)
+	{
+		return thermalErosion(talus, limit, rate, 0.0);
+	}
+
+	/**
+	 * Thermal erosion as in {@link #thermalErosion(double, double, double)}, with the transfer multiplied by |h|*heightDependence + 0.1
+	 * for the height h of the higher cell, so that high terrain erodes faster. A height dependence of 0 turns this off.
+	 * @param talus
+	 * @param limit
+	 * @param rate
+	 * @param heightDependence in [0,inf]
+	 * @return the stencil
+	 */
+	public static Stencil thermalErosion(final double talus, final double limit, final double rate, final double heightDependence)
+	{
+		if(talus < 0 || limit < talus)
+			throw new IllegalArgumentException("the talus must be in [0,limit], but was " + talus + " with limit " + limit + ".");
+
+		return new Stencil()
+		{
+			@Override
+			public void apply(double[] above, double[] center, double[] below, double[] result)
+			{
+				int cols = center.length;
+				for(int c=0; c<cols; c++)
+				{
+					double height = center[c];
+					double change = 0.0;
+					int first = Math.max(0, c - 1);
+					int last = Math.min(cols - 1, c + 1);
+					for(int n=first; n<=last; n++)
+					{
+						if(above != null)
+							change += transfer(above[n], height);
+						if(n != c)
+							change += transfer(center[n], height);
+						if(below != null)
+							change += transfer(below[n], height);
+					}
+					result[c] = height + change;
+				}
+			}
+
+			/**
+			 * @return the amount the cell with the given height receives from its neighbour, negative if it gives
+			 */
+			private double transfer(double neighbour, double height)
+			{
+				double difference = neighbour - height;
+				double magnitude = Math.abs(difference);
+				if(magnitude <= talus || magnitude > limit)
+					return 0.0;
+
+				double amount = rate * (magnitude - talus);
+				if(heightDependence > 0)
+					amount *= Math.abs(Math.max(neighbour, height)) * heightDependence + 0.1;
+				return difference > 0 ? amount : -amount;
+			}
+		};
+	}
+
+	/**
+	 * Lowers each cell to at most the given difference above its lowest neighbour.
+	 * @param maxDifference
+	 * @return the stencil
+	 */
+	public static Stencil slopeLimit(final double maxDifference)
+	{
+		if(maxDifference < 0)
+			throw new IllegalArgumentException("the maximum difference must not be negative, but was " + maxDifference + ".");
+
+		return new Stencil()
+		{
+			@Override
+			public void apply(double[] above, double[] center, double[] below, double[] result)
+			{
+				int cols = center.length;
+				for(int c=0; c<cols; c++)
+				{
+					double lowest = Double.POSITIVE_INFINITY;
+					int first = Math.max(0, c - 1);
+					int last = Math.min(cols - 1, c + 1);
+					for(int n=first; n<=last; n++)
+					{
+						if(above != null)
+							lowest = Math.min(lowest, above[n]);
+						if(n != c)
+							lowest = Math.min(lowest, center[n]);
+						if(below != null)
+							lowest = Math.min(lowest, below[n]);
+					}
+					result[c] = Math.min(center[c], lowest + maxDifference);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package worldgenerator.util.grid;
+
+/**
+ * A summed-area table (integral image) of a double grid.
+ * After construction in one pass over the grid, the sum and mean of any rectangular window are computed in constant time.
+ * The table is a snapshot, it has to be created again if the grid changes.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class SummedAreaTable
+{
+	private final int rows;
+	private final int cols;
+	/**
+	 * sums[(row)*(cols+1)+col] is the sum of all values above and left of (row,col), exclusive.
+	 * The first row and column are zero.
+	 */
+	private final double[] sums;
+
+	public SummedAreaTable(ComparableGrid2D<Double> grid)
+	{
+		DoubleGrid2D values = DoubleGrid2D.valueOf(grid);
+		this.rows = values.rows();
+		this.cols = values.cols();
+		this.sums = new double[(rows + 1) * (cols + 1)];
+
+		int stride = cols + 1;
+		for(int r=0; r<rows; r++)
+		{
+			double rowSum = 0;
+			for(int c=0; c<cols; c++)
+			{
+				rowSum += values.get(r, c);
+				sums[(r+1) * stride + c + 1] = sums[r * stride + c + 1] + rowSum;
+			}
+		}
+	}
+
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int cols()
+	{
+		return cols;
+	}
+
+	/**
+	 * Sums all values in the rectangle [firstRow, endRow) x [firstCol, endCol).
+	 * The rectangle is clipped to the grid.
+	 * @param firstRow
+	 * @param firstCol
+	 * @param endRow exclusive
+	 * @param endCol exclusive
+	 * @return the sum of all values of the grid inside the rectangle
+	 */
+	public double sum(int firstRow, int firstCol, int endRow, int endCol)
+	{
+		int r0 = clamp(firstRow, rows);
+		int r1 = clamp(endRow, rows);
+		int c0 = clamp(firstCol, cols);
+		int c1 = clamp(endCol, cols);
+		if(r1 <= r0 || c1 <= c0)
+			return 0;
+
+		int stride = cols + 1;
+		return sums[r1 * stride + c1] - sums[r0 * stride + c1] - sums[r1 * stride + c0] + sums[r0 * stride + c0];
+	}
+
+	/**
+	 * The mean of all values in the rectangle [firstRow, endRow) x [firstCol, endCol), clipped to the grid.
+	 * @param firstRow
+	 * @param firstCol
+	 * @param endRow exclusive
+	 * @param endCol exclusive
+	 * @return the mean, or zero if the clipped rectangle is empty
+	 */
+	public double mean(int firstRow, int firstCol, int endRow, int endCol)
+	{
+		int clippedRows = clamp(endRow, rows) - clamp(firstRow, rows);
+		int clippedCols = clamp(endCol, cols) - clamp(firstCol, cols);
+		if(clippedRows <= 0 || clippedCols <= 0)
+			return 0;
+		return sum(firstRow, firstCol, endRow, endCol) / ((double) clippedRows * clippedCols);
+	}
+
+	/**
+	 * The value of the grid at (row,col) when the table was created.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		return sum(row, col, row+1, col+1);
+	}
+
+	/**
+	 * Computes the same sum as {@link Grid2D#sumDataOverArea(int, int, int)} in constant time:
+	 * the center value plus all values in the square of kernelSize/2 rows and columns around it,
+	 * where the center value is substituted for positions outside of the grid. This demands that the center is valid.
+	 * @param row
+	 * @param col
+	 * @param kernelSize
+	 * @return the sum over the given square
+	 */
+	public double sumOverArea(int row, int col, int kernelSize)
+	{
+		int half = kernelSize / 2;
+		int r0 = row - half;
+		int r1 = row + half;
+		int c0 = col - half;
+		int c1 = col + half;
+
+		long validCells = (long) Math.max(0, clamp(r1, rows) - clamp(r0, rows)) * Math.max(0, clamp(c1, cols) - clamp(c0, cols));
+		long invalidCells = (long) (2 * half) * (2 * half) - validCells;
+
+		return sum(r0, c0, r1, c1) + (invalidCells + 1) * get(row, col);
+	}
+
+	/**
+	 * The sum of {@link #sumOverArea(int, int, int)} divided by kernelSize*kernelSize.
+	 * @param row
+	 * @param col
+	 * @param kernelSize
+	 * @return the mean over the given square
+	 */
+	public double meanOverArea(int row, int col, int kernelSize)
+	{
+		return sumOverArea(row, col, kernelSize) / (kernelSize * kernelSize);
+	}
+
+	private static int clamp(int index, int size)
+	{
+		return Math.max(0, Math.min(size, index));
+	}
+}
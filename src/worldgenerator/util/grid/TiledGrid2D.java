@@ -0,0 +1,492 @@
+/**
+ * 
+ */
+package worldgenerator.util.grid;
+
+import java.util.Arrays;
+
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * A two-dimensional grid of primitive double values, stored in square tiles of {@link #TILE_SIZE} cells per side.
+ * Tiles are only allocated when a value different from the fill value is written into them.
+ * All other tiles share one constant tile, so uniform regions such as oceans or empty resource maps need almost no memory.
+ * <br>
+ * Like {@link DoubleGrid2D}, every read through the {@link GridCell} based methods creates a new cell,
+ * so performance critical code should use {@link #get(int, int)} and {@link #set(int, int, double)}.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class TiledGrid2D extends ComparableGrid2D<Double>
+{
+	/**
+	 * Number of rows and columns of one tile.
+	 */
+	public static final int TILE_SIZE = 64;
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	private final int rows;
+	private final int cols;
+	private final int precision;
+	private final int tileRows;
+	private final int tileCols;
+
+	/**
+	 * The tiles in row-major order. Cell (row,col) is stored in tile (row/TILE_SIZE)*tileCols+col/TILE_SIZE
+	 * at index (row%TILE_SIZE)*TILE_SIZE+col%TILE_SIZE. Tiles that are not allocated reference {@link #constantTile}.
+	 */
+	private final double[][] tiles;
+	/**
+	 * True for allocated tiles that are shared with a clone, they are copied before the first write (copy-on-write).
+	 */
+	private final boolean[] sharedTiles;
+	/**
+	 * The tile shared by all uniform tiles, all of its values are {@link #constantValue}. It is never written to directly.
+	 */
+	private double[] constantTile;
+	private double constantValue;
+
+	public TiledGrid2D(int rows, int cols)
+	{
+		this(rows, cols, new GridCellDouble(0.0));
+	}
+
+	public TiledGrid2D(int rows, int cols, double fillValue)
+	{
+		this(rows, cols, new GridCellDouble(fillValue));
+	}
+
+	/**
+	 * Creates a grid filled with the value of the given template, no tiles are allocated.
+	 * @param rows
+	 * @param cols
+	 * @param fillTemplate
+	 */
+	public TiledGrid2D(int rows, int cols, GridCellDouble fillTemplate)
+	{
+		super(fillTemplate);
+		checkDimensions(rows, cols);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.precision = fillTemplate.getPrecision();
+		this.tileRows = (rows + TILE_SIZE - 1) >> TILE_SHIFT;
+		this.tileCols = (cols + TILE_SIZE - 1) >> TILE_SHIFT;
+		this.tiles = new double[tileRows * tileCols][];
+		this.sharedTiles = new boolean[tiles.length];
+
+		fill(fillTemplate.getData());
+	}
+
+	/**
+	 * Returns the given grid if it already is a TiledGrid2D, otherwise a tiled copy of it.
+	 * Only tiles with values different from the fill value of the given grid are allocated.
+	 * @param grid
+	 * @return a TiledGrid2D with the values of the given grid
+	 */
+	public static TiledGrid2D valueOf(ComparableGrid2D<Double> grid)
+	{
+		if(grid instanceof TiledGrid2D)
+		{
+			return (TiledGrid2D) grid;
+		}
+
+		TiledGrid2D result = new TiledGrid2D(grid.rows(), grid.cols(), (GridCellDouble) grid.fillTemplate);
+		DoubleGrid2D values = grid instanceof DoubleGrid2D ? (DoubleGrid2D) grid : null;
+		for(int r=0; r<result.rows; r++)
+		{
+			for(int c=0; c<result.cols; c++)
+			{
+				result.set(r, c, values != null ? values.get(r, c) : grid.getDataAt(r, c).getData());
+			}
+		}
+		result.modified();
+		return result;
+	}
+
+	/**
+	 * Returns the value at the given position. The indices are not checked.
+	 * @param row
+	 * @param col
+	 * @return the value at (row,col)
+	 */
+	public double get(int row, int col)
+	{
+		return tiles[(row >> TILE_SHIFT) * tileCols + (col >> TILE_SHIFT)][((row & TILE_MASK) << TILE_SHIFT) + (col & TILE_MASK)];
+	}
+
+	/**
+	 * Sets the value at the given position, allocating its tile if needed.
+	 * If the indices are out of range, nothing happens.
+	 * @param row
+	 * @param col
+	 * @param value
+	 */
+	public void set(int row, int col, double value)
+	{
+		if(invalid(row, col))
+			return;
+
+		int tile = (row >> TILE_SHIFT) * tileCols + (col >> TILE_SHIFT);
+		if(tiles[tile] == constantTile)
+		{
+			// writing the constant value does not need an own tile
+			if(value == constantValue)
+				return;
+			tiles[tile] = constantTile.clone();
+		}
+		else if(sharedTiles[tile])
+		{
+			writableTile(tile);
+		}
+		tiles[tile][((row & TILE_MASK) << TILE_SHIFT) + (col & TILE_MASK)] = value;
+		modified();
+	}
+
+	/**
+	 * Iterates like {@link Grid2D#iterateParallel(Grid2DIterator)}, but the bands are whole rows of tiles,
+	 * so every tile is written by one thread only and the iterator may write its own cell through {@link #set(int, int, double)} or setDataAt.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#iterateParallel(worldgenerator.util.grid.Grid2D.Grid2DIterator)
+	 */
+	@Override
+	public void iterateParallel(final Grid2DIterator<Double> iterator)
+	{
+		RowBandExecutor.execute(tileRows, (int) Math.min(Integer.MAX_VALUE, (long) cols << TILE_SHIFT), new RowBand()
+		{
+			@Override
+			public void compute(int firstTileRow, int endTileRow)
+			{
+				int endRow = Math.min(rows, endTileRow << TILE_SHIFT);
+				for(int r=firstTileRow << TILE_SHIFT; r<endRow; r++)
+				{
+					for(int c=0; c<cols; c++)
+					{
+						iterator.step(r, c, getDataAt(r, c), TiledGrid2D.this);
+					}
+				}
+			}
+		});
+		modified();
+	}
+
+	/**
+	 * @return the number of tiles with own storage, the other tiles share the constant tile.
+	 */
+	public int allocatedTiles()
+	{
+		int result = 0;
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] != constantTile)
+				result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Releases all tiles whose values all equal the fill value, so they share the constant tile again.
+	 */
+	public void compact()
+	{
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] != constantTile && isConstant(t))
+			{
+				tiles[t] = constantTile;
+				sharedTiles[t] = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns an allocated tile for writing, copying it first if it is shared with a clone.
+	 * @param tile
+	 * @return the values of the tile owned by this grid
+	 */
+	private double[] writableTile(int tile)
+	{
+		if(sharedTiles[tile])
+		{
+			tiles[tile] = tiles[tile].clone();
+			sharedTiles[tile] = false;
+		}
+		return tiles[tile];
+	}
+
+	private boolean isConstant(int tile)
+	{
+		double[] values = tiles[tile];
+		int tileRow = tile / tileCols;
+		int tileCol = tile % tileCols;
+		int endRow = Math.min(TILE_SIZE, rows - (tileRow << TILE_SHIFT));
+		int endCol = Math.min(TILE_SIZE, cols - (tileCol << TILE_SHIFT));
+		for(int r=0; r<endRow; r++)
+		{
+			for(int c=0; c<endCol; c++)
+			{
+				if(values[(r << TILE_SHIFT) + c] != constantValue)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the statistics over all allocated tiles, each unallocated tile adds the constant value once per cell.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#computeStatistics()
+	 */
+	@Override
+	protected GridStatistics computeStatistics()
+	{
+		GridStatistics.Accumulator accumulator = new GridStatistics.Accumulator();
+		for(int t=0; t<tiles.length; t++)
+		{
+			int endRow = Math.min(TILE_SIZE, rows - ((t / tileCols) << TILE_SHIFT));
+			int endCol = Math.min(TILE_SIZE, cols - ((t % tileCols) << TILE_SHIFT));
+			if(tiles[t] == constantTile)
+			{
+				accumulator.add(constantValue, endRow * endCol);
+				continue;
+			}
+
+			double[] values = tiles[t];
+			for(int r=0; r<endRow; r++)
+			{
+				for(int c=0; c<endCol; c++)
+				{
+					accumulator.add(values[(r << TILE_SHIFT) + c]);
+				}
+			}
+		}
+		return accumulator.build();
+	}
+
+	@Override
+	protected double doubleValueAt(int row, int col)
+	{
+		return get(row, col);
+	}
+
+	@Override
+	public GridCellDouble getMaximum()
+	{
+		if(tiles.length == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMaximum(), precision);
+	}
+
+	@Override
+	public GridCellDouble getMinimum()
+	{
+		if(tiles.length == 0)
+			return null;
+		return new GridCellDouble(getStatistics().getMinimum(), precision);
+	}
+
+	@Override
+	public int rows()
+	{
+		return rows;
+	}
+
+	@Override
+	public int cols()
+	{
+		return cols;
+	}
+
+	@Override
+	public GridCellDouble getDataAt(int row, int col)
+	{
+		return new GridCellDouble(get(row, col), precision);
+	}
+
+	@Override
+	public void setDataAt(int row, int col, GridCell<Double> data)
+	{
+		set(row, col, data.getData());
+	}
+
+	@Override
+	public void setDataAt(int row, int col, Double data)
+	{
+		set(row, col, data);
+	}
+
+	/**
+	 * Creates new cells for the given row. Changes to the cells are not written back to this grid.
+	 * @see worldgenerator.util.grid.Grid2D#getRow(int)
+	 */
+	@Override
+	public GridCellDouble[] getRow(int index)
+	{
+		GridCellDouble[] result = new GridCellDouble[cols];
+		for(int c=0; c<cols; c++)
+		{
+			result[c] = getDataAt(index, c);
+		}
+		return result;
+	}
+
+	/**
+	 * Fills the grid with the value of the template and releases all tiles.
+	 * @see worldgenerator.util.grid.Grid2D#fill(worldgenerator.util.grid.GridCell)
+	 */
+	@Override
+	public void fill(GridCell<Double> template)
+	{
+		fill(template.getData().doubleValue());
+	}
+
+	/**
+	 * Fills the grid with the given value and releases all tiles.
+	 * @param value
+	 */
+	public void fill(double value)
+	{
+		constantValue = value;
+		constantTile = new double[TILE_SIZE * TILE_SIZE];
+		Arrays.fill(constantTile, value);
+		Arrays.fill(tiles, constantTile);
+		Arrays.fill(sharedTiles, false);
+		modified();
+		statistics = GridStatistics.constant(value, (long) rows * cols);
+	}
+
+	/**
+	 * Adds the given value to all values of this grid. Uniform tiles stay shared.
+	 * @param summand
+	 */
+	public void add(double summand)
+	{
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] == constantTile)
+				continue;
+			double[] values = writableTile(t);
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] += summand;
+			}
+		}
+		setConstant(constantValue + summand);
+		modified();
+	}
+
+	/**
+	 * Multiplies all values of this grid with the given factor. Uniform tiles stay shared.
+	 * @param factor
+	 */
+	public void mult(double factor)
+	{
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] == constantTile)
+				continue;
+			double[] values = writableTile(t);
+			for(int i=0; i<values.length; i++)
+			{
+				values[i] *= factor;
+			}
+		}
+		setConstant(constantValue * factor);
+		modified();
+	}
+
+	/**
+	 * Changes the value of the constant tile, which is shared by all unallocated tiles.
+	 */
+	private void setConstant(double value)
+	{
+		constantValue = value;
+		Arrays.fill(constantTile, value);
+	}
+
+	@Override
+	public void add(GridCell<Double> cell)
+	{
+		add(cell.getData().doubleValue());
+	}
+
+	@Override
+	public void mult(GridCell<Double> cell)
+	{
+		mult(cell.getData().doubleValue());
+	}
+
+	@Override
+	public void add(Grid2D<Double> grid)
+	{
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				set(r, c, get(r, c) + grid.getDataAt(r, c).getData());
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void mult(Grid2D<Double> scatter)
+	{
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				set(r, c, get(r, c) * scatter.getDataAt(r, c).getData());
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public void clamp(Double min, Double max)
+	{
+		if(max.compareTo(min) < 0)
+			throw new IllegalArgumentException("maximum should be greater than minimum when scaling Grid2D. max: " + max + ", min: " + min);
+
+		double lower = min;
+		double upper = max;
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] == constantTile)
+				continue;
+			double[] values = writableTile(t);
+			for(int i=0; i<values.length; i++)
+			{
+				// cut off values outside of [min,max]
+				if(values[i] < lower)
+					values[i] = lower;
+				if(values[i] > upper)
+					values[i] = upper;
+			}
+		}
+		setConstant(Math.max(lower, Math.min(upper, constantValue)));
+		modified();
+	}
+
+	/**
+	 * The copy shares all allocated tiles until they are written, it has its own constant tile.
+	 * @see worldgenerator.util.grid.ComparableGrid2D#clone()
+	 */
+	@Override
+	public TiledGrid2D clone()
+	{
+		TiledGrid2D copy = new TiledGrid2D(rows, cols, (GridCellDouble) fillTemplate);
+		copy.setConstant(constantValue);
+		for(int t=0; t<tiles.length; t++)
+		{
+			if(tiles[t] != constantTile)
+			{
+				copy.tiles[t] = tiles[t];
+				copy.sharedTiles[t] = true;
+				sharedTiles[t] = true;
+			}
+		}
+		copy.statistics = statistics;
+		return copy;
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * 
+ */
+package worldgenerator.util.noise;
+
+import worldgenerator.util.grid.RowBandExecutor;
+import worldgenerator.util.grid.RowBandExecutor.RowBand;
+
+/**
+ * Sums several octaves of {@link PerlinNoiseGenerator} noise, each with a higher frequency and a smaller amplitude than the one before.
+ * Octave k has the frequency frequency*lacunarity^k and the amplitude gain^k, the sum is divided by the sum of the amplitudes of the evaluated octaves.
+ * <br>
+ * FBM sums the noise values and lies in about [-1,1]. BILLOW sums 2|n|-1, which gives rounded hills, also in about [-1,1].
+ * RIDGED sums (1-|n|)^2, which gives sharp ridges along the zero lines of the noise, and lies in [0,1].
+ * <br>
+ * Grids are filled in parallel bands of rows, every value is computed independently, so the result does not depend on the number of threads.
+ * Octaves that vary faster than the grid can show or whose amplitude is below {@link #getMinimumAmplitude()} are skipped.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class FractalNoise
+{
+	public enum Type
+	{
+		FBM, RIDGED, BILLOW
+	}
+
+	/**
+	 * Octaves with more than this number of lattice cells per grid cell are skipped, their variation lies between the grid points.
+	 */
+	public static final float MAX_FREQUENCY = 0.5f;
+
+	private final PerlinNoiseGenerator generator;
+	private final Type type;
+	private final int octaves;
+	private final float lacunarity;
+	private final float gain;
+	private final float totalAmplitude;
+	private float minimumAmplitude = 1.0f / 1024;
+
+	/**
+	 * @param seed seed of the noise generator
+	 * @param type how the octaves are combined
+	 * @param octaves maximum number of octaves, must be positive
+	 * @param lacunarity factor of the frequency from one octave to the next, must be greater than one
+	 * @param gain factor of the amplitude from one octave to the next, must be positive
+	 */
+	public FractalNoise(int seed, Type type, int octaves, float lacunarity, float gain)
+	{
+		if(octaves <= 0)
+			throw new IllegalArgumentException("the number of octaves must be positive, but was " + octaves + ".");
+		if(!(lacunarity > 1.0f))
+			throw new IllegalArgumentException("the lacunarity must be greater than one, but was " + lacunarity + ".");
+		if(!(gain > 0.0f))
+			throw new IllegalArgumentException("the gain must be positive, but was " + gain + ".");
+
+		this.generator = new PerlinNoiseGenerator(seed);
+		this.type = type;
+		this.octaves = octaves;
+		this.lacunarity = lacunarity;
+		this.gain = gain;
+
+		float sum = 0.0f;
+		float amplitude = 1.0f;
+		for(int k=0; k<octaves; k++)
+		{
+			sum += amplitude;
+			amplitude *= gain;
+		}
+		this.totalAmplitude = sum;
+	}
+
+	/**
+	 * @return the smallest amplitude of an octave relative to the sum of all amplitudes, smaller octaves are skipped.
+	 */
+	public float getMinimumAmplitude()
+	{
+		return minimumAmplitude;
+	}
+
+	/**
+	 * @param minimumAmplitude the smallest amplitude of an octave relative to the sum of all amplitudes, 0 to keep all octaves.
+	 */
+	public void setMinimumAmplitude(float minimumAmplitude)
+	{
+		if(minimumAmplitude < 0.0f)
+			throw new IllegalArgumentException("the minimum amplitude must not be negative, but was " + minimumAmplitude + ".");
+		this.minimumAmplitude = minimumAmplitude;
+	}
+
+	/**
+	 * Counts the octaves that are evaluated for a grid, starting with the first one.
+	 * An octave and all following ones are skipped if the octave has more than {@link #MAX_FREQUENCY} lattice cells per grid cell
+	 * or its amplitude is below the minimum amplitude.
+	 * @param frequency lattice cells of the first octave per grid cell
+	 * @return the number of octaves that contribute to the grid
+	 */
+	public int activeOctaves(float frequency)
+	{
+		float amplitude = 1.0f;
+		for(int k=0; k<octaves; k++)
+		{
+			if(frequency > MAX_FREQUENCY || amplitude < minimumAmplitude * totalAmplitude)
+				return k;
+			frequency *= lacunarity;
+			amplitude *= gain;
+		}
+		return octaves;
+	}
+
+	/**
+	 * Evaluates all octaves at one point.
+	 * @param x
+	 * @param y
+	 * @return the fractal noise at (x,y)
+	 */
+	public float noise(float x, float y)
+	{
+		float sum = 0.0f;
+		float scale = 1.0f;
+		float amplitude = 1.0f;
+		for(int k=0; k<octaves; k++)
+		{
+			sum += amplitude * shape(generator.Noise(x * scale, y * scale, depth(k)));
+			scale *= lacunarity;
+			amplitude *= gain;
+		}
+		return sum / totalAmplitude;
+	}
+
+	/**
+	 * Fills result[r*cols + c] with the noise at (r*frequency, c*frequency).
+	 * If all octaves are active, the values are those of {@link #noise(float, float)}.
+	 * Skipped octaves (see {@link #activeOctaves(float)}) are left out of the sum and of the amplitudes it is divided by,
+	 * so the values keep the range of {@link #noise(float, float)} and only lack the fine detail.
+	 * The rows are computed in parallel bands, each octave with the row API of {@link PerlinNoiseGenerator}.
+	 * @param result array of at least rows*cols values
+	 * @param rows
+	 * @param cols
+	 * @param frequency lattice cells of the first octave per grid cell
+	 */
+	public void fill(final float[] result, final int rows, final int cols, float frequency)
+	{
+		if(rows < 0 || cols < 0 || (long) rows * cols > result.length)
+			throw new IllegalArgumentException(String.format("the result array of length %d cannot hold %dx%d values.", result.length, rows, cols));
+
+		final int active = activeOctaves(frequency);
+		// the coordinates along a row are the same for all rows
+		final float[] frequencies = new float[active];
+		final float[] amplitudes = new float[active];
+		final float[][] coordinates = new float[active][cols];
+		float activeAmplitude = 0.0f;
+		float amplitude = 1.0f;
+		for(int k=0; k<active; k++)
+		{
+			activeAmplitude += amplitude;
+			amplitude *= gain;
+		}
+		amplitude = 1.0f / activeAmplitude;
+		for(int k=0; k<active; k++)
+		{
+			frequencies[k] = frequency;
+			amplitudes[k] = amplitude;
+			for(int c=0; c<cols; c++)
+			{
+				coordinates[k][c] = c * frequency;
+			}
+			frequency *= lacunarity;
+			amplitude *= gain;
+		}
+
+		RowBandExecutor.execute(rows, cols, new RowBand()
+		{
+			@Override
+			public void compute(int firstRow, int endRow)
+			{
+				float[] noise = new float[cols];
+				for(int r=firstRow; r<endRow; r++)
+				{
+					int offset = r * cols;
+					for(int c=0; c<cols; c++)
+					{
+						result[offset + c] = 0.0f;
+					}
+					for(int k=0; k<frequencies.length; k++)
+					{
+						generator.NoiseRow(r * frequencies[k], coordinates[k], depth(k), noise, 0);
+						float amplitude = amplitudes[k];
+						for(int c=0; c<cols; c++)
+						{
+							result[offset + c] += amplitude * shape(noise[c]);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Each octave is taken from a different plane of the three dimensional noise, so that the octaves are not correlated.
+	 * @param octave
+	 * @return the z coordinate of the octave
+	 */
+	private static float depth(int octave)
+	{
+		return octave + 0.5f;
+	}
+
+	private float shape(float noise)
+	{
+		switch(type)
+		{
+		case RIDGED:
+			float ridge = 1.0f - Math.abs(noise);
+			return ridge * ridge;
+		case BILLOW:
+			return 2.0f * Math.abs(noise) - 1.0f;
+		default:
+			return noise;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * 
+ */
+package worldgenerator.util.noise;
+
+/**
+ * Gradient noise in three dimensions, as used by {@link PerlinNoiseMap}.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public interface NoiseGenerator {
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the noise at (x, y, z)
+	 */
+	public float Noise(float x, float y, float z);
+
+	/**
+	 * Evaluates the noise at (x, y[j], z) for all j and stores the values in
+	 * result[offset + j].
+	 * 
+	 * @param x
+	 * @param y
+	 *            coordinates of the samples along the row
+	 * @param z
+	 * @param result
+	 * @param offset
+	 *            index of the first value in result
+	 */
+	public void NoiseRow(float x, float[] y, float z, float[] result, int offset);
+
+	/**
+	 * Evaluates noise that repeats after periodX lattice cells in x and
+	 * periodY lattice cells in y, as {@link #NoiseRow(float, float[], float, float[], int)}.
+	 * A period of 0 turns the repetition off for that axis.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param periodX
+	 * @param periodY
+	 * @param result
+	 * @param offset
+	 */
+	public void NoiseRow(float x, float[] y, float z, int periodX, int periodY, float[] result, int offset);
+}
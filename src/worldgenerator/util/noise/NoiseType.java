@@ -0,0 +1,34 @@
+/**
+ * 
+ */
+package worldgenerator.util.noise;
+
+/**
+ * The noise generators {@link PerlinNoiseMap} can use.
+ *
+ * @author Felix Dietrich
+ *
+ */
+public enum NoiseType {
+	/**
+	 * {@link PerlinNoiseGenerator}, 8 lattice corners per sample.
+	 */
+	PERLIN,
+	/**
+	 * Layered 2d {@link SimplexNoiseGenerator}, 3 corners per sample.
+	 */
+	SIMPLEX;
+
+	/**
+	 * @param seed
+	 * @return a new generator of this type
+	 */
+	public NoiseGenerator create(int seed) {
+		switch (this) {
+		case SIMPLEX:
+			return new SimplexNoiseGenerator(seed, true);
+		default:
+			return new PerlinNoiseGenerator(seed);
+		}
+	}
+}
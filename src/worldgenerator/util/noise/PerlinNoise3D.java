@@ -1,12 +1,189 @@
 package worldgenerator.util.noise;
 
+import java.util.Random;
+
 /**
  * JAVA REFERENCE IMPLEMENTATION OF IMPROVED NOISE
  * COPYRIGHT 2002 KEN PERLIN.
+ * <br>
+ * The static {@link #noise(double, double, double)} is the unchanged reference with its fixed permutation.
+ * Instances use a permutation derived from a seed and have a float path and a batch path for many points,
+ * see {@link #evaluate(float[], float[], float[], float[], int, int)}.
+ * An instance created with {@link #PerlinNoise3D()} uses the reference permutation and gives the same values as the reference.
  * @author Ken Perlin
+ * @author Felix Dietrich
  */
 public class PerlinNoise3D {
 
+	/**
+	 * Components of the twelve gradient directions of the reference, indexed by
+	 * the lower four bits of the hash. They give the same sums as grad(hash, x, y, z).
+	 */
+	private static final float[] GRADIENT_X = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0, 1, 0, -1, 0 };
+	private static final float[] GRADIENT_Y = { 1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1, 1, -1, 1, -1 };
+	private static final float[] GRADIENT_Z = { 0, 0, 0, 0, 1, 1, -1, -1, 1, 1, -1, -1, 0, 1, 0, -1 };
+
+	/**
+	 * The permutation of this instance, repeated once as in the reference.
+	 */
+	private final int[] perm = new int[512];
+
+	/**
+	 * Creates noise with the permutation of the reference implementation.
+	 */
+	public PerlinNoise3D() {
+		System.arraycopy(p, 0, perm, 0, 512);
+	}
+
+	/**
+	 * Creates noise with a random permutation of 0..255 derived from the seed.
+	 * 
+	 * @param seed
+	 */
+	public PerlinNoise3D(long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < 256; i++)
+			perm[i] = i;
+		for (int i = 255; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = perm[i];
+			perm[i] = perm[j];
+			perm[j] = swap;
+		}
+		System.arraycopy(perm, 0, perm, 256, 256);
+	}
+
+	/**
+	 * The reference algorithm with the permutation of this instance.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the noise at (x, y, z), in [-1, 1]
+	 */
+	public double evaluate(double x, double y, double z) {
+		int X = (int) Math.floor(x) & 255, Y = (int) Math.floor(y) & 255, Z = (int) Math.floor(z) & 255;
+		x -= Math.floor(x);
+		y -= Math.floor(y);
+		z -= Math.floor(z);
+		double u = fade(x), v = fade(y), w = fade(z);
+		int A = perm[X] + Y, AA = perm[A] + Z, AB = perm[A + 1] + Z;
+		int B = perm[X + 1] + Y, BA = perm[B] + Z, BB = perm[B + 1] + Z;
+
+		return lerp(w,
+				lerp(v, lerp(u, grad(perm[AA], x, y, z), grad(perm[BA], x - 1, y, z)),
+						lerp(u, grad(perm[AB], x, y - 1, z), grad(perm[BB], x - 1, y - 1, z))),
+				lerp(v, lerp(u, grad(perm[AA + 1], x, y, z - 1), grad(perm[BA + 1], x - 1, y, z - 1)),
+						lerp(u, grad(perm[AB + 1], x, y - 1, z - 1), grad(perm[BB + 1], x - 1, y - 1, z - 1))));
+	}
+
+	/**
+	 * The algorithm in single precision, with table lookups instead of
+	 * branches for the gradients.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the noise at (x, y, z), in [-1, 1]
+	 */
+	public float evaluate(float x, float y, float z) {
+		int ix = fastFloor(x), iy = fastFloor(y), iz = fastFloor(z);
+		float fx = x - ix, fy = y - iy, fz = z - iz;
+		return evaluateCell(ix & 255, iy & 255, iz & 255, fx, fy, fz);
+	}
+
+	/**
+	 * Evaluates the noise at count points given as separate coordinate arrays
+	 * and stores the values in result. The points are processed in one loop
+	 * without calls or branches per gradient, which is the fastest way to
+	 * evaluate many unrelated points, for example the cells of a 3d volume.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param result
+	 * @param offset
+	 *            index of the first point in all arrays
+	 * @param count
+	 *            number of points
+	 */
+	public void evaluate(float[] x, float[] y, float[] z, float[] result, int offset, int count) {
+		if (offset < 0 || count < 0 || offset + count > Math.min(Math.min(x.length, y.length), Math.min(z.length, result.length)))
+			throw new IllegalArgumentException("the arrays cannot hold " + count + " points at offset " + offset + ".");
+
+		for (int i = offset, end = offset + count; i < end; i++) {
+			int ix = fastFloor(x[i]), iy = fastFloor(y[i]), iz = fastFloor(z[i]);
+			result[i] = evaluateCell(ix & 255, iy & 255, iz & 255, x[i] - ix, y[i] - iy, z[i] - iz);
+		}
+	}
+
+	/**
+	 * Evaluates the noise at (x0 + i * dx, y, z) for i in [0, count), for
+	 * example along one row of a 3d volume.
+	 * 
+	 * @param x0
+	 * @param dx
+	 * @param y
+	 * @param z
+	 * @param result
+	 *            array of at least count values
+	 * @param count
+	 */
+	public void evaluateRow(float x0, float dx, float y, float z, float[] result, int count) {
+		if (count < 0 || count > result.length)
+			throw new IllegalArgumentException("the result array of length " + result.length + " cannot hold " + count + " values.");
+
+		int iy = fastFloor(y), iz = fastFloor(z);
+		float fy = y - iy, fz = z - iz;
+		iy &= 255;
+		iz &= 255;
+		for (int i = 0; i < count; i++) {
+			float x = x0 + i * dx;
+			int ix = fastFloor(x);
+			result[i] = evaluateCell(ix & 255, iy, iz, x - ix, fy, fz);
+		}
+	}
+
+	private float evaluateCell(int X, int Y, int Z, float x, float y, float z) {
+		float u = fade(x), v = fade(y), w = fade(z);
+		int[] perm = this.perm;
+		int A = perm[X] + Y, AA = perm[A] + Z, AB = perm[A + 1] + Z;
+		int B = perm[X + 1] + Y, BA = perm[B] + Z, BB = perm[B + 1] + Z;
+		float x1 = x - 1, y1 = y - 1, z1 = z - 1;
+
+		float g000 = grad(perm[AA], x, y, z);
+		float g100 = grad(perm[BA], x1, y, z);
+		float g010 = grad(perm[AB], x, y1, z);
+		float g110 = grad(perm[BB], x1, y1, z);
+		float g001 = grad(perm[AA + 1], x, y, z1);
+		float g101 = grad(perm[BA + 1], x1, y, z1);
+		float g011 = grad(perm[AB + 1], x, y1, z1);
+		float g111 = grad(perm[BB + 1], x1, y1, z1);
+
+		// interpolate along x, then y, then z
+		float n00 = g000 + u * (g100 - g000);
+		float n10 = g010 + u * (g110 - g010);
+		float n01 = g001 + u * (g101 - g001);
+		float n11 = g011 + u * (g111 - g011);
+		float n0 = n00 + v * (n10 - n00);
+		float n1 = n01 + v * (n11 - n01);
+		return n0 + w * (n1 - n0);
+	}
+
+	private static int fastFloor(float value) {
+		int truncated = (int) value;
+		return value < truncated ? truncated - 1 : truncated;
+	}
+
+	private static float fade(float t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private static float grad(int hash, float x, float y, float z) {
+		int h = hash & 15;
+		return GRADIENT_X[h] * x + GRADIENT_Y[h] * y + GRADIENT_Z[h] * z;
+	}
+
 	static public double noise(double x, double y, double z) {
 		int X = (int) Math.floor(x) & 255, // FIND UNIT CUBE THAT
 		Y = (int) Math.floor(y) & 255, // CONTAINS POINT.
@@ -8,7 +8,7 @@ import java.util.Random;
  * -terrain-height-maps/ Mattias Fagerlund:
  * http://lotsacode.wordpress.com/2010/02/24/perlin-noise-in-c/
  */
-public class PerlinNoiseGenerator {
+public class PerlinNoiseGenerator implements NoiseGenerator {
 	private final int GradientSizeTable = 256;
 	private final Random _random;
 	private final float[] _gradients = new float[GradientSizeTable * 3];
@@ -38,6 +38,7 @@ public class PerlinNoiseGenerator {
 		InitGradients();
 	}
 
+	@Override
 	public float Noise(float x, float y, float z) {
 		int ix = (int) Math.floor(x);
 		float fx0 = x - ix;
@@ -76,6 +77,151 @@ public class PerlinNoiseGenerator {
 		return Lerp(wz, vz0, vz1);
 	}
 
+	/**
+	 * Evaluates the noise at (x, y[j], z) for all j and stores the values in
+	 * result[offset + j]. The results are identical to {@link #Noise(float, float, float)}.
+	 * Everything depending on x and z is computed once per row, the gradients of
+	 * the lattice cell are looked up again only when y crosses into the next cell.
+	 * 
+	 * @param x
+	 * @param y
+	 *            coordinates of the samples along the row
+	 * @param z
+	 * @param result
+	 * @param offset
+	 *            index of the first value in result
+	 */
+	@Override
+	public void NoiseRow(float x, float[] y, float z, float[] result, int offset) {
+		NoiseRow(x, y, z, 0, 0, result, offset);
+	}
+
+	/**
+	 * The lattice indices are taken modulo the periods before they are
+	 * hashed, so the noise repeats exactly. Periods larger than the gradient
+	 * table work as well.
+	 * 
+	 * @see worldgenerator.util.noise.NoiseGenerator#NoiseRow(float, float[],
+	 *      float, int, int, float[], int)
+	 */
+	@Override
+	public void NoiseRow(float x, float[] y, float z, int periodX, int periodY, float[] result, int offset) {
+		if (periodX < 0 || periodY < 0)
+			throw new IllegalArgumentException("the periods must not be negative, but were " + periodX + " and " + periodY + ".");
+		if (offset < 0 || offset + y.length > result.length)
+			throw new IllegalArgumentException("the result array of length "
+					+ result.length + " cannot hold " + y.length
+					+ " values at offset " + offset + ".");
+
+		int ix = (int) Math.floor(x);
+		float fx0 = x - ix;
+		float fx1 = fx0 - 1;
+		float wx = Smooth(fx0);
+
+		int iz = (int) Math.floor(z);
+		float fz0 = z - iz;
+		float fz1 = fz0 - 1;
+		float wz = Smooth(fz0);
+
+		// per corner of the lattice cell: gradient x * fx, gradient y and
+		// gradient z * fz, in the order (x, y, z) = 000, 100, 010, 110, 001, 101, 011, 111
+		float[] ax = new float[8];
+		float[] gy = new float[8];
+		float[] az = new float[8];
+		int cellY = 0;
+		boolean cellValid = false;
+
+		for (int j = 0; j < y.length; j++) {
+			int iy = (int) Math.floor(y[j]);
+			float fy0 = y[j] - iy;
+			float fy1 = fy0 - 1;
+			float wy = Smooth(fy0);
+
+			if (!cellValid || iy != cellY) {
+				for (int corner = 0; corner < 8; corner++) {
+					int dx = corner & 1;
+					int dy = (corner >> 1) & 1;
+					int dz = corner >> 2;
+					int g = Index(Wrap(ix + dx, periodX), Wrap(iy + dy, periodY), iz + dz) * 3;
+					ax[corner] = _gradients[g] * (dx == 0 ? fx0 : fx1);
+					gy[corner] = _gradients[g + 1];
+					az[corner] = _gradients[g + 2] * (dz == 0 ? fz0 : fz1);
+				}
+				cellY = iy;
+				cellValid = true;
+			}
+
+			// same order of operations as in Lattice, to get the same rounding
+			float vx0 = ax[0] + gy[0] * fy0 + az[0];
+			float vx1 = ax[1] + gy[1] * fy0 + az[1];
+			float vy0 = Lerp(wx, vx0, vx1);
+
+			vx0 = ax[2] + gy[2] * fy1 + az[2];
+			vx1 = ax[3] + gy[3] * fy1 + az[3];
+			float vy1 = Lerp(wx, vx0, vx1);
+
+			float vz0 = Lerp(wy, vy0, vy1);
+
+			vx0 = ax[4] + gy[4] * fy0 + az[4];
+			vx1 = ax[5] + gy[5] * fy0 + az[5];
+			vy0 = Lerp(wx, vx0, vx1);
+
+			vx0 = ax[6] + gy[6] * fy1 + az[6];
+			vx1 = ax[7] + gy[7] * fy1 + az[7];
+			vy1 = Lerp(wx, vx0, vx1);
+
+			float vz1 = Lerp(wy, vy0, vy1);
+			result[offset + j] = Lerp(wz, vz0, vz1);
+		}
+	}
+
+	/**
+	 * Evaluates the noise at (x[i], y[j], z) for all i and j and stores the
+	 * values row by row in result[i * y.length + j].
+	 * 
+	 * @param x
+	 *            coordinates of the rows
+	 * @param y
+	 *            coordinates of the samples along each row
+	 * @param z
+	 * @param result
+	 *            array of at least x.length * y.length values
+	 */
+	public void NoiseTile(float[] x, float[] y, float z, float[] result) {
+		for (int i = 0; i < x.length; i++) {
+			NoiseRow(x[i], y, z, result, i * y.length);
+		}
+	}
+
+	/**
+	 * The coordinates f * i / size for i in [0, size), as used by
+	 * {@link PerlinNoiseMap}.
+	 * 
+	 * @param f
+	 * @param size
+	 * @return the coordinates of a row or column of the map
+	 */
+	public static float[] Coordinates(float f, int size) {
+		return Coordinates(f, size, size);
+	}
+
+	/**
+	 * The first count coordinates f * i / size, for a row or column that is
+	 * shorter or longer than size.
+	 * 
+	 * @param f
+	 * @param size
+	 * @param count
+	 * @return the coordinates of a row or column of the map
+	 */
+	public static float[] Coordinates(float f, int size, int count) {
+		float[] result = new float[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = f * i / (float) size;
+		}
+		return result;
+	}
+
 	private void InitGradients() {
 		for (int i = 0; i < GradientSizeTable; i++) {
 			float z = 1f - 2f * (float) _random.nextDouble();
@@ -87,6 +233,13 @@ public class PerlinNoiseGenerator {
 		}
 	}
 
+	private static int Wrap(int index, int period) {
+		if (period == 0)
+			return index;
+		int result = index % period;
+		return result < 0 ? result + period : result;
+	}
+
 	private int Permutate(int x) {
 		final int mask = GradientSizeTable - 1;
 		return _perm[x & mask];
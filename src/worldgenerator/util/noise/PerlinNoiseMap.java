@@ -1,50 +1,98 @@
 package worldgenerator.util.noise;
 
+import worldgenerator.util.grid.StencilPipeline;
 
 /**
  * From:
  * http://www.float4x4.net/index.php/2010/06/generating-realistic-and-playable-terrain-height-maps/
+ * <br>
+ * The map has Rows x Cols heights. The frequencies and distances of the
+ * methods are relative to Size, the longer edge, so a rectangular map matches
+ * the square map of that size away from the cropped borders. A tileable map wraps
+ * around at its borders: the noise has a period of whole lattice cells, the
+ * perturbations read from the other side and {@link #Apply(StencilPipeline)}
+ * treats the map as periodic, so that copies of the map fit seamlessly.
+ * Erode and Erode2 do not wrap around, they keep the border cells.
  *
  */
 public class PerlinNoiseMap {
 	public float[][] Heights;
-	private PerlinNoiseGenerator Perlin;
+	private NoiseGenerator Perlin;
+	/**
+	 * The longer edge of the map.
+	 */
 	public int Size;
+	public int Rows;
+	public int Cols;
+	public boolean Tileable;
 
 	public PerlinNoiseMap(int size, int seed) {
-		Size = size;
-		Heights = new float[Size][Size];
-		Perlin = new PerlinNoiseGenerator(seed);
+		this(size, seed, NoiseType.PERLIN);
+	}
+
+	/**
+	 * @param size
+	 * @param seed
+	 * @param type the generator used for the noise and the perturbations
+	 */
+	public PerlinNoiseMap(int size, int seed, NoiseType type) {
+		this(size, size, seed, type, false);
+	}
+
+	/**
+	 * @param rows
+	 * @param cols
+	 * @param seed
+	 * @param type the generator used for the noise and the perturbations
+	 * @param tileable true if the map wraps around at its borders
+	 */
+	public PerlinNoiseMap(int rows, int cols, int seed, NoiseType type, boolean tileable) {
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("the size of the map must not be negative, but was " + rows + "x" + cols + ".");
+		Rows = rows;
+		Cols = cols;
+		Size = Math.max(rows, cols);
+		Tileable = tileable;
+		Heights = new float[Rows][Cols];
+		Perlin = type.create(seed);
 	}
 
+	/**
+	 * Adds noise with f lattice cells along the longer edge. A tileable map
+	 * rounds the number of cells along each edge to a whole number, at least
+	 * one.
+	 * 
+	 * @param f
+	 */
 	public void AddPerlinNoise(float f) {
-		for (int i = 0; i < Size; i++) {
-			for (int j = 0; j < Size; j++) {
-				Heights[i][j] += Perlin.Noise(f * i / (float) Size, f * j
-						/ (float) Size, 0);
+		float[] rowCoordinates = Coordinates(f, Rows);
+		float[] colCoordinates = Coordinates(f, Cols);
+		int rowPeriod = Period(f, Rows);
+		int colPeriod = Period(f, Cols);
+		float[] noise = new float[Cols];
+		for (int i = 0; i < Rows; i++) {
+			Perlin.NoiseRow(rowCoordinates[i], colCoordinates, 0, rowPeriod, colPeriod, noise, 0);
+			for (int j = 0; j < Cols; j++) {
+				Heights[i][j] += noise[j];
 			}
 		}
 	}
 
 	public void Perturb(float f, float d) {
 		int u, v;
-		float[][] temp = new float[Size][Size];
-		for (int i = 0; i < Size; ++i) {
-			for (int j = 0; j < Size; ++j) {
-				u = i
-						+ (int) (Perlin.Noise(f * i / (float) Size, f * j
-								/ (float) Size, 0) * d);
-				v = j
-						+ (int) (Perlin.Noise(f * i / (float) Size, f * j
-								/ (float) Size, 1) * d);
-				if (u < 0)
-					u = 0;
-				if (u >= Size)
-					u = Size - 1;
-				if (v < 0)
-					v = 0;
-				if (v >= Size)
-					v = Size - 1;
+		float[][] temp = new float[Rows][Cols];
+		float[] rowCoordinates = Coordinates(f, Rows);
+		float[] colCoordinates = Coordinates(f, Cols);
+		int rowPeriod = Period(f, Rows);
+		int colPeriod = Period(f, Cols);
+		float[] noiseU = new float[Cols];
+		float[] noiseV = new float[Cols];
+		for (int i = 0; i < Rows; ++i) {
+			Perlin.NoiseRow(rowCoordinates[i], colCoordinates, 0, rowPeriod, colPeriod, noiseU, 0);
+			Perlin.NoiseRow(rowCoordinates[i], colCoordinates, 1, rowPeriod, colPeriod, noiseV, 0);
+			for (int j = 0; j < Cols; ++j) {
+				u = Index(i + (int) (noiseU[j] * d), Rows);
+				v = Index(j + (int) (noiseV[j] * d), Cols);
 				temp[i][j] = Heights[u][v];
 			}
 		}
@@ -63,25 +111,21 @@ public class PerlinNoiseMap {
 		int u, v;
 		double variance = 0;
 		double mean = 0;//mean(Heights);
-		float[][] temp = new float[Size][Size];
-		for (int i = 0; i < Size; ++i) {
-			for (int j = 0; j < Size; ++j) {
+		float[][] temp = new float[Rows][Cols];
+		float[] rowCoordinates = Coordinates(f, Rows);
+		float[] colCoordinates = Coordinates(f, Cols);
+		int rowPeriod = Period(f, Rows);
+		int colPeriod = Period(f, Cols);
+		float[] noiseU = new float[Cols];
+		float[] noiseV = new float[Cols];
+		for (int i = 0; i < Rows; ++i) {
+			Perlin.NoiseRow(rowCoordinates[i], colCoordinates, 0, rowPeriod, colPeriod, noiseU, 0);
+			Perlin.NoiseRow(rowCoordinates[i], colCoordinates, 1, rowPeriod, colPeriod, noiseV, 0);
+			for (int j = 0; j < Cols; ++j) {
 				variance = (Heights[i][j]-mean)*(Heights[i][j]-mean);
 				
-				u = i
-						+ (int) (Perlin.Noise(f * i / (float) Size, f * j
-								/ (float) Size, 0) * d * (s * variance+0.1f));
-				v = j
-						+ (int) (Perlin.Noise(f * i / (float) Size, f * j
-								/ (float) Size, 1) * d * (s * variance+0.1f));
-				if (u < 0)
-					u = 0;
-				if (u >= Size)
-					u = Size - 1;
-				if (v < 0)
-					v = 0;
-				if (v >= Size)
-					v = Size - 1;
+				u = Index(i + (int) (noiseU[j] * d * (s * variance+0.1f)), Rows);
+				v = Index(j + (int) (noiseV[j] * d * (s * variance+0.1f)), Cols);
 				temp[i][j] = Heights[u][v];
 			}
 		}
@@ -90,17 +134,17 @@ public class PerlinNoiseMap {
 
 	private double mean(float[][] heights2) {
 		double result = 0.0;
-		for (int i = 0; i < Size; ++i) {
-			for (int j = 0; j < Size; ++j) {
+		for (int i = 0; i < Rows; ++i) {
+			for (int j = 0; j < Cols; ++j) {
 				result += Heights[i][j];
 			}
 		}
-		return result / (Size*Size);
+		return result / ((double) Rows * Cols);
 	}
 
 	public void Erode(float smoothness) {
-		for (int i = 1; i < Size - 1; i++) {
-			for (int j = 1; j < Size - 1; j++) {
+		for (int i = 1; i < Rows - 1; i++) {
+			for (int j = 1; j < Cols - 1; j++) {
 				float d_max = 0.0f;
 				int[] match = { 0, 0 };
 
@@ -137,8 +181,8 @@ public class PerlinNoiseMap {
 		double variance = 0;
 		double mean = 0;//mean(Heights);
 				
-		for (int i = 1; i < Size - 1; i++) {
-			for (int j = 1; j < Size - 1; j++) {
+		for (int i = 1; i < Rows - 1; i++) {
+			for (int j = 1; j < Cols - 1; j++) {
 				variance = Math.abs(Heights[i][j]-mean);
 				float d_max = 0.0f;
 				int[] match = { 0, 0 };
@@ -165,18 +209,58 @@ public class PerlinNoiseMap {
 		}
 	}
 
+	/**
+	 * 3x3 box blur of the inner cells, computed from the heights before the
+	 * blur.
+	 */
 	public void Smoothen() {
-		for (int i = 1; i < Size - 1; ++i) {
-			for (int j = 1; j < Size - 1; ++j) {
-				float total = 0.0f;
-				for (int u = -1; u <= 1; u++) {
-					for (int v = -1; v <= 1; v++) {
-						total += Heights[i + u][j + v];
-					}
-				}
+		Apply(new StencilPipeline().then(StencilPipeline.smooth()));
+	}
 
-				Heights[i][j] = total / 9.0f;
-			}
+	/**
+	 * Applies the stencils of the pipeline to the heights in one sweep,
+	 * across the borders if the map is tileable.
+	 * 
+	 * @param pipeline
+	 */
+	public void Apply(StencilPipeline pipeline) {
+		Heights = pipeline.apply(Heights, Tileable);
+	}
+
+	/**
+	 * The coordinates of the rows or columns for noise with f lattice cells
+	 * along the longer edge, or with {@link #Period(float, int)} cells along
+	 * this edge if the map is tileable.
+	 */
+	private float[] Coordinates(float f, int count) {
+		if (Tileable)
+			return PerlinNoiseGenerator.Coordinates(Period(f, count), count, count);
+		return PerlinNoiseGenerator.Coordinates(f, Size, count);
+	}
+
+	/**
+	 * @return the number of lattice cells along an edge of count heights if
+	 *         the map is tileable, 0 otherwise
+	 */
+	private int Period(float f, int count) {
+		if (!Tileable)
+			return 0;
+		return Math.max(1, Math.round(f * count / Size));
+	}
+
+	/**
+	 * @return the index wrapped around if the map is tileable, clamped to
+	 *         the map otherwise
+	 */
+	private int Index(int index, int count) {
+		if (Tileable) {
+			int result = index % count;
+			return result < 0 ? result + count : result;
 		}
+		if (index < 0)
+			return 0;
+		if (index >= count)
+			return count - 1;
+		return index;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,308 @@
+/**
+ * 
+ */
+package worldgenerator.util.noise;
+
+import java.util.Random;
+
+/**
+ * Simplex noise after Ken Perlin, in the formulation of Stefan Gustavson, "Simplex noise demystified" (2005).
+ * A sample interpolates 3 corners of a triangle in 2d and 4 corners of a tetrahedron in 3d,
+ * instead of the 4 and 8 corners of a square and a cube in {@link PerlinNoiseGenerator}.
+ * <br>
+ * The generator is seeded like {@link PerlinNoiseGenerator}: the same seed gives the same noise.
+ * Layered generators evaluate 2d noise in the layer floor(z) through the {@link NoiseGenerator} methods,
+ * which is all {@link PerlinNoiseMap} needs, since it only uses z = 0 and z = 1 to get two independent noise maps.
+ * The layer enters the lattice hash like z in {@link #Noise3(float, float, float)}, the noise is not continuous in z.
+ * Other generators evaluate full 3d noise.
+ * The values lie in about [-1, 1].
+ *
+ * @author Felix Dietrich
+ *
+ */
+public class SimplexNoiseGenerator implements NoiseGenerator {
+
+	private static final float F2 = (float) (0.5 * (Math.sqrt(3.0) - 1.0));
+	private static final float G2 = (float) ((3.0 - Math.sqrt(3.0)) / 6.0);
+	private static final float F3 = 1.0f / 3.0f;
+	private static final float G3 = 1.0f / 6.0f;
+
+	/**
+	 * The twelve gradients to the midpoints of the edges of a cube, the 2d noise uses their x and y components.
+	 */
+	private static final float[] GRADIENT_X = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0 };
+	private static final float[] GRADIENT_Y = { 1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1 };
+	private static final float[] GRADIENT_Z = { 0, 0, 0, 0, 1, 1, -1, -1, 1, 1, -1, -1 };
+
+	private final boolean layered;
+	/**
+	 * Permutation of 0..255 derived from the seed, repeated once so that sums of two indices need no mask.
+	 */
+	private final int[] perm = new int[512];
+	/**
+	 * perm modulo 12, the index of the gradient of a lattice point.
+	 */
+	private final int[] permMod12 = new int[512];
+
+	/**
+	 * Creates a generator of 3d noise.
+	 * 
+	 * @param seed
+	 */
+	public SimplexNoiseGenerator(int seed) {
+		this(seed, false);
+	}
+
+	/**
+	 * @param seed
+	 * @param layered
+	 *            if true, {@link #Noise(float, float, float)} and
+	 *            {@link #NoiseRow(float, float[], float, float[], int)}
+	 *            evaluate 2d noise in the layer floor(z).
+	 */
+	public SimplexNoiseGenerator(int seed, boolean layered) {
+		this.layered = layered;
+
+		Random random = new Random(seed);
+		for (int i = 0; i < 256; i++)
+			perm[i] = i;
+		for (int i = 255; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = perm[i];
+			perm[i] = perm[j];
+			perm[j] = swap;
+		}
+		for (int i = 0; i < 512; i++) {
+			perm[i] = perm[i & 255];
+			permMod12[i] = perm[i] % 12;
+		}
+	}
+
+	/**
+	 * @return true if the noise is 2d noise in layers of integer z.
+	 */
+	public boolean isLayered() {
+		return layered;
+	}
+
+	@Override
+	public float Noise(float x, float y, float z) {
+		if (layered)
+			return Noise2(x, y, perm[fastFloor(z) & 255]);
+		return Noise3(x, y, z);
+	}
+
+	@Override
+	public void NoiseRow(float x, float[] y, float z, float[] result, int offset) {
+		if (offset < 0 || offset + y.length > result.length)
+			throw new IllegalArgumentException("the result array of length "
+					+ result.length + " cannot hold " + y.length
+					+ " values at offset " + offset + ".");
+
+		if (layered) {
+			// the hash of the layer is the same for the whole row
+			int layer = perm[fastFloor(z) & 255];
+			for (int j = 0; j < y.length; j++) {
+				result[offset + j] = Noise2(x, y[j], layer);
+			}
+		} else {
+			for (int j = 0; j < y.length; j++) {
+				result[offset + j] = Noise3(x, y[j], z);
+			}
+		}
+	}
+
+	/**
+	 * The skewed lattice of simplex noise cannot be wrapped like a square
+	 * lattice. The periodic noise blends four samples instead, one from each
+	 * copy of the period around the point, with bilinear weights: at x = 0
+	 * the blend only contains the sample from the copy that is exactly at
+	 * x = periodX, so the edges match. The blend has a lower contrast in the
+	 * middle of the period than the plain noise.
+	 * 
+	 * @see worldgenerator.util.noise.NoiseGenerator#NoiseRow(float, float[],
+	 *      float, int, int, float[], int)
+	 */
+	@Override
+	public void NoiseRow(float x, float[] y, float z, int periodX, int periodY, float[] result, int offset) {
+		if (periodX < 0 || periodY < 0)
+			throw new IllegalArgumentException("the periods must not be negative, but were " + periodX + " and " + periodY + ".");
+		if (periodX == 0 && periodY == 0) {
+			NoiseRow(x, y, z, result, offset);
+			return;
+		}
+		if (offset < 0 || offset + y.length > result.length)
+			throw new IllegalArgumentException("the result array of length "
+					+ result.length + " cannot hold " + y.length
+					+ " values at offset " + offset + ".");
+
+		int layer = perm[fastFloor(z) & 255];
+		float wrappedX = periodX > 0 ? x - (float) Math.floor(x / periodX) * periodX : x;
+		for (int j = 0; j < y.length; j++) {
+			float wrappedY = periodY > 0 ? y[j] - (float) Math.floor(y[j] / periodY) * periodY : y[j];
+			float value;
+			if (periodY == 0) {
+				value = ((periodX - wrappedX) * Sample(wrappedX, wrappedY, z, layer)
+						+ wrappedX * Sample(wrappedX - periodX, wrappedY, z, layer)) / periodX;
+			} else if (periodX == 0) {
+				value = ((periodY - wrappedY) * Sample(wrappedX, wrappedY, z, layer)
+						+ wrappedY * Sample(wrappedX, wrappedY - periodY, z, layer)) / periodY;
+			} else {
+				value = ((periodX - wrappedX) * (periodY - wrappedY) * Sample(wrappedX, wrappedY, z, layer)
+						+ wrappedX * (periodY - wrappedY) * Sample(wrappedX - periodX, wrappedY, z, layer)
+						+ (periodX - wrappedX) * wrappedY * Sample(wrappedX, wrappedY - periodY, z, layer)
+						+ wrappedX * wrappedY * Sample(wrappedX - periodX, wrappedY - periodY, z, layer))
+						/ ((float) periodX * periodY);
+			}
+			result[offset + j] = value;
+		}
+	}
+
+	private float Sample(float x, float y, float z, int layer) {
+		return layered ? Noise2(x, y, layer) : Noise3(x, y, z);
+	}
+
+	/**
+	 * 2d simplex noise.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return the noise at (x, y) in layer 0
+	 */
+	public float Noise(float x, float y) {
+		return Noise2(x, y, perm[0]);
+	}
+
+	/**
+	 * 2d noise with the hash of a layer added to the y index of the lattice, as
+	 * perm[kk] in the hash of the 3d noise.
+	 */
+	private float Noise2(float x, float y, int layer) {
+		// skew the input space to find the simplex cell
+		float s = (x + y) * F2;
+		int i = fastFloor(x + s);
+		int j = fastFloor(y + s);
+		float t = (i + j) * G2;
+		float x0 = x - (i - t);
+		float y0 = y - (j - t);
+
+		// the second corner is on the lower or upper triangle of the cell
+		int i1 = x0 > y0 ? 1 : 0;
+		int j1 = 1 - i1;
+
+		float x1 = x0 - i1 + G2;
+		float y1 = y0 - j1 + G2;
+		float x2 = x0 - 1.0f + 2.0f * G2;
+		float y2 = y0 - 1.0f + 2.0f * G2;
+
+		int ii = i & 255;
+		int jj = j & 255;
+		int g0 = permMod12[ii + perm[jj + layer]];
+		int g1 = permMod12[ii + i1 + perm[jj + j1 + layer]];
+		int g2 = permMod12[ii + 1 + perm[jj + 1 + layer]];
+
+		float n = 0.0f;
+		float t0 = 0.5f - x0 * x0 - y0 * y0;
+		if (t0 > 0) {
+			t0 *= t0;
+			n += t0 * t0 * (GRADIENT_X[g0] * x0 + GRADIENT_Y[g0] * y0);
+		}
+		float t1 = 0.5f - x1 * x1 - y1 * y1;
+		if (t1 > 0) {
+			t1 *= t1;
+			n += t1 * t1 * (GRADIENT_X[g1] * x1 + GRADIENT_Y[g1] * y1);
+		}
+		float t2 = 0.5f - x2 * x2 - y2 * y2;
+		if (t2 > 0) {
+			t2 *= t2;
+			n += t2 * t2 * (GRADIENT_X[g2] * x2 + GRADIENT_Y[g2] * y2);
+		}
+		return 70.0f * n;
+	}
+
+	/**
+	 * 3d simplex noise.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the noise at (x, y, z)
+	 */
+	public float Noise3(float x, float y, float z) {
+		// skew the input space to find the simplex cell
+		float s = (x + y + z) * F3;
+		int i = fastFloor(x + s);
+		int j = fastFloor(y + s);
+		int k = fastFloor(z + s);
+		float t = (i + j + k) * G3;
+		float x0 = x - (i - t);
+		float y0 = y - (j - t);
+		float z0 = z - (k - t);
+
+		// offsets of the second and third corner, from the order of x0, y0 and z0
+		int i1, j1, k1, i2, j2, k2;
+		if (x0 >= y0) {
+			if (y0 >= z0) {
+				i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+			} else if (x0 >= z0) {
+				i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+			} else {
+				i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+			}
+		} else {
+			if (y0 < z0) {
+				i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+			} else if (x0 < z0) {
+				i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+			} else {
+				i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+			}
+		}
+
+		float x1 = x0 - i1 + G3;
+		float y1 = y0 - j1 + G3;
+		float z1 = z0 - k1 + G3;
+		float x2 = x0 - i2 + 2.0f * G3;
+		float y2 = y0 - j2 + 2.0f * G3;
+		float z2 = z0 - k2 + 2.0f * G3;
+		float x3 = x0 - 1.0f + 3.0f * G3;
+		float y3 = y0 - 1.0f + 3.0f * G3;
+		float z3 = z0 - 1.0f + 3.0f * G3;
+
+		int ii = i & 255;
+		int jj = j & 255;
+		int kk = k & 255;
+		int g0 = permMod12[ii + perm[jj + perm[kk]]];
+		int g1 = permMod12[ii + i1 + perm[jj + j1 + perm[kk + k1]]];
+		int g2 = permMod12[ii + i2 + perm[jj + j2 + perm[kk + k2]]];
+		int g3 = permMod12[ii + 1 + perm[jj + 1 + perm[kk + 1]]];
+
+		float n = 0.0f;
+		float t0 = 0.6f - x0 * x0 - y0 * y0 - z0 * z0;
+		if (t0 > 0) {
+			t0 *= t0;
+			n += t0 * t0 * (GRADIENT_X[g0] * x0 + GRADIENT_Y[g0] * y0 + GRADIENT_Z[g0] * z0);
+		}
+		float t1 = 0.6f - x1 * x1 - y1 * y1 - z1 * z1;
+		if (t1 > 0) {
+			t1 *= t1;
+			n += t1 * t1 * (GRADIENT_X[g1] * x1 + GRADIENT_Y[g1] * y1 + GRADIENT_Z[g1] * z1);
+		}
+		float t2 = 0.6f - x2 * x2 - y2 * y2 - z2 * z2;
+		if (t2 > 0) {
+			t2 *= t2;
+			n += t2 * t2 * (GRADIENT_X[g2] * x2 + GRADIENT_Y[g2] * y2 + GRADIENT_Z[g2] * z2);
+		}
+		float t3 = 0.6f - x3 * x3 - y3 * y3 - z3 * z3;
+		if (t3 > 0) {
+			t3 *= t3;
+			n += t3 * t3 * (GRADIENT_X[g3] * x3 + GRADIENT_Y[g3] * y3 + GRADIENT_Z[g3] * z3);
+		}
+		return 32.0f * n;
+	}
+
+	private static int fastFloor(float value) {
+		int truncated = (int) value;
+		return value < truncated ? truncated - 1 : truncated;
+	}
+}
@@ -2,8 +2,13 @@ package worldgenerator.test.geometry.river;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import geometry.Point3D;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -11,6 +16,11 @@ import worldgenerator.io.RiverPlotter;
 import worldgenerator.objects.river.GridCellRiverVertex;
 import worldgenerator.objects.river.River;
 import worldgenerator.objects.river.RiverFactory;
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridFactory;
+import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.IntGrid2D;
 
 public class TestRiverFactory {
 	private static final GridCellRiverVertex source = new GridCellRiverVertex(new Point3D(0,0,0), 1);
@@ -35,4 +45,94 @@ public class TestRiverFactory {
 		assertNotSame("Additional rivers should have been created.", 0, river.getConnectedRivers().size());
 	}
 
+	@Test
+	public void testCreateMultiple() {
+		// a valley along column 20 that drains to the first row
+		DoubleGrid2D heightmap = new DoubleGrid2D(40, 41);
+		for (int r = 0; r < 40; r++) {
+			for (int c = 0; c < 41; c++) {
+				heightmap.set(r, c, 0.2 + 0.01 * r + 0.02 * Math.abs(c - 20));
+			}
+		}
+		Collection<River> rivers = RiverFactory.createMultiple(heightmap, 5, 40);
+
+		assertEquals("The valley should have one river.", 1, rivers.size());
+		River river = rivers.iterator().next();
+		assertEquals("The river should end at the border.", 0.0, river.getSink().getPosition().y, 0.0);
+		assertEquals("The river should end in the valley.", 20.0, river.getSink().getPosition().x, 0.0);
+		assertEquals("All water should flow through the mouth.", 40 * 41, river.getSink().getFlux(), 0.0);
+		for (GridCellRiverVertex vertex : river.getVertices()) {
+			assertEquals("The river should follow the valley.", 20.0, vertex.getPosition().x, 0.0);
+		}
+
+		assertEquals("No rivers should be created.", 0, RiverFactory.createMultiple(heightmap, 0, 40).size());
+	}
+
+	@Test
+	public void testSharedFlowDirections() {
+		// the same valley, the depressions are filled once for the watersheds and the rivers
+		DoubleGrid2D heightmap = new DoubleGrid2D(40, 41);
+		for (int r = 0; r < 40; r++) {
+			for (int c = 0; c < 41; c++) {
+				heightmap.set(r, c, 0.2 + 0.01 * r + 0.02 * Math.abs(c - 20));
+			}
+		}
+		IntGrid2D directions = RiverFactory.createFlowDirections(heightmap);
+		IntGrid2D watersheds = RiverFactory.createWatersheds(directions);
+		Collection<River> rivers = RiverFactory.createMultiple(heightmap, directions, 5, 40);
+
+		assertEquals("The valley should be one watershed.", Integer.valueOf(0), watersheds.getMaximum().getData());
+		assertEquals("The valley should be one watershed.", Integer.valueOf(0), watersheds.getMinimum().getData());
+		assertEquals("Watersheds should not depend on the shared directions.", watersheds.get(39, 0), RiverFactory.createWatersheds(heightmap).get(39, 0));
+		assertEquals("The valley should have one river.", 1, rivers.size());
+		assertEquals("All water should flow through the mouth.", 40 * 41, rivers.iterator().next().getSink().getFlux(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFlowDirectionsSize() {
+		RiverFactory.createMultiple(new DoubleGrid2D(10, 10), new IntGrid2D(10, 9), 1);
+	}
+
+	@Test
+	public void testCreateMultipleTributaries() {
+		DoubleGrid2D heightmap = GridFactory.create2D(GridType.PERLIN_NOISE_2D, new GridAttributes(128, 128, 3));
+		Collection<River> rivers = RiverFactory.createMultiple(heightmap, 4, 64);
+
+		assertTrue("Rivers should have been created.", rivers.size() > 0 && rivers.size() <= 4);
+		double previousFlux = Double.POSITIVE_INFINITY;
+		int tributaries = 0;
+		for (River river : rivers) {
+			assertTrue("Rivers should be ordered by their flux.", river.getSink().getFlux() <= previousFlux);
+			previousFlux = river.getSink().getFlux();
+			tributaries += checkRiver(river, 64);
+		}
+		assertTrue("Rivers should have tributaries.", tributaries > 0);
+	}
+
+	/**
+	 * Checks that the river flows from cell to cell with growing flux and that its tributaries join at its vertices.
+	 * @return the number of tributaries of the river and its tributaries
+	 */
+	private static int checkRiver(River river, int minFlux) {
+		List<GridCellRiverVertex> vertices = river.getVertices();
+		assertSame("First vertex should be the source.", river.getSource(), vertices.get(0));
+		assertSame("Last vertex should be the sink.", river.getSink(), vertices.get(vertices.size() - 1));
+		for (int i = 0; i < vertices.size(); i++) {
+			GridCellRiverVertex vertex = vertices.get(i);
+			assertTrue("Flux should be at least the minimum.", vertex.getFlux() >= minFlux);
+			if (i > 0) {
+				GridCellRiverVertex previous = vertices.get(i - 1);
+				assertTrue("Vertices should be neighbours.", Math.abs(vertex.getPosition().x - previous.getPosition().x) <= 1
+						&& Math.abs(vertex.getPosition().y - previous.getPosition().y) <= 1 && vertex != previous);
+				assertTrue("Flux should grow downstream.", vertex.getFlux() > previous.getFlux());
+			}
+		}
+
+		int result = 0;
+		for (River tributary : river.getConnectedRivers()) {
+			assertTrue("Tributary should join at a vertex of the river.", vertices.contains(tributary.getSink()));
+			result += 1 + checkRiver(tributary, minFlux);
+		}
+		return result;
+	}
 }
@@ -0,0 +1,125 @@
+package worldgenerator.test.geometry.river;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import geometry.Point3D;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import worldgenerator.objects.river.GridCellRiverVertex;
+import worldgenerator.objects.river.River;
+import worldgenerator.objects.river.RiverFactory;
+import worldgenerator.objects.river.RiverPolyline;
+
+public class TestRiverPolyline {
+
+	private static GridCellRiverVertex vertex(double x) {
+		return new GridCellRiverVertex(new Point3D(x, 0, 0), x);
+	}
+
+	private static double[] xs(RiverPolyline polyline) {
+		double[] result = new double[polyline.size()];
+		int i = 0;
+		for (int handle = polyline.first(); handle != RiverPolyline.NONE; handle = polyline.next(handle)) {
+			result[i++] = polyline.x(handle);
+		}
+		return result;
+	}
+
+	@Test
+	public void testInsert() {
+		// small capacity, so that the arrays grow
+		RiverPolyline polyline = new RiverPolyline(1);
+		int first = polyline.append(vertex(1));
+		int last = polyline.append(vertex(4));
+		int middle = polyline.insertAfter(first, vertex(2));
+		polyline.insertBefore(last, vertex(3));
+		polyline.insertAfter(RiverPolyline.NONE, vertex(0));
+		polyline.insertBefore(RiverPolyline.NONE, vertex(5));
+
+		assertArrayEquals("Vertices should be in the order of the links.", new double[] { 0, 1, 2, 3, 4, 5 }, xs(polyline), 0.0);
+		assertEquals("Handles should stay valid when the arrays grow.", 2.0, polyline.flux(middle), 0.0);
+		assertEquals("Wrong vertex before the middle.", first, polyline.previous(middle));
+		assertEquals("Last vertex should have no next vertex.", RiverPolyline.NONE, polyline.next(polyline.last()));
+		assertEquals("Vertex should be found by position and flux.", middle, polyline.find(vertex(2)));
+		assertEquals("Vertex should not be found.", RiverPolyline.NONE, polyline.find(vertex(7)));
+		assertEquals("Vertex should be created from the arrays.", vertex(3), polyline.vertex(polyline.previous(last)));
+	}
+
+	@Test
+	public void testBulkInsert() {
+		RiverPolyline polyline = new RiverPolyline(2);
+		int first = polyline.append(vertex(0));
+		int last = polyline.append(vertex(9));
+		int handle = polyline.insertBefore(last, new double[] { 1, 2, 3 }, new double[3], new double[3], new double[] { 1, 2, 3 }, 3);
+		polyline.insertBefore(handle, new double[] { 0.5 }, new double[1], new double[1], new double[] { 0.5 }, 1);
+		assertEquals("No vertices should be added.", RiverPolyline.NONE, polyline.insertBefore(last, new double[0], new double[0], new double[0], new double[0], 0));
+
+		assertArrayEquals("Bulk vertices should be inserted in order.", new double[] { 0, 0.5, 1, 2, 3, 9 }, xs(polyline), 0.0);
+		assertEquals("Bulk handles should be ascending.", 3.0, polyline.x(handle + 2), 0.0);
+		assertEquals("Wrong first vertex.", first, polyline.first());
+		assertEquals("Wrong number of vertices.", 6, polyline.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidHandle() {
+		RiverPolyline polyline = new RiverPolyline();
+		polyline.append(vertex(0));
+		polyline.insertAfter(1, vertex(1));
+	}
+
+	@Test
+	public void testRiver() {
+		GridCellRiverVertex source = vertex(0);
+		GridCellRiverVertex sink = vertex(10);
+		River river = new River(source, sink);
+		int handle = river.addVertex(vertex(5));
+		river.addVertex(river.getSourceHandle(), vertex(2));
+		river.addVertex(vertex(5), vertex(7));
+		river.addVertices(new double[] { 8, 9 }, new double[2], new double[2], new double[] { 8, 9 }, 2);
+
+		List<GridCellRiverVertex> vertices = river.getVertices();
+		assertArrayEquals("River should keep the order of the vertices.", new double[] { 0, 2, 5, 7, 8, 9, 10 }, xs(river.getPolyline()), 0.0);
+		assertSame("First vertex should be the source.", source, vertices.get(0));
+		assertSame("Last vertex should be the sink.", sink, vertices.get(6));
+		assertEquals("Vertices should be equal by value.", 2, vertices.indexOf(vertex(5)));
+		assertEquals("Handle should point to the vertex.", 5.0, river.getPolyline().x(handle), 0.0);
+
+		// tributaries joining at the same vertex add it once
+		River tributary = new River(vertex(20), vertex(9.5));
+		river.addConnectedSource(tributary);
+		river.addConnectedSource(new River(vertex(30), vertex(9.5)));
+		river.addConnectedSource(new River(vertex(40), sink));
+		assertEquals("Joining vertex should be added once.", 8, river.getVertices().size());
+		assertEquals("All tributaries should be connected.", 3, river.getConnectedRivers().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddAfterSink() {
+		River river = new River(vertex(0), vertex(1));
+		river.addVertex(river.getSinkHandle(), vertex(2));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnlyPolyline() {
+		River river = new River(vertex(0), vertex(1));
+		RiverPolyline polyline = river.getPolyline();
+		river.addVertex(vertex(0.5));
+		assertEquals("View should show the new vertices.", 3, polyline.size());
+		assertEquals("View should show the vertices.", 0.5, polyline.x(polyline.previous(river.getSinkHandle())), 0.0);
+		polyline.insertAfter(river.getSinkHandle(), vertex(2));
+	}
+
+	@Test
+	public void testCreateSingle() {
+		River river = RiverFactory.createSingle(vertex(0), vertex(1000), 1 << 16, 0.5);
+
+		assertTrue("River should have the new vertices.", river.getPolyline().size() >= 1 << 16);
+		assertEquals("Sink should stay the last vertex.", river.getSinkHandle(), river.getPolyline().last());
+		assertEquals("Source should stay the first vertex.", river.getSourceHandle(), river.getPolyline().first());
+	}
+}
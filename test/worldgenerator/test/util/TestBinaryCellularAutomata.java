@@ -0,0 +1,128 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.BinaryCellularAutomata;
+import worldgenerator.util.grid.BinaryCellularAutomata.BinaryRule;
+import worldgenerator.util.grid.CellularAutomata;
+import worldgenerator.util.grid.CellularAutomata.CARule;
+import worldgenerator.util.grid.CellularAutomata.Neighbourhood;
+import worldgenerator.util.grid.CellularAutomata.Neighbours;
+import worldgenerator.util.grid.IntGrid2D;
+
+public class TestBinaryCellularAutomata {
+
+	private static final int seed = 6;
+
+	private static IntGrid2D randomGrid(int rows, int cols) {
+		Random random = new Random(seed);
+		IntGrid2D result = new IntGrid2D(rows, cols);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				result.set(r, c, random.nextInt(3) == 0 ? 1 : 0);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The totalistic rule on a grid of ints, as reference.
+	 */
+	private static CARule<Integer> totalistic(final int birth, final int survival) {
+		return new CARule<Integer>() {
+			@Override
+			public Integer apply(Neighbours<Integer> cell) {
+				int count = cell.count(1);
+				int rule = cell.get() == 1 ? survival : birth;
+				return (rule >>> count) & 1;
+			}
+		};
+	}
+
+	@Test
+	public void testTotalistic() {
+		// columns not a multiple of 64, large enough to be split into bands
+		IntGrid2D grid = randomGrid(300, 150);
+		int[][] rules = { { 1 << 3, 1 << 2 | 1 << 3 }, { 0x1F2, 0x14D }, { 1 << 1 | 1 << 4, 1 << 0 | 1 << 3 } };
+		Neighbourhood[] neighbourhoods = { Neighbourhood.MOORE, Neighbourhood.MOORE, Neighbourhood.VON_NEUMANN };
+		for (int i = 0; i < rules.length; i++) {
+			BinaryCellularAutomata binary = BinaryCellularAutomata.valueOf(grid, 1,
+					BinaryCellularAutomata.totalistic(neighbourhoods[i], rules[i][0], rules[i][1]));
+			CellularAutomata<Integer> reference = new CellularAutomata<Integer>(grid, totalistic(rules[i][0], rules[i][1]), neighbourhoods[i]);
+			for (int step = 0; step < 6; step++) {
+				binary.step();
+				reference.step();
+				IntGrid2D expected = IntGrid2D.valueOf(reference.result());
+				IntGrid2D result = binary.result(1, 0);
+				for (int r = 0; r < 300; r++) {
+					for (int c = 0; c < 150; c++) {
+						assertEquals("Cell does not match the rule on ints.", expected.get(r, c), result.get(r, c));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBorders() {
+		// a rule that moves every cell one column to the right
+		BinaryCellularAutomata automata = new BinaryCellularAutomata(2, 130, new BinaryRule() {
+			@Override
+			public long apply(long northWest, long north, long northEast, long west, long center, long east, long southWest, long south, long southEast) {
+				return west;
+			}
+		});
+		automata.set(0, 62, true);
+		automata.set(1, 129, true);
+		automata.set(5, 5, true);
+		assertEquals("Cells outside should be ignored.", 2, automata.count());
+
+		automata.step(2);
+		assertTrue("Cell should cross the word border.", automata.get(0, 64));
+		assertFalse("Cell should leave the grid.", automata.get(1, 129));
+		assertEquals("Bits beyond the last column should stay 0.", 1, automata.count());
+
+		IntGrid2D result = automata.result(7, -1);
+		assertEquals("Wrong value of set cells.", 7, result.get(0, 64));
+		assertEquals("Wrong value of other cells.", -1, result.get(1, 0));
+	}
+
+	@Test
+	public void testConvergence() {
+		// cells grow into all edge neighbours until the grid is full
+		BinaryCellularAutomata automata = new BinaryCellularAutomata(20, 100, BinaryCellularAutomata.totalistic(Neighbourhood.VON_NEUMANN, 0x1E, 0x1F));
+		automata.set(0, 0, true);
+		automata.step(1000);
+		// the farthest cell is 118 steps away, the next step does not change anything
+		assertEquals("Automata should stop after it converged.", 119, automata.steps());
+		assertTrue("Automata should have converged.", automata.converged());
+		assertEquals("All cells should be set.", 20 * 100, automata.count());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCountTooLarge() {
+		BinaryCellularAutomata.totalistic(Neighbourhood.VON_NEUMANN, 1 << 5, 0);
+	}
+
+	@Test
+	public void testLargeGrid() {
+		// game of life on a grid that is split into many bands
+		IntGrid2D grid = randomGrid(1024, 1024);
+		BinaryCellularAutomata binary = BinaryCellularAutomata.valueOf(grid, 1, BinaryCellularAutomata.totalistic(Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3));
+		CellularAutomata<Integer> ints = new CellularAutomata<Integer>(grid, totalistic(1 << 3, 1 << 2 | 1 << 3), Neighbourhood.MOORE);
+		binary.step(10);
+		ints.step(10);
+
+		IntGrid2D expected = IntGrid2D.valueOf(ints.result());
+		IntGrid2D result = binary.result(1, 0);
+		for (int r = 0; r < 1024; r++) {
+			for (int c = 0; c < 1024; c++) {
+				assertEquals("Cell does not match the rule on ints.", expected.get(r, c), result.get(r, c));
+			}
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.CellularAutomata;
+import worldgenerator.util.grid.CellularAutomata.CARule;
+import worldgenerator.util.grid.CellularAutomata.CAStep;
+import worldgenerator.util.grid.CellularAutomata.Neighbourhood;
+import worldgenerator.util.grid.CellularAutomata.Neighbours;
+import worldgenerator.util.grid.CellularAutomata.UpdateMode;
+import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.IntGrid2D;
+
+public class TestCellularAutomata {
+
+	private static final int seed = 5;
+
+	/**
+	 * Conway's game of life.
+	 */
+	private static final CARule<Integer> life = new CARule<Integer>() {
+		@Override
+		public Integer apply(Neighbours<Integer> cell) {
+			int alive = cell.count(1);
+			return alive == 3 || (alive == 2 && cell.get() == 1) ? 1 : 0;
+		}
+	};
+
+	/**
+	 * Copies the value of the left neighbour.
+	 */
+	private static final CARule<Integer> shift = new CARule<Integer>() {
+		@Override
+		public Integer apply(Neighbours<Integer> cell) {
+			Integer left = cell.get(0, -1);
+			return left == null ? cell.get() : left;
+		}
+	};
+
+	private static IntGrid2D randomGrid(int rows, int cols) {
+		Random random = new Random(seed);
+		IntGrid2D result = new IntGrid2D(rows, cols);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				result.set(r, c, random.nextInt(3) == 0 ? 1 : 0);
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testBlinker() {
+		IntGrid2D grid = new IntGrid2D(5, 5);
+		grid.set(2, 1, 1);
+		grid.set(2, 2, 1);
+		grid.set(2, 3, 1);
+		CellularAutomata<Integer> automata = new CellularAutomata<Integer>(grid, life, Neighbourhood.MOORE);
+
+		automata.step();
+		IntGrid2D result = IntGrid2D.valueOf(automata.result());
+		assertEquals("Wrong number of steps.", 1, automata.steps());
+		for (int r = 0; r < 5; r++) {
+			for (int c = 0; c < 5; c++) {
+				assertEquals("Blinker should be vertical.", c == 2 && r >= 1 && r <= 3 ? 1 : 0, result.get(r, c));
+			}
+		}
+
+		automata.step();
+		assertEquals("Blinker should be horizontal again.", 1, IntGrid2D.valueOf(automata.result()).get(2, 1));
+		assertEquals("The result of the first step should not change.", 1, result.get(1, 2));
+		assertEquals("The initial data should not change.", 0, grid.get(1, 2));
+	}
+
+	@Test
+	public void testParallel() {
+		// large enough to be split into bands
+		IntGrid2D grid = randomGrid(300, 200);
+		CellularAutomata<Integer> automata = new CellularAutomata<Integer>(grid, life, Neighbourhood.MOORE);
+		automata.step(5);
+
+		int[][] expected = new int[300][200];
+		for (int r = 0; r < 300; r++) {
+			for (int c = 0; c < 200; c++) {
+				expected[r][c] = grid.get(r, c);
+			}
+		}
+		for (int step = 0; step < 5; step++) {
+			int[][] next = new int[300][200];
+			for (int r = 0; r < 300; r++) {
+				for (int c = 0; c < 200; c++) {
+					int alive = 0;
+					for (int u = Math.max(0, r - 1); u <= Math.min(299, r + 1); u++) {
+						for (int v = Math.max(0, c - 1); v <= Math.min(199, c + 1); v++) {
+							if (u != r || v != c)
+								alive += expected[u][v];
+						}
+					}
+					next[r][c] = alive == 3 || (alive == 2 && expected[r][c] == 1) ? 1 : 0;
+				}
+			}
+			expected = next;
+		}
+
+		IntGrid2D result = IntGrid2D.valueOf(automata.result());
+		for (int r = 0; r < 300; r++) {
+			for (int c = 0; c < 200; c++) {
+				assertEquals("Cell does not match the sequential game of life.", expected[r][c], result.get(r, c));
+			}
+		}
+	}
+
+	@Test
+	public void testUpdateModes() {
+		IntGrid2D grid = new IntGrid2D(2, 6);
+		grid.set(0, 0, 1);
+
+		CellularAutomata<Integer> buffered = new CellularAutomata<Integer>(grid, shift, Neighbourhood.VON_NEUMANN, UpdateMode.DOUBLE_BUFFERED);
+		buffered.step();
+		IntGrid2D result = IntGrid2D.valueOf(buffered.result());
+		assertArrayEquals("Double buffered values should move one cell.", new int[] { 1, 1, 0, 0, 0, 0 }, row(result, 0));
+
+		CellularAutomata<Integer> inPlace = new CellularAutomata<Integer>(grid, shift, Neighbourhood.VON_NEUMANN, UpdateMode.IN_PLACE);
+		inPlace.step();
+		result = IntGrid2D.valueOf(inPlace.result());
+		assertArrayEquals("In-place values should move through the whole row.", new int[] { 1, 1, 1, 1, 1, 1 }, row(result, 0));
+		assertArrayEquals("Second row should not change.", new int[6], row(result, 1));
+	}
+
+	@Test
+	public void testFrontier() {
+		IntGrid2D grid = randomGrid(300, 200);
+		CellularAutomata<Integer> full = new CellularAutomata<Integer>(grid, life, Neighbourhood.MOORE, UpdateMode.DOUBLE_BUFFERED);
+		CellularAutomata<Integer> frontier = new CellularAutomata<Integer>(grid, life, Neighbourhood.MOORE, UpdateMode.FRONTIER);
+		assertEquals("First step should compute all cells.", 300 * 200, frontier.frontierSize());
+		for (int step = 0; step < 20; step++) {
+			full.step();
+			frontier.step();
+			IntGrid2D expected = IntGrid2D.valueOf(full.result());
+			IntGrid2D result = IntGrid2D.valueOf(frontier.result());
+			for (int r = 0; r < 300; r++) {
+				assertArrayEquals("Frontier should give the same cells as double buffers.", row(expected, r), row(result, r));
+			}
+		}
+		
+		// a glider only changes a few cells in each step
+		IntGrid2D glider = new IntGrid2D(300, 200);
+		glider.set(10, 11, 1);
+		glider.set(11, 12, 1);
+		glider.set(12, 10, 1);
+		glider.set(12, 11, 1);
+		glider.set(12, 12, 1);
+		frontier = new CellularAutomata<Integer>(glider, life, Neighbourhood.MOORE, UpdateMode.FRONTIER);
+		frontier.step(8);
+		assertTrue("Frontier should only contain the cells around the glider: " + frontier.frontierSize(), frontier.frontierSize() < 100);
+		IntGrid2D result = IntGrid2D.valueOf(frontier.result());
+		assertEquals("Glider should move two cells.", 1, result.get(14, 13));
+		assertEquals("Glider should keep its five cells.", 5.0 / (300 * 200), result.getStatistics().getMean(), 1e-12);
+	}
+
+	@Test
+	public void testConvergence() {
+		IntGrid2D grid = new IntGrid2D(1, 50);
+		grid.set(0, 0, 1);
+		for (UpdateMode mode : new UpdateMode[] { UpdateMode.DOUBLE_BUFFERED, UpdateMode.FRONTIER }) {
+			CellularAutomata<Integer> automata = new CellularAutomata<Integer>(grid, shift, Neighbourhood.VON_NEUMANN, mode);
+			automata.step(1000);
+			// 49 steps move the value to the end, the next one does not change anything
+			assertEquals("Automata should stop after it converged.", 50, automata.steps());
+			assertTrue("Automata should have converged.", automata.converged());
+			assertArrayEquals("All cells should be set.", new int[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+					1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, row(IntGrid2D.valueOf(automata.result()), 0));
+		}
+
+		// a cell that depends on the step stays active
+		CellularAutomata<Integer> counter = new CellularAutomata<Integer>(new IntGrid2D(3, 3), new CARule<Integer>() {
+			@Override
+			public Integer apply(Neighbours<Integer> cell) {
+				if (cell.row() != 1 || cell.col() != 1)
+					return cell.get();
+				cell.keepActive();
+				return cell.step() / 2;
+			}
+		}, Neighbourhood.MOORE, UpdateMode.FRONTIER);
+		counter.step(8);
+		assertFalse("Active cell should prevent convergence.", counter.converged());
+		assertEquals("Active cell should be computed in every step.", 3, IntGrid2D.valueOf(counter.result()).get(1, 1));
+		assertEquals("Only the active cell should be computed.", 1, counter.frontierSize());
+	}
+
+	@Test
+	public void testGenericGrid() {
+		ComparableGrid2D<Double> grid = new ComparableGrid2D<Double>(4, 4, new GridCellDouble(0.0));
+		grid.setDataAt(1, 1, 4.0);
+		CellularAutomata<Double> automata = new CellularAutomata<Double>(grid, new CARule<Double>() {
+			@Override
+			public Double apply(Neighbours<Double> cell) {
+				// mean of the cell and its neighbours inside the grid
+				double sum = cell.get();
+				int count = 1;
+				for (int i = 0; i < cell.neighbourhood().size(); i++) {
+					double value = cell.getDouble(cell.neighbourhood().rowOffset(i), cell.neighbourhood().colOffset(i));
+					if (!Double.isNaN(value)) {
+						sum += value;
+						count++;
+					}
+				}
+				return sum / count;
+			}
+		}, Neighbourhood.VON_NEUMANN);
+		automata.step();
+
+		ComparableGrid2D<Double> result = automata.result();
+		assertFalse("Result should be a copy of the grid type.", result instanceof DoubleGrid2D);
+		assertEquals("Center should be the mean.", 0.8, result.getDataAt(1, 1).getData(), 1e-12);
+		assertEquals("Neighbour at the border should be the mean.", 1.0, result.getDataAt(0, 1).getData(), 1e-12);
+		assertEquals("Corner should not change.", 0.0, result.getDataAt(3, 3).getData(), 0.0);
+		assertEquals("The initial data should not change.", 4.0, grid.getDataAt(1, 1).getData(), 0.0);
+	}
+
+	@Test
+	public void testStepFunction() {
+		IntGrid2D grid = new IntGrid2D(3, 3);
+		CellularAutomata<Integer> automata = new CellularAutomata<Integer>(grid, new CAStep<Integer>() {
+			@Override
+			public ComparableGrid2D<Integer> work(ComparableGrid2D<Integer> grid) {
+				IntGrid2D values = IntGrid2D.valueOf(grid);
+				values.set(1, 1, values.get(1, 1) + 1);
+				return values;
+			}
+		});
+		automata.step(3);
+		assertEquals("Step function should be applied three times.", 3, IntGrid2D.valueOf(automata.result()).get(1, 1));
+	}
+
+	@Test
+	public void testTotalistic() {
+		IntGrid2D grid = randomGrid(40, 70);
+		CellularAutomata<Integer> reference = new CellularAutomata<Integer>(grid, life, Neighbourhood.MOORE);
+		CellularAutomata<Integer> binary = CellularAutomata.totalistic(grid, 1, 0, Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3);
+		// a third value counts as zero and is kept until a cell is born there
+		IntGrid2D mixed = IntGrid2D.valueOf(grid);
+		mixed.set(0, 0, 2);
+		mixed.set(39, 69, 2);
+		CellularAutomata<Integer> rule = CellularAutomata.totalistic(mixed, 1, 0, Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3);
+		reference.step(10);
+		binary.step(10);
+		rule.step(10);
+
+		assertEquals("Binary automata should count the steps.", 10, binary.steps());
+		IntGrid2D expected = IntGrid2D.valueOf(reference.result());
+		IntGrid2D bits = IntGrid2D.valueOf(binary.result());
+		IntGrid2D values = IntGrid2D.valueOf(rule.result());
+		for (int r = 0; r < grid.rows(); r++) {
+			for (int c = 0; c < grid.cols(); c++) {
+				assertEquals("Binary automata does not match at " + r + "," + c + ".", expected.get(r, c), bits.get(r, c));
+				assertEquals("Rule automata does not match at " + r + "," + c + ".", expected.get(r, c) == 1, values.get(r, c) == 1);
+			}
+		}
+
+		IntGrid2D single = new IntGrid2D(3, 3);
+		single.set(1, 1, 2);
+		CellularAutomata<Integer> kept = CellularAutomata.totalistic(single, 1, 0, Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3);
+		kept.step();
+		assertEquals("Value that is not a state should be kept.", 2, IntGrid2D.valueOf(kept.result()).get(1, 1));
+		assertTrue("Automata without changes should converge.", kept.converged());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTotalisticSameStates() {
+		CellularAutomata.totalistic(new IntGrid2D(3, 3), 1, 1, Neighbourhood.MOORE, 1 << 3, 1 << 2 | 1 << 3);
+	}
+
+	private static int[] row(IntGrid2D grid, int row) {
+		int[] result = new int[grid.cols()];
+		for (int c = 0; c < result.length; c++) {
+			result[c] = grid.get(row, c);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.DoubleGrid2DRegion;
+import worldgenerator.util.grid.Grid2D;
+import worldgenerator.util.grid.Grid2D.Grid2DIterator;
+import worldgenerator.util.grid.GridCell;
+import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.GridStatistics;
+import worldgenerator.util.grid.RowBandExecutor;
+import worldgenerator.util.grid.ScaledGrid2D;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestDoubleGrid2D {
+
+	private DoubleGrid2D grid;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		grid = new DoubleGrid2D(3, 4);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				grid.set(r, c, r * grid.cols() + c);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor() {
+		new DoubleGrid2D(-1, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorTooLarge() {
+		// the cells do not fit into one array, this must fail before anything is allocated
+		new DoubleGrid2D(1 << 16, 1 << 16);
+	}
+
+	@Test
+	public void testGetSet() {
+		assertEquals("Rows does not not match.", 3, grid.rows());
+		assertEquals("Cols does not not match.", 4, grid.cols());
+		assertEquals("Value does not match.", 6.0, grid.get(1, 2), 1e-10);
+		assertEquals("Cell does not match.", 6.0, grid.getDataAt(1, 2).getData(), 1e-10);
+		
+		// invalid positions are ignored
+		grid.set(3, 0, 100.0);
+		assertEquals("Maximum does not match.", 11.0, grid.getMaximum().getData(), 1e-10);
+		assertEquals("Minimum does not match.", 0.0, grid.getMinimum().getData(), 1e-10);
+	}
+
+	@Test
+	public void testArithmetic() {
+		grid.add(new GridCellDouble(1.0));
+		grid.mult(new GridCellDouble(2.0));
+		assertEquals("Value does not match.", 14.0, grid.get(1, 2), 1e-10);
+		assertEquals("Maximum does not match.", 24.0, grid.getMaximum().getData(), 1e-10);
+		assertEquals("Minimum does not match.", 2.0, grid.getMinimum().getData(), 1e-10);
+		
+		grid.add(grid.clone());
+		assertEquals("Value does not match.", 28.0, grid.get(1, 2), 1e-10);
+	}
+
+	@Test
+	public void testInPlaceArithmetic() {
+		DoubleGrid2D chained = grid.clone();
+		chained.add(new GridCellDouble(0.5));
+		chained.mult(new GridCellDouble(2.0));
+		chained.add(new GridCellDouble(-3.0));
+		
+		grid.affine(0.5, 2.0, -3.0);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				assertEquals("Value does not match.", chained.get(r, c), grid.get(r, c), 0.0);
+			}
+		}
+		assertEquals("Maximum does not match.", 20.0, grid.getMaximum().getData(), 1e-10);
+		assertEquals("Minimum does not match.", -2.0, grid.getMinimum().getData(), 1e-10);
+		
+		grid.rescale(-1.0, 1.0);
+		assertEquals("Value does not match.", -1.0, grid.get(0, 0), 1e-10);
+		assertEquals("Value does not match.", 1.0, grid.get(2, 3), 1e-10);
+		assertEquals("Maximum does not match.", 1.0, grid.getMaximum().getData(), 1e-10);
+		
+		grid.addScaled(grid.clone(), -1.0);
+		assertEquals("Maximum does not match.", 0.0, grid.getMaximum().getData(), 1e-10);
+		assertEquals("Minimum does not match.", 0.0, grid.getMinimum().getData(), 1e-10);
+	}
+
+	@Test
+	public void testExpression() {
+		DoubleGrid2D expected = grid.clone();
+		expected.mult(new GridCellDouble(2.0));
+		expected.add(new GridCellDouble(-1.0));
+		expected.clamp(0.0, 10.0);
+		
+		DoubleGrid2D result = grid.expression().scale(2.0).offset(-1.0).clamp(0.0, 10.0).evaluate();
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				assertEquals("Value does not match.", expected.get(r, c), result.get(r, c), 0.0);
+			}
+		}
+		assertEquals("Source should not change.", 11.0, grid.get(2, 3), 0.0);
+		assertEquals("Maximum does not match.", 10.0, result.getMaximum().getData(), 0.0);
+		assertEquals("Minimum does not match.", 0.0, result.getMinimum().getData(), 0.0);
+		
+		// a large grid is evaluated in parallel row bands
+		DoubleGrid2D large = new DoubleGrid2D(512, 512, 1.0);
+		large.expression().add(large).scale(0.25).evaluateInto(large);
+		assertEquals("Maximum does not match.", 0.5, large.getMaximum().getData(), 0.0);
+		assertEquals("Minimum does not match.", 0.5, large.getMinimum().getData(), 0.0);
+	}
+
+	@Test
+	public void testClamp() {
+		grid.clamp(2.0, 5.0);
+		assertEquals("Value does not match.", 2.0, grid.get(0, 0), 1e-10);
+		assertEquals("Value does not match.", 5.0, grid.get(2, 3), 1e-10);
+		assertEquals("Maximum does not match.", 5.0, grid.getMaximum().getData(), 1e-10);
+		assertEquals("Minimum does not match.", 2.0, grid.getMinimum().getData(), 1e-10);
+	}
+
+	@Test
+	public void testSumDataOverArea() {
+		ComparableGrid2D<Double> boxed = new ComparableGrid2D<Double>(grid.rows(), grid.cols(), new GridCellDouble(0.0));
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				boxed.setDataAt(r, c, grid.get(r, c));
+			}
+		}
+		
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				assertEquals("Sum does not match.", boxed.sumDataOverArea(r, c, 3).getData(), grid.sumOverArea(r, c, 3), 1e-10);
+			}
+		}
+		assertSame("valueOf should not copy a DoubleGrid2D.", grid, DoubleGrid2D.valueOf(grid));
+		assertEquals("Copied value does not match.", 6.0, DoubleGrid2D.valueOf(boxed).get(1, 2), 1e-10);
+	}
+
+	@Test
+	public void testStatistics() {
+		DoubleGrid2D values = new DoubleGrid2D(3, 4, 1e6);
+		values.set(0, 0, 1e6 + 1);
+		values.set(2, 3, 1e6 - 1);
+		GridStatistics stats = values.getStatistics();
+		
+		assertEquals("Count does not match.", 12, stats.getCount());
+		assertEquals("Mean does not match.", 1e6, stats.getMean(), 1e-9);
+		assertEquals("Variance does not match.", 2.0 / 12, stats.getVariance(), 1e-9);
+		assertSame("Statistics should be cached.", stats, values.getStatistics());
+		
+		GridStatistics merged = GridStatistics.merge(stats, new DoubleGrid2D(3, 4, 1e6).getStatistics());
+		assertEquals("Merged variance does not match.", 2.0 / 24, merged.getVariance(), 1e-9);
+		
+		values.affine(-1e6, 2.0, 0.0);
+		assertEquals("Statistics should be recomputed after changes.", 2.0, values.getStatistics().getMaximum(), 0.0);
+		assertArrayEquals("Histogram does not match.", new int[] { 1, 10, 1 }, values.getHistogram(3));
+		assertEquals("Statistics of the expression do not match.", 20.0 / 9, values.expression().mult(values).evaluate().getStatistics().getVariance(), 1e-9);
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		DoubleGrid2D original = new DoubleGrid2D(4, 5, 1.0);
+		DoubleGrid2D copy = original.clone();
+		DoubleGrid2D second = copy.clone();
+		
+		copy.set(1, 1, 3.0);
+		assertEquals("Original must not see writes to the clone.", 1.0, original.get(1, 1), 0.0);
+		assertEquals("Second clone must not see writes to the clone.", 1.0, second.get(1, 1), 0.0);
+		assertEquals("Clone does not match.", 3.0, copy.get(1, 1), 0.0);
+		
+		original.mult(2.0);
+		assertEquals("Second clone must not see writes to the original.", 1.0, second.get(0, 0), 0.0);
+		assertEquals("Maximum of the clone does not match.", 3.0, copy.getMaximum().getData(), 0.0);
+		assertEquals("Maximum of the original does not match.", 2.0, original.getMaximum().getData(), 0.0);
+	}
+
+	@Test
+	public void testCopyOnWriteParallel() {
+		// large enough to be split into bands if there are several threads
+		DoubleGrid2D original = new DoubleGrid2D(128, RowBandExecutor.MIN_PARALLEL_CELLS / 128 + 1, 1.0);
+		DoubleGrid2D copy = original.clone();
+		
+		copy.iterateParallel(new Grid2DIterator<Double>()
+		{
+			@Override
+			public void step(int row, int col, GridCell<Double> gridCell, Grid2D<Double> grid2d)
+			{
+				grid2d.setDataAt(row, col, gridCell.getData() + row * grid2d.cols() + col);
+			}
+		});
+		
+		for(int r=0; r<original.rows(); r++)
+		{
+			for(int c=0; c<original.cols(); c++)
+			{
+				assertEquals("Original must not see writes to the clone.", 1.0, original.get(r, c), 0.0);
+				assertEquals("Clone does not match.", 1.0 + r * copy.cols() + c, copy.get(r, c), 0.0);
+			}
+		}
+		assertEquals("Maximum of the original does not match.", 1.0, original.getMaximum().getData(), 0.0);
+	}
+
+	@Test
+	public void testCopyOnWriteConcurrent() throws InterruptedException {
+		// the original and its clone un-share at the same time, the clone writes its array in place while the original copies it
+		for(int run=0; run<20; run++)
+		{
+			final DoubleGrid2D original = new DoubleGrid2D(512, 512, 1.0);
+			final DoubleGrid2D copy = original.clone();
+			Thread writeOriginal = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					original.set(0, 0, 2.0);
+				}
+			});
+			Thread writeCopy = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					copy.fill(new GridCellDouble(3.0));
+				}
+			});
+			writeOriginal.start();
+			writeCopy.start();
+			writeOriginal.join();
+			writeCopy.join();
+			
+			assertEquals("Original does not match.", 2.0, original.get(0, 0), 0.0);
+			assertEquals("Original must not see writes to the clone.", 1.0, original.getStatistics().getMinimum(), 0.0);
+			assertEquals("Original must not see writes to the clone.", 2.0, original.getStatistics().getMaximum(), 0.0);
+			assertEquals("Clone does not match.", 3.0, copy.getStatistics().getMinimum(), 0.0);
+		}
+	}
+
+	@Test
+	public void testViews() {
+		DoubleGrid2D values = new DoubleGrid2D(6, 7);
+		for(int r=0; r<values.rows(); r++)
+		{
+			for(int c=0; c<values.cols(); c++)
+			{
+				values.set(r, c, r * 10 + c);
+			}
+		}
+		
+		DoubleGrid2DRegion region = values.region(2, 3, 3, 2);
+		assertEquals("Region value does not match.", 23.0, region.get(0, 0), 0.0);
+		assertEquals("Region maximum does not match.", 44.0, region.getMaximum().getData(), 0.0);
+		assertEquals("Region of region does not match.", 34.0, region.region(1, 1, 2, 1).get(0, 0), 0.0);
+		
+		region.set(0, 0, 100.0);
+		assertEquals("Region must write to the grid.", 100.0, values.get(2, 3), 0.0);
+		values.set(4, 4, -1.0);
+		assertEquals("Region must see writes to the grid.", -1.0, region.getMinimum().getData(), 0.0);
+		region.add(new GridCellDouble(1.0));
+		assertEquals("Cells outside of the region must not change.", 22.0, values.get(2, 2), 0.0);
+		assertEquals("Grid maximum should be updated.", 101.0, values.getMaximum().getData(), 0.0);
+		
+		ScaledGrid2D scaled = new ScaledGrid2D(values, -2.0, 1.0);
+		assertEquals("Scaled value does not match.", -1.0, scaled.get(0, 1), 0.0);
+		assertEquals("Scaled minimum does not match.", -201.0, scaled.getMinimum().getData(), 0.0);
+		values.set(0, 0, -50.0);
+		assertEquals("Scaled maximum should follow the source.", 101.0, scaled.getMaximum().getData(), 0.0);
+		assertEquals("Copy of the view does not match.", 101.0, scaled.clone().get(0, 0), 0.0);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testScaledReadOnly() {
+		new ScaledGrid2D(new DoubleGrid2D(2, 2), 2.0, 0.0).setDataAt(0, 0, 1.0);
+	}
+}
@@ -0,0 +1,91 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridFactory;
+import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridType;
+import worldgenerator.util.noise.FractalNoise;
+
+public class TestFractalNoise {
+
+	private static final int seed = 5;
+
+	@Test
+	public void testFill() {
+		FractalNoise noise = new FractalNoise(seed, FractalNoise.Type.FBM, 4, 2.0f, 0.5f);
+		int rows = 150;
+		int cols = 130;
+		float frequency = 0.03f;
+		float[] values = new float[rows * cols];
+		noise.fill(values, rows, cols, frequency);
+		
+		assertEquals("All octaves should be used.", 4, noise.activeOctaves(frequency));
+		for (int r = 0; r < rows; r += 7) {
+			for (int c = 0; c < cols; c += 5) {
+				assertEquals("Grid value does not match single value.", noise.noise(r * frequency, c * frequency), values[r * cols + c], 1e-5);
+			}
+		}
+	}
+
+	@Test
+	public void testFillSkippedOctaves() {
+		FractalNoise noise = new FractalNoise(seed, FractalNoise.Type.FBM, 10, 2.0f, 0.5f);
+		// only the first three octaves are visible, the same octaves as a noise with three octaves
+		FractalNoise visible = new FractalNoise(seed, FractalNoise.Type.FBM, 3, 2.0f, 0.5f);
+		int rows = 40;
+		int cols = 30;
+		float frequency = 0.1f;
+		float[] values = new float[rows * cols];
+		noise.fill(values, rows, cols, frequency);
+		
+		assertEquals("Fine octaves should be skipped.", 3, noise.activeOctaves(frequency));
+		// the sum is divided by the amplitudes of the visible octaves only
+		for (int r = 0; r < rows; r += 3) {
+			for (int c = 0; c < cols; c += 2) {
+				assertEquals("Grid value does not match the visible octaves.", visible.noise(r * frequency, c * frequency), values[r * cols + c], 1e-5);
+			}
+		}
+	}
+
+	@Test
+	public void testOctaveSkipping() {
+		FractalNoise noise = new FractalNoise(seed, FractalNoise.Type.FBM, 10, 2.0f, 0.5f);
+		// frequencies 0.1, 0.2, 0.4 are visible, 0.8 is finer than the grid
+		assertEquals("Octaves above the grid resolution should be skipped.", 3, noise.activeOctaves(0.1f));
+		
+		noise.setMinimumAmplitude(0.1f);
+		// amplitudes relative to the sum of about 2: 0.5, 0.25, 0.125, 0.0625
+		assertEquals("Octaves with small amplitude should be skipped.", 3, noise.activeOctaves(0.001f));
+	}
+
+	@Test
+	public void testTypes() {
+		float[] values = new float[64 * 64];
+		new FractalNoise(seed, FractalNoise.Type.RIDGED, 3, 2.0f, 0.5f).fill(values, 64, 64, 0.05f);
+		for (float value : values) {
+			assertTrue("Ridged noise should be in [0,1].", value >= 0.0f && value <= 1.0f);
+		}
+		new FractalNoise(seed, FractalNoise.Type.BILLOW, 3, 2.0f, 0.5f).fill(values, 64, 64, 0.05f);
+		for (float value : values) {
+			assertTrue("Billow noise should be in [-1,1].", value >= -1.0f && value <= 1.0f);
+		}
+	}
+
+	@Test
+	public void testGridFactory() {
+		DoubleGrid2D grid = GridFactory.create2D(GridType.FRACTAL_NOISE_2D, new GridAttributes(200, 150, seed));
+		assertEquals("Maximum does not match.", 1.0, grid.getMaximum().getData(), 1e-9);
+		assertEquals("Minimum does not match.", -1.0, grid.getMinimum().getData(), 1e-9);
+		DoubleGrid2D again = GridFactory.create2D(GridType.FRACTAL_NOISE_2D, new GridAttributes(200, 150, seed));
+		assertEquals("Same seed should give the same grid.", grid.get(123, 77), again.get(123, 77), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLacunarity() {
+		new FractalNoise(seed, FractalNoise.Type.FBM, 4, 1.0f, 0.5f);
+	}
+}
@@ -5,11 +5,17 @@ package worldgenerator.test.util;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import worldgenerator.util.grid.ComparableGrid2D;
+import worldgenerator.util.grid.Grid2D;
+import worldgenerator.util.grid.Grid2D.Grid2DIterator;
+import worldgenerator.util.grid.GridCell;
 import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.RowBandExecutor;
 
 
 /**
@@ -47,4 +53,64 @@ public class TestGrid2D {
 		assertEquals("Rows does not not match.", 1, grid.rows());
 		assertEquals("Cols does not not match.", 2, grid.cols());
 	}
+
+	@Test
+	public void testClamp() {
+		ComparableGrid2D<Double> grid = new ComparableGrid2D<Double>(2, 2, new GridCellDouble(0.0));
+		grid.setDataAt(0, 0, -5.0);
+		grid.setDataAt(0, 1, 1.0);
+		grid.setDataAt(1, 0, 5.0);
+		grid.clamp(-1.0, 2.0);
+		
+		assertEquals("Value should be clamped to the minimum.", -1.0, grid.getDataAt(0, 0).getData(), 0.0);
+		assertEquals("Value inside the range should not change.", 1.0, grid.getDataAt(0, 1).getData(), 0.0);
+		assertEquals("Maximum does not match.", 2.0, grid.getMaximum().getData(), 0.0);
+		assertEquals("Minimum does not match.", -1.0, grid.getMinimum().getData(), 0.0);
+	}
+
+	@Test
+	public void testStatistics() {
+		ComparableGrid2D<Double> grid = new ComparableGrid2D<Double>(2, 2, new GridCellDouble(0.0));
+		grid.setDataAt(0, 0, 1.0);
+		grid.setDataAt(1, 1, 3.0);
+		
+		assertEquals("Mean does not match.", 1.0, grid.getStatistics().getMean(), 1e-12);
+		assertEquals("Variance does not match.", 1.5, grid.getStatistics().getVariance(), 1e-12);
+		assertArrayEquals("Histogram does not match.", new int[] { 2, 1, 1 }, grid.getHistogram(3));
+		
+		// the cached statistics must be dropped on writes
+		grid.setDataAt(1, 1, -3.0);
+		assertEquals("Minimum should follow writes.", -3.0, grid.getStatistics().getMinimum(), 0.0);
+		assertEquals("Maximum cell should follow writes.", 1.0, grid.getMaximum().getData(), 0.0);
+	}
+
+	@Test
+	public void testIterateParallel() {
+		// large enough to be split into bands if there are several threads
+		final int rows = 160;
+		final int cols = RowBandExecutor.MIN_PARALLEL_CELLS / rows + 1;
+		ComparableGrid2D<Double> grid = new ComparableGrid2D<Double>(rows, cols, new GridCellDouble(0.0));
+		assertEquals("Maximum does not match.", 0.0, grid.getMaximum().getData(), 0.0);
+		
+		final AtomicIntegerArray visits = new AtomicIntegerArray(rows * cols);
+		grid.iterateParallel(new Grid2DIterator<Double>()
+		{
+			@Override
+			public void step(int row, int col, GridCell<Double> gridCell, Grid2D<Double> grid2d)
+			{
+				visits.incrementAndGet(row * cols + col);
+				grid2d.setDataAt(row, col, (double) (row * cols + col));
+			}
+		});
+		
+		for(int r=0; r<rows; r++)
+		{
+			for(int c=0; c<cols; c++)
+			{
+				assertEquals("Cell should be visited exactly once.", 1, visits.get(r * cols + c));
+				assertEquals("Written value does not match.", r * cols + c, grid.getDataAt(r, c).getData(), 0.0);
+			}
+		}
+		assertEquals("Maximum should follow the writes of the iterator.", rows * cols - 1, grid.getMaximum().getData(), 0.0);
+	}
 }
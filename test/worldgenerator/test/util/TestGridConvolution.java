@@ -0,0 +1,130 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridConvolution;
+import worldgenerator.util.grid.GridConvolution.Boundary;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestGridConvolution {
+
+	private DoubleGrid2D grid;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rand = new Random(0);
+		grid = new DoubleGrid2D(19, 23);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				grid.set(r, c, rand.nextDouble() * 2 - 1);
+			}
+		}
+	}
+
+	/**
+	 * The separable gaussian filter must give the same result as the full two dimensional kernel.
+	 */
+	@Test
+	public void testSeparableGaussian() {
+		for(int kernelSize = 1; kernelSize < 12; kernelSize++)
+		{
+			double[] kernel1D = GridConvolution.gaussianKernel(kernelSize);
+			double[][] kernel = new double[kernelSize][kernelSize];
+			for(int u=0; u<kernelSize; u++)
+			{
+				for(int v=0; v<kernelSize; v++)
+				{
+					kernel[u][v] = kernel1D[u] * kernel1D[v];
+				}
+			}
+
+			for(Boundary boundary : Boundary.values())
+			{
+				DoubleGrid2D separable = grid.clone();
+				GridConvolution.gaussianFilter(separable, kernelSize, boundary);
+				DoubleGrid2D direct = grid.clone();
+				GridConvolution.convolveDirect(direct, kernel, boundary);
+
+				assertGridEquals("separable " + boundary + " " + kernelSize, direct, separable, 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * The FFT must give the same result as the direct convolution, also for kernels larger than the grid.
+	 */
+	@Test
+	public void testFFT() {
+		Random rand = new Random(1);
+		int[][] sizes = new int[][] { { 1, 1 }, { 3, 5 }, { 6, 4 }, { 30, 25 } };
+		for(int[] size : sizes)
+		{
+			double[][] kernel = new double[size[0]][size[1]];
+			for(int u=0; u<size[0]; u++)
+			{
+				for(int v=0; v<size[1]; v++)
+				{
+					kernel[u][v] = rand.nextDouble();
+				}
+			}
+
+			for(Boundary boundary : Boundary.values())
+			{
+				DoubleGrid2D fft = grid.clone();
+				GridConvolution.convolveFFT(fft, kernel, boundary);
+				DoubleGrid2D direct = grid.clone();
+				GridConvolution.convolveDirect(direct, kernel, boundary);
+
+				assertGridEquals("fft " + boundary + " " + size[0] + "x" + size[1], direct, fft, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testBoundary() {
+		DoubleGrid2D constant = new DoubleGrid2D(10, 10, 2.0);
+		GridConvolution.boxFilter(constant, 5, Boundary.CLAMP);
+		assertEquals("Clamped box filter must keep constant grids.", 2.0, constant.get(0, 0), 1e-12);
+		assertEquals("Maximum should be updated.", 2.0, constant.getMaximum().getData(), 1e-12);
+
+		constant = new DoubleGrid2D(10, 10, 2.0);
+		GridConvolution.boxFilter(constant, 3, Boundary.ZERO);
+		assertEquals("Corner has four of nine cells inside the grid.", 2.0 * 4 / 9, constant.get(0, 0), 1e-12);
+		assertEquals("Inner cells are not affected by the boundary.", 2.0, constant.get(5, 5), 1e-12);
+		assertEquals("Minimum should be updated.", 2.0 * 4 / 9, constant.getMinimum().getData(), 1e-12);
+
+		// a single peak is moved around the edge with a periodic boundary
+		DoubleGrid2D peak = new DoubleGrid2D(4, 4);
+		peak.set(0, 0, 1.0);
+		GridConvolution.convolveSeparable(peak, new double[] { 0, 0, 1 }, new double[] { 0, 0, 1 }, Boundary.WRAP);
+		assertEquals("Peak should wrap around.", 1.0, peak.get(3, 3), 0.0);
+	}
+
+	private static void assertGridEquals(String message, DoubleGrid2D expected, DoubleGrid2D actual, double delta)
+	{
+		for(int r=0; r<expected.rows(); r++)
+		{
+			for(int c=0; c<expected.cols(); c++)
+			{
+				assertEquals(message + " at (" + r + "," + c + ")", expected.get(r, c), actual.get(r, c), delta);
+			}
+		}
+	}
+}
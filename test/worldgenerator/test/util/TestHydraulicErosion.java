@@ -0,0 +1,59 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridFactory;
+import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.HydraulicErosion;
+import worldgenerator.util.grid.HydraulicErosion.ErosionAttributes;
+
+public class TestHydraulicErosion {
+
+	private static final int size = 200;
+	private static final int seed = 4;
+
+	@Test
+	public void testErode() {
+		DoubleGrid2D heightmap = GridFactory.create2D(GridType.PERLIN_NOISE_2D, new GridAttributes(size, size, seed));
+		DoubleGrid2D eroded = heightmap.clone();
+		ErosionAttributes attributes = new ErosionAttributes(seed, size * size / 4);
+		HydraulicErosion.erode(eroded, attributes);
+		
+		double change = 0;
+		for (int r = 0; r < size; r++) {
+			for (int c = 0; c < size; c++) {
+				change += Math.abs(eroded.get(r, c) - heightmap.get(r, c));
+			}
+		}
+		assertTrue("Erosion should change the heightmap.", change > 0);
+		assertTrue("Erosion should not create new peaks.", eroded.getMaximum().getData() <= heightmap.getMaximum().getData() + 1e-6);
+		
+		DoubleGrid2D again = heightmap.clone();
+		HydraulicErosion.erode(again, attributes);
+		for (int r = 0; r < size; r++) {
+			for (int c = 0; c < size; c++) {
+				assertEquals("Same seed should give the same heightmap.", eroded.get(r, c), again.get(r, c), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testSmallMaps() {
+		DoubleGrid2D heightmap = new DoubleGrid2D(1, 5, 1.0);
+		HydraulicErosion.erode(heightmap, new ErosionAttributes(seed, 10));
+		assertEquals("Maps without cells should not change.", 1.0, heightmap.get(0, 3), 0.0);
+		
+		heightmap = new DoubleGrid2D(3, 3, 1.0);
+		HydraulicErosion.erode(heightmap, new ErosionAttributes(seed, 10));
+		assertEquals("Flat maps should not change.", 1.0, heightmap.get(1, 1), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDroplets() {
+		HydraulicErosion.erode(new DoubleGrid2D(4, 4), new ErosionAttributes(seed, -1));
+	}
+}
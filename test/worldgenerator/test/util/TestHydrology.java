@@ -0,0 +1,198 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.Hydrology;
+import worldgenerator.util.grid.IntGrid2D;
+
+public class TestHydrology {
+
+	private static final int seed = 7;
+
+	private static DoubleGrid2D randomGrid(int rows, int cols) {
+		Random random = new Random(seed);
+		DoubleGrid2D result = new DoubleGrid2D(rows, cols);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				result.set(r, c, random.nextDouble() * 2 - 1);
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testFillDepressions() {
+		DoubleGrid2D heights = randomGrid(40, 30);
+		double mean = heights.getStatistics().getMean();
+		for (double seaLevel : new double[] { Double.NEGATIVE_INFINITY, -0.5 }) {
+			DoubleGrid2D filled = Hydrology.fillDepressions(heights, seaLevel);
+			double[][] expected = fill(heights, seaLevel);
+			int raised = 0;
+			for (int r = 0; r < 40; r++) {
+				for (int c = 0; c < 30; c++) {
+					assertEquals("Filled height is wrong.", expected[r][c], filled.get(r, c), 1e-12);
+					assertTrue("Cells must not be lowered.", filled.get(r, c) >= heights.get(r, c));
+					if (filled.get(r, c) > heights.get(r, c) + 1e-12)
+						raised++;
+				}
+			}
+			assertTrue("The random heightmap should have depressions.", raised > 0);
+		}
+		assertEquals("The heightmap should not change.", mean, heights.getStatistics().getMean(), 0.0);
+	}
+
+	/**
+	 * Lowers the water from infinity until it can flow to the border or the sea (Planchon and Darboux), as reference.
+	 */
+	private static double[][] fill(DoubleGrid2D heights, double seaLevel) {
+		int rows = heights.rows();
+		int cols = heights.cols();
+		double[][] result = new double[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				boolean outlet = r == 0 || c == 0 || r == rows - 1 || c == cols - 1 || heights.get(r, c) <= seaLevel;
+				result[r][c] = outlet ? heights.get(r, c) : Double.POSITIVE_INFINITY;
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int r = 1; r < rows - 1; r++) {
+				for (int c = 1; c < cols - 1; c++) {
+					double lowest = Double.POSITIVE_INFINITY;
+					for (int u = r - 1; u <= r + 1; u++) {
+						for (int v = c - 1; v <= c + 1; v++) {
+							if (u != r || v != c)
+								lowest = Math.min(lowest, result[u][v]);
+						}
+					}
+					double value = Math.max(heights.get(r, c), lowest);
+					if (value < result[r][c]) {
+						result[r][c] = value;
+						changed = true;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testFlowDirections() {
+		DoubleGrid2D heights = randomGrid(40, 30);
+		IntGrid2D directions = Hydrology.flowDirections(Hydrology.fillDepressions(heights, 0.0), 0.0);
+		for (int r = 0; r < 40; r++) {
+			for (int c = 0; c < 30; c++) {
+				// follow the water, it must reach an outlet or the sea without cycles
+				int row = r;
+				int col = c;
+				int steps = 0;
+				while (directions.get(row, col) >= 0) {
+					int direction = directions.get(row, col);
+					row += Hydrology.DIRECTIONS.rowOffset(direction);
+					col += Hydrology.DIRECTIONS.colOffset(direction);
+					assertTrue("Water flows in a cycle.", steps++ < 40 * 30);
+				}
+				if (directions.get(row, col) == Hydrology.OUTLET)
+					assertTrue("Outlets must be at the border.", row == 0 || col == 0 || row == 39 || col == 29);
+				else
+					assertEquals("Water should end in the sea.", Hydrology.SEA, directions.get(row, col));
+				assertEquals("Sea cells should be at or below sea level.", heights.get(r, c) <= 0.0, directions.get(r, c) == Hydrology.SEA);
+			}
+		}
+	}
+
+	@Test
+	public void testFlowAccumulation() {
+		// a slope down to the first row, all water flows straight to it
+		DoubleGrid2D slope = new DoubleGrid2D(20, 10);
+		for (int r = 0; r < 20; r++) {
+			for (int c = 0; c < 10; c++) {
+				slope.set(r, c, r);
+			}
+		}
+		IntGrid2D accumulation = Hydrology.flowAccumulation(Hydrology.flowDirections(slope, Double.NEGATIVE_INFINITY));
+		for (int r = 0; r < 20; r++) {
+			for (int c = 0; c < 10; c++) {
+				assertEquals("Accumulation should count the cells upstream.", 20 - r, accumulation.get(r, c));
+			}
+		}
+
+		// all water ends at an outlet or in the sea
+		IntGrid2D directions = Hydrology.flowDirections(Hydrology.fillDepressions(randomGrid(40, 30), 0.0), 0.0);
+		accumulation = Hydrology.flowAccumulation(directions);
+		int total = 0;
+		for (int r = 0; r < 40; r++) {
+			for (int c = 0; c < 30; c++) {
+				if (directions.get(r, c) < 0)
+					total += accumulation.get(r, c);
+			}
+		}
+		assertEquals("Water should be conserved.", 40 * 30, total);
+	}
+
+	@Test
+	public void testBasins() {
+		// two valleys that drain to the left and right border, divided by a ridge in column 3, and a lake with a pit in the left valley
+		double[][] values = {
+				{ 0.9, 0.9, 0.9, 0.9, 0.9, 0.9, 0.9 },
+				{ 0.5, 0.4, 0.6, 0.9, 0.6, 0.6, 0.5 },
+				{ 0.9, 0.1, 0.6, 0.9, 0.6, 0.6, 0.4 },
+				{ 0.9, 0.9, 0.9, 0.9, 0.9, 0.9, 0.9 },
+				{ -0.5, -0.5, -0.5, -0.5, -0.5, -0.5, -0.5 } };
+		DoubleGrid2D heights = new DoubleGrid2D(5, 7);
+		for (int r = 0; r < 5; r++) {
+			for (int c = 0; c < 7; c++) {
+				heights.set(r, c, values[r][c]);
+			}
+		}
+		IntGrid2D basins = Hydrology.basins(Hydrology.flowDirections(Hydrology.fillDepressions(heights, 0.0), 0.0));
+
+		assertEquals("The pit should drain to the left border.", basins.get(1, 0), basins.get(2, 1));
+		assertEquals("The left valley should be one basin.", basins.get(1, 0), basins.get(1, 2));
+		assertEquals("The right valley should be one basin.", basins.get(2, 6), basins.get(1, 4));
+		assertFalse("The ridge should divide the valleys.", basins.get(1, 2) == basins.get(1, 4));
+		assertEquals("Labels should start at 0.", 0, basins.get(0, 0));
+		for (int c = 0; c < 7; c++) {
+			assertEquals("The sea should not belong to a basin.", Hydrology.NO_BASIN, basins.get(4, c));
+			assertTrue("Land should belong to a basin.", basins.get(3, c) >= 0);
+		}
+	}
+
+	@Test
+	public void testLargeGrid() {
+		// random heights with a quarter of the cells below sea level
+		DoubleGrid2D heights = randomGrid(1024, 1024);
+		IntGrid2D directions = Hydrology.flowDirections(Hydrology.fillDepressions(heights, -0.5), -0.5);
+		IntGrid2D basins = Hydrology.basins(directions);
+		IntGrid2D accumulation = Hydrology.flowAccumulation(directions);
+
+		// the water of all land cells ends in the outlets and in the land cells next to the sea, one basin each
+		int land = 0;
+		int ends = 0;
+		long drained = 0;
+		int maxLabel = -1;
+		for (int r = 0; r < 1024; r++) {
+			for (int c = 0; c < 1024; c++) {
+				int direction = directions.get(r, c);
+				if (direction == Hydrology.SEA)
+					continue;
+				land++;
+				maxLabel = Math.max(maxLabel, basins.get(r, c));
+				if (direction == Hydrology.OUTLET
+						|| directions.get(r + Hydrology.DIRECTIONS.rowOffset(direction), c + Hydrology.DIRECTIONS.colOffset(direction)) == Hydrology.SEA) {
+					ends++;
+					drained += accumulation.get(r, c);
+				}
+			}
+		}
+		assertTrue("The map should have land and sea.", land > 0 && land < 1024 * 1024);
+		assertEquals("The water of every land cell should arrive at one end.", land, drained);
+		assertEquals("Every end should have its own basin.", ends, maxLabel + 1);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.io.Grid2DPlotter;
+import worldgenerator.util.grid.Grid2D;
+import worldgenerator.util.grid.Grid2D.Grid2DIterator;
+import worldgenerator.util.grid.GridCell;
+import worldgenerator.util.grid.GridFactory;
+import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridStatistics;
+import worldgenerator.util.grid.GridType;
+import worldgenerator.util.grid.IntGrid2D;
+import worldgenerator.util.grid.RowBandExecutor;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestIntGrid2D {
+
+	private IntGrid2D grid;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		grid = new IntGrid2D(3, 4);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				grid.set(r, c, r * grid.cols() + c);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor() {
+		new IntGrid2D(-1, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorTooLarge() {
+		// the cells do not fit into one array, this must fail before anything is allocated
+		new IntGrid2D(1 << 16, 1 << 16);
+	}
+
+	@Test
+	public void testGetSet() {
+		assertEquals("Rows does not not match.", 3, grid.rows());
+		assertEquals("Cols does not not match.", 4, grid.cols());
+		assertEquals("Value does not match.", 6, grid.get(1, 2));
+		assertEquals("Cell does not match.", Integer.valueOf(6), grid.getDataAt(1, 2).getData());
+
+		// invalid positions are ignored
+		grid.set(3, 0, 100);
+		grid.set(0, 4, 100);
+		grid.set(-1, 0, 100);
+		assertEquals("Maximum does not match.", Integer.valueOf(11), grid.getMaximum().getData());
+		assertEquals("Minimum does not match.", Integer.valueOf(0), grid.getMinimum().getData());
+	}
+
+	@Test
+	public void testFactory() {
+		GridAttributes attributes = new GridAttributes(5, 7, 0);
+		IntGrid2D created = GridFactory.createInt2D(GridType.INTEGER_2D, attributes);
+
+		assertNotNull("Integer grid was not created.", created);
+		assertEquals("Rows does not not match.", 5, created.rows());
+		assertEquals("Cols does not not match.", 7, created.cols());
+		assertEquals("Value does not match.", 0, created.get(4, 6));
+
+		assertNull("Unsupported types should not create a grid.", GridFactory.createInt2D(GridType.PERLIN_NOISE_2D, attributes));
+	}
+
+	@Test
+	public void testDoubleValues() throws IOException {
+		GridStatistics stats = grid.getStatistics();
+		assertEquals("Count does not match.", 12, stats.getCount());
+		assertEquals("Mean does not match.", 5.5, stats.getMean(), 1e-10);
+		assertEquals("Maximum does not match.", 11.0, stats.getMaximum(), 1e-10);
+
+		IntGrid2D mask = new IntGrid2D(2, 2);
+		mask.set(0, 1, 1);
+		mask.set(1, 0, 7);
+		Grid2DPlotter<Integer> plotter = new Grid2DPlotter<Integer>(mask);
+		assertEquals("Plotted grids do not match.", "0,1" + System.lineSeparator() + "7,0", plotter.plot2string());
+
+		BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+		plotter.plot2image(image);
+		assertEquals("Zero should be plotted black.", Color.BLACK.getRGB(), image.getRGB(0, 0));
+		assertEquals("One should be plotted white.", Color.WHITE.getRGB(), image.getRGB(1, 0));
+		assertEquals("Values above one should be clamped.", Color.WHITE.getRGB(), image.getRGB(0, 1));
+	}
+
+	@Test
+	public void testCopyOnWriteParallel() {
+		// large enough to be split into bands if there are several threads
+		IntGrid2D original = new IntGrid2D(128, RowBandExecutor.MIN_PARALLEL_CELLS / 128 + 1, 1);
+		IntGrid2D copy = original.clone();
+
+		copy.iterateParallel(new Grid2DIterator<Integer>()
+		{
+			@Override
+			public void step(int row, int col, GridCell<Integer> gridCell, Grid2D<Integer> grid2d)
+			{
+				grid2d.setDataAt(row, col, gridCell.getData() + row * grid2d.cols() + col);
+			}
+		});
+
+		for(int r=0; r<original.rows(); r++)
+		{
+			for(int c=0; c<original.cols(); c++)
+			{
+				assertEquals("Original must not see writes to the clone.", 1, original.get(r, c));
+				assertEquals("Clone does not match.", 1 + r * copy.cols() + c, copy.get(r, c));
+			}
+		}
+		assertEquals("Maximum of the original does not match.", Integer.valueOf(1), original.getMaximum().getData());
+	}
+}
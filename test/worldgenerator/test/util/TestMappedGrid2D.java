@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.MappedGrid2D;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestMappedGrid2D {
+
+	private File file;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("testgrid", ".bin");
+		file.deleteOnExit();
+	}
+
+	@Test
+	public void testReadWrite() throws Exception {
+		MappedGrid2D grid = new MappedGrid2D(file, 30, 40);
+		assertEquals("New grids should be zero.", 0.0, grid.get(29, 39), 0.0);
+
+		grid.set(29, 39, 2.5);
+		grid.set(3, 4, -1.0);
+		grid.set(30, 0, 9.0);
+		assertEquals(2.5, grid.get(29, 39), 0.0);
+		assertEquals(2.5, grid.getMaximum().getData(), 0.0);
+		assertEquals(-1.0, grid.getMinimum().getData(), 0.0);
+
+		grid.add(new GridCellDouble(1.0));
+		grid.clamp(0.5, 3.0);
+		assertEquals(3.0, grid.getMaximum().getData(), 0.0);
+		assertEquals(0.5, grid.get(3, 4), 0.0);
+		grid.close();
+
+		// the values are kept in the file
+		MappedGrid2D reopened = new MappedGrid2D(file, 30, 40);
+		assertEquals(3.0, reopened.get(29, 39), 0.0);
+		assertEquals(1.0, reopened.get(0, 0), 0.0);
+		assertEquals(0.5, reopened.getMinimum().getData(), 0.0);
+
+		MappedGrid2D copy = reopened.clone();
+		copy.set(0, 0, 7.0);
+		assertEquals("Clone must not share the file.", 1.0, reopened.get(0, 0), 0.0);
+		copy.close();
+		reopened.close();
+	}
+
+	@Test
+	public void testSinglePrecision() throws Exception {
+		MappedGrid2D grid = new MappedGrid2D(file, 5, 7, true);
+		grid.set(4, 6, 0.1);
+		assertEquals("Values are stored as floats.", (float) 0.1, grid.get(4, 6), 0.0);
+		assertEquals("Floats need half of the file size.", 5 * 7 * 4, file.length());
+		grid.close();
+	}
+}
@@ -3,6 +3,7 @@ package worldgenerator.test.util;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -12,12 +13,14 @@ import worldgenerator.util.grid.ComparableGrid2D;
 import worldgenerator.util.grid.GridFactory;
 import worldgenerator.util.grid.GridFactory.GridAttributes;
 import worldgenerator.util.grid.GridType;
+import worldgenerator.util.noise.PerlinNoise3D;
 
 public class TestPerlinNoise3D {
 
 	private static final int height = 256;
 	private static final int width = 256;
 	private static final int seed = 0;
+	private static final int noiseSeed = 11;
 
 	@Before
 	public void setUp() throws Exception {
@@ -32,4 +35,56 @@ public class TestPerlinNoise3D {
 		plotter.plot2file("perlin_noise_grid2d_test.txt");
 	}
 
+	@Test
+	public void testReferencePermutation() {
+		PerlinNoise3D noise = new PerlinNoise3D();
+		Random random = new Random(noiseSeed);
+		for (int i = 0; i < 1000; i++) {
+			double x = random.nextDouble() * 600 - 300;
+			double y = random.nextDouble() * 600 - 300;
+			double z = random.nextDouble() * 600 - 300;
+			assertEquals("Instance does not match the reference.", PerlinNoise3D.noise(x, y, z), noise.evaluate(x, y, z), 0.0);
+		}
+	}
+
+	@Test
+	public void testFloatPaths() {
+		PerlinNoise3D noise = new PerlinNoise3D(noiseSeed);
+		Random random = new Random(noiseSeed);
+		int count = 500;
+		float[] x = new float[count];
+		float[] y = new float[count];
+		float[] z = new float[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = random.nextFloat() * 40 - 20;
+			y[i] = random.nextFloat() * 40 - 20;
+			z[i] = random.nextFloat() * 40 - 20;
+		}
+		float[] result = new float[count];
+		noise.evaluate(x, y, z, result, 0, count);
+		
+		for (int i = 0; i < count; i++) {
+			assertEquals("Batch does not match single float value.", noise.evaluate(x[i], y[i], z[i]), result[i], 0.0f);
+			assertEquals("Float does not match double value.", noise.evaluate((double) x[i], (double) y[i], (double) z[i]), result[i], 1e-5);
+		}
+		
+		noise.evaluateRow(-3.0f, 0.37f, 1.5f, 2.25f, result, 40);
+		for (int i = 0; i < 40; i++) {
+			assertEquals("Row does not match single float value.", noise.evaluate(-3.0f + i * 0.37f, 1.5f, 2.25f), result[i], 0.0f);
+		}
+	}
+
+	@Test
+	public void testSeeds() {
+		PerlinNoise3D first = new PerlinNoise3D(noiseSeed);
+		PerlinNoise3D same = new PerlinNoise3D(noiseSeed);
+		PerlinNoise3D other = new PerlinNoise3D(noiseSeed + 1);
+		boolean different = false;
+		for (int i = 0; i < 100; i++) {
+			double x = i * 0.31, y = i * 0.17, z = 0.5;
+			assertEquals("Same seed should give the same noise.", first.evaluate(x, y, z), same.evaluate(x, y, z), 0.0);
+			different |= first.evaluate(x, y, z) != other.evaluate(x, y, z);
+		}
+		assertTrue("Different seeds should give different noise.", different);
+	}
 }
@@ -0,0 +1,77 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worldgenerator.util.noise.PerlinNoiseGenerator;
+
+public class TestPerlinNoiseGenerator {
+
+	private static final int seed = 3;
+
+	@Test
+	public void testNoiseRow() {
+		PerlinNoiseGenerator generator = new PerlinNoiseGenerator(seed);
+		// crosses several lattice cells, also below zero
+		float[] y = new float[50];
+		for (int j = 0; j < y.length; j++) {
+			y[j] = -3.1f + 0.173f * j;
+		}
+		float[] result = new float[y.length + 2];
+		generator.NoiseRow(1.7f, y, 0.4f, result, 2);
+		
+		for (int j = 0; j < y.length; j++) {
+			assertEquals("Row value does not match single value.", generator.Noise(1.7f, y[j], 0.4f), result[j + 2], 0.0f);
+		}
+	}
+
+	@Test
+	public void testNoiseTile() {
+		PerlinNoiseGenerator generator = new PerlinNoiseGenerator(seed);
+		float[] x = PerlinNoiseGenerator.Coordinates(7.0f, 20);
+		float[] y = PerlinNoiseGenerator.Coordinates(5.0f, 30);
+		float[] result = new float[x.length * y.length];
+		generator.NoiseTile(x, y, 1, result);
+		
+		for (int i = 0; i < x.length; i++) {
+			for (int j = 0; j < y.length; j++) {
+				assertEquals("Tile value does not match single value.", generator.Noise(7.0f * i / 20.0f, 5.0f * j / 30.0f, 1), result[i * y.length + j], 0.0f);
+			}
+		}
+	}
+
+	@Test
+	public void testPeriodicNoiseRow() {
+		PerlinNoiseGenerator generator = new PerlinNoiseGenerator(seed);
+		float[] y = new float[40];
+		float[] shifted = new float[y.length];
+		for (int j = 0; j < y.length; j++) {
+			y[j] = -2.0f + 0.125f * j;
+			shifted[j] = y[j] + 5;
+		}
+		float[] row = new float[y.length];
+		float[] next = new float[y.length];
+		float[] plain = new float[y.length];
+		for (int i = 0; i < 8; i++) {
+			float x = 0.375f * i;
+			generator.NoiseRow(x, y, 0.5f, 4, 5, row, 0);
+			generator.NoiseRow(x + 4, shifted, 0.5f, 4, 5, next, 0);
+			assertArrayEquals("Noise should repeat after the periods.", row, next, 0.0f);
+			
+			generator.NoiseRow(x, y, 0.5f, 0, 0, next, 0);
+			generator.NoiseRow(x, y, 0.5f, plain, 0);
+			assertArrayEquals("Period 0 should not repeat.", plain, next, 0.0f);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePeriod() {
+		new PerlinNoiseGenerator(seed).NoiseRow(0, new float[10], 0, -1, 0, new float[10], 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoiseRowTooShort() {
+		new PerlinNoiseGenerator(seed).NoiseRow(0, new float[10], 0, new float[10], 1);
+	}
+}
@@ -0,0 +1,84 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.StencilPipeline;
+import worldgenerator.util.noise.NoiseType;
+import worldgenerator.util.noise.PerlinNoiseMap;
+
+public class TestPerlinNoiseMap {
+
+	private static final int size = 160;
+	private static final int seed = 2;
+
+	private PerlinNoiseMap createMap() {
+		PerlinNoiseMap map = new PerlinNoiseMap(size, seed);
+		map.AddPerlinNoise(4.0f);
+		return map;
+	}
+
+	@Test
+	public void testDeterminism() {
+		PerlinNoiseMap first = createMap();
+		PerlinNoiseMap second = createMap();
+		for (int step = 0; step < 5; step++) {
+			first.Erode(10.0f);
+			second.Erode(10.0f);
+			first.Erode2(7.0f, 3.0f);
+			second.Erode2(7.0f, 3.0f);
+		}
+		for (int i = 0; i < size; i++) {
+			assertArrayEquals("Repeated erosion should give the same heights.", first.Heights[i], second.Heights[i], 0.0f);
+		}
+	}
+
+	@Test
+	public void testRectangular() {
+		PerlinNoiseMap square = new PerlinNoiseMap(size, seed);
+		square.AddPerlinNoise(4.0f);
+		PerlinNoiseMap wide = new PerlinNoiseMap(40, size, seed, NoiseType.PERLIN, false);
+		wide.AddPerlinNoise(4.0f);
+		PerlinNoiseMap tall = new PerlinNoiseMap(size, 40, seed, NoiseType.PERLIN, false);
+		tall.AddPerlinNoise(4.0f);
+		
+		assertEquals("Size should be the longer edge.", size, wide.Size);
+		assertEquals("Wrong number of rows.", 40, wide.Heights.length);
+		for (int i = 0; i < size; i++) {
+			if (i < 40)
+				assertArrayEquals("Wide map should be the top of the square map.", square.Heights[i], wide.Heights[i], 0.0f);
+			for (int j = 0; j < 40; j++) {
+				assertEquals("Tall map should be the left of the square map.", square.Heights[i][j], tall.Heights[i][j], 0.0f);
+			}
+		}
+	}
+
+	@Test
+	public void testTileable() {
+		for (NoiseType type : NoiseType.values()) {
+			PerlinNoiseMap map = new PerlinNoiseMap(60, size, seed, type, true);
+			map.AddPerlinNoise(6.0f);
+			map.Perturb(32.0f, 3.0f);
+			map.Apply(new StencilPipeline().then(StencilPipeline.smooth(), 2));
+			
+			// the step across the border is not larger than between neighbours inside the map
+			float inner = 0;
+			for (int i = 0; i < 59; i++) {
+				for (int j = 0; j < size - 1; j++) {
+					inner = Math.max(inner, Math.abs(map.Heights[i][j] - map.Heights[i + 1][j]));
+					inner = Math.max(inner, Math.abs(map.Heights[i][j] - map.Heights[i][j + 1]));
+				}
+			}
+			float border = 0;
+			for (int j = 0; j < size; j++) {
+				border = Math.max(border, Math.abs(map.Heights[59][j] - map.Heights[0][j]));
+			}
+			for (int i = 0; i < 60; i++) {
+				border = Math.max(border, Math.abs(map.Heights[i][size - 1] - map.Heights[i][0]));
+			}
+			assertTrue("Tileable " + type + " map should be seamless: " + border + " > " + inner, border <= inner);
+			assertTrue("Map should not be flat.", inner > 0);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.GridFactory;
+import worldgenerator.util.grid.GridFactory.GridAttributes;
+import worldgenerator.util.grid.GridType;
+import worldgenerator.util.noise.NoiseGenerator;
+import worldgenerator.util.noise.NoiseType;
+import worldgenerator.util.noise.PerlinNoiseGenerator;
+import worldgenerator.util.noise.SimplexNoiseGenerator;
+
+public class TestSimplexNoiseGenerator {
+
+	private static final int seed = 7;
+	private static final int size = 512;
+
+	@Test
+	public void testNoise() {
+		SimplexNoiseGenerator layered = new SimplexNoiseGenerator(seed, true);
+		SimplexNoiseGenerator full = new SimplexNoiseGenerator(seed);
+		float[] y = new float[200];
+		for (int j = 0; j < y.length; j++) {
+			y[j] = -10.0f + 0.11f * j;
+		}
+		float[] row = new float[y.length];
+		float minimum = Float.MAX_VALUE;
+		float maximum = -Float.MAX_VALUE;
+		boolean layersDiffer = false;
+		for (int i = 0; i < 50; i++) {
+			float x = -4.0f + 0.23f * i;
+			layered.NoiseRow(x, y, 1, row, 0);
+			for (int j = 0; j < y.length; j++) {
+				assertEquals("Row value does not match single value.", layered.Noise(x, y[j], 1), row[j], 0.0f);
+				layersDiffer |= row[j] != layered.Noise(x, y[j], 0);
+				float value = full.Noise(x, y[j], 0.37f);
+				minimum = Math.min(minimum, Math.min(value, row[j]));
+				maximum = Math.max(maximum, Math.max(value, row[j]));
+			}
+		}
+		assertTrue("Layers should differ.", layersDiffer);
+		assertTrue("Noise should be in [-1,1].", minimum >= -1.0f && maximum <= 1.0f);
+		assertTrue("Noise should not be constant.", maximum - minimum > 0.5f);
+		assertEquals("Layer 0 should be the 2d noise.", layered.Noise(0.3f, 0.7f), layered.Noise(0.3f, 0.7f, 0.9f), 0.0f);
+	}
+
+	@Test
+	public void testPeriodicNoiseRow() {
+		SimplexNoiseGenerator generator = new SimplexNoiseGenerator(seed, true);
+		float[] y = new float[60];
+		float[] shifted = new float[y.length];
+		for (int j = 0; j < y.length; j++) {
+			y[j] = 0.125f * j;
+			shifted[j] = y[j] - 3;
+		}
+		float[] row = new float[y.length];
+		float[] next = new float[y.length];
+		for (int i = 0; i < 10; i++) {
+			float x = 0.25f * i;
+			generator.NoiseRow(x, y, 0, 2, 3, row, 0);
+			generator.NoiseRow(x + 2, shifted, 0, 2, 3, next, 0);
+			assertArrayEquals("Noise should repeat after the periods.", row, next, 1e-6f);
+		}
+		// the blend is continuous across the border of the period
+		generator.NoiseRow(1.999f, y, 0, 2, 0, row, 0);
+		generator.NoiseRow(0.0f, y, 0, 2, 0, next, 0);
+		assertArrayEquals("Noise should be continuous at the border of the period.", row, next, 0.02f);
+	}
+
+	@Test
+	public void testSeed() {
+		NoiseGenerator first = NoiseType.SIMPLEX.create(seed);
+		NoiseGenerator same = NoiseType.SIMPLEX.create(seed);
+		NoiseGenerator other = NoiseType.SIMPLEX.create(seed + 1);
+		boolean different = false;
+		for (int i = 0; i < 100; i++) {
+			assertEquals("Same seed should give the same noise.", first.Noise(i * 0.3f, i * 0.2f, 0), same.Noise(i * 0.3f, i * 0.2f, 0), 0.0f);
+			different |= first.Noise(i * 0.3f, i * 0.2f, 0) != other.Noise(i * 0.3f, i * 0.2f, 0);
+		}
+		assertTrue("Different seeds should give different noise.", different);
+	}
+
+	@Test
+	public void testGridFactory() {
+		DoubleGrid2D grid = GridFactory.create2D(GridType.SIMPLEX_NOISE_2D, new GridAttributes(128, 128, seed));
+		assertEquals("Maximum does not match.", 1.0, grid.getMaximum().getData(), 1e-9);
+		assertEquals("Minimum does not match.", -1.0, grid.getMinimum().getData(), 1e-9);
+	}
+
+	/**
+	 * The noise rows of a size x size map, as in PerlinNoiseMap, for all generators.
+	 */
+	@Test
+	public void testMapRows() {
+		float[] coordinates = PerlinNoiseGenerator.Coordinates(3.0f * size / 128.0f, size);
+		float[] row = new float[size];
+		float[] checksums = new float[NoiseType.values().length];
+		for (NoiseType type : NoiseType.values()) {
+			NoiseGenerator generator = type.create(seed);
+			float checksum = 0;
+			for (int i = 0; i < size; i++) {
+				generator.NoiseRow(coordinates[i], coordinates, 0, row, 0);
+				checksum += row[i];
+				assertEquals(type + " row does not match single values.", generator.Noise(coordinates[i], coordinates[i], 0), row[i], 1e-5f);
+			}
+			assertFalse(type + " checksum should be finite.", Float.isNaN(checksum) || Float.isInfinite(checksum));
+			checksums[type.ordinal()] = checksum;
+		}
+		assertTrue("The generators should give different noise.", checksums[0] != checksums[1]);
+	}
+}
@@ -0,0 +1,141 @@
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.StencilPipeline;
+import worldgenerator.util.grid.StencilPipeline.Stencil;
+
+public class TestStencilPipeline {
+
+	private static final int seed = 8;
+
+	private static float[][] randomHeights(int rows, int cols) {
+		Random random = new Random(seed);
+		float[][] result = new float[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				result[r][c] = random.nextFloat();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Applies the stages one after the other over the whole grid.
+	 */
+	private static double[][] reference(float[][] heights, Stencil... stages) {
+		int rows = heights.length;
+		double[][] current = new double[rows][];
+		for (int r = 0; r < rows; r++) {
+			current[r] = new double[heights[r].length];
+			for (int c = 0; c < heights[r].length; c++) {
+				current[r][c] = heights[r][c];
+			}
+		}
+		for (Stencil stage : stages) {
+			double[][] next = new double[rows][current[0].length];
+			for (int r = 0; r < rows; r++) {
+				stage.apply(r > 0 ? current[r - 1] : null, current[r], r < rows - 1 ? current[r + 1] : null, next[r]);
+			}
+			current = next;
+		}
+		return current;
+	}
+
+	@Test
+	public void testPipeline() {
+		// large enough to be split into bands
+		float[][] heights = randomHeights(300, 90);
+		Stencil erosion = StencilPipeline.thermalErosion(0.1, 0.6, 1.0 / 16, 2.0);
+		Stencil smooth = StencilPipeline.smooth();
+		Stencil limit = StencilPipeline.slopeLimit(0.2);
+		double[][] expected = reference(heights, erosion, erosion, smooth, limit, erosion);
+		
+		float[][] result = new StencilPipeline().then(erosion, 2).then(smooth).then(limit).then(erosion).apply(heights);
+		for (int r = 0; r < heights.length; r++) {
+			for (int c = 0; c < heights[r].length; c++) {
+				assertEquals("Pipeline does not match the stages applied one after the other.", (float) expected[r][c], result[r][c], 0.0f);
+			}
+		}
+		assertEquals("The input should not change.", randomHeights(300, 90)[5][7], heights[5][7], 0.0f);
+	}
+
+	@Test
+	public void testPeriodic() {
+		float[][] heights = randomHeights(200, 70);
+		Stencil erosion = StencilPipeline.thermalErosion(0.1, 0.6, 1.0 / 16, 2.0);
+		Stencil smooth = StencilPipeline.smooth();
+		// a periodic grid is the middle of nine copies of it
+		float[][] copies = new float[3 * 200][3 * 70];
+		for (int r = 0; r < copies.length; r++) {
+			for (int c = 0; c < copies[r].length; c++) {
+				copies[r][c] = heights[r % 200][c % 70];
+			}
+		}
+		double[][] expected = reference(copies, erosion, smooth, erosion, erosion);
+		
+		float[][] result = new StencilPipeline().then(erosion).then(smooth).then(erosion, 2).apply(heights, true);
+		for (int r = 0; r < heights.length; r++) {
+			for (int c = 0; c < heights[r].length; c++) {
+				assertEquals("Periodic pipeline does not match the middle copy.", (float) expected[200 + r][70 + c], result[r][c], 0.0f);
+			}
+		}
+		
+		// fewer rows and columns than stages wrap around several times
+		float[][] small = randomHeights(2, 3);
+		float[][] smallResult = new StencilPipeline().then(smooth, 4).apply(small, true);
+		float[][] smallCopies = new float[18][27];
+		for (int r = 0; r < 18; r++) {
+			for (int c = 0; c < 27; c++) {
+				smallCopies[r][c] = small[r % 2][c % 3];
+			}
+		}
+		double[][] smallExpected = reference(smallCopies, smooth, smooth, smooth, smooth);
+		for (int r = 0; r < 2; r++) {
+			for (int c = 0; c < 3; c++) {
+				assertEquals("Small periodic grid does not match.", (float) smallExpected[8 + r][12 + c], smallResult[r][c], 1e-6f);
+			}
+		}
+	}
+
+	@Test
+	public void testDoubleGrid() {
+		float[][] heights = randomHeights(7, 5);
+		DoubleGrid2D grid = new DoubleGrid2D(7, 5);
+		for (int r = 0; r < 7; r++) {
+			for (int c = 0; c < 5; c++) {
+				grid.set(r, c, heights[r][c]);
+			}
+		}
+		double sum = grid.getStatistics().getMean();
+		Stencil erosion = StencilPipeline.thermalErosion(0.0, 1.0, 1.0 / 16);
+		double[][] expected = reference(heights, erosion, erosion, erosion);
+		new StencilPipeline().then(erosion, 3).apply(grid);
+		
+		for (int r = 0; r < 7; r++) {
+			for (int c = 0; c < 5; c++) {
+				assertEquals("Grid value does not match.", expected[r][c], grid.get(r, c), 0.0);
+			}
+		}
+		assertEquals("Thermal erosion should keep the total height.", sum, grid.getStatistics().getMean(), 1e-12);
+	}
+
+	@Test
+	public void testStencils() {
+		float[][] heights = { { 0, 0, 0 }, { 0, 9, 0 }, { 0, 0, 0 } };
+		float[][] smooth = new StencilPipeline().then(StencilPipeline.smooth()).apply(heights);
+		assertEquals("Center should be the mean.", 1.0f, smooth[1][1], 0.0f);
+		assertEquals("Border should not change.", 0.0f, smooth[0][1], 0.0f);
+		
+		float[][] limited = new StencilPipeline().then(StencilPipeline.slopeLimit(2.0)).apply(heights);
+		assertEquals("Peak should be limited.", 2.0f, limited[1][1], 0.0f);
+		
+		float[][] single = new StencilPipeline().then(StencilPipeline.smooth(), 3).apply(new float[][] { { 1, 2, 3 } });
+		assertArrayEquals("Single row should not change.", new float[] { 1, 2, 3 }, single[0], 0.0f);
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.SummedAreaTable;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestSummedAreaTable {
+
+	private DoubleGrid2D grid;
+	private SummedAreaTable table;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rand = new Random(0);
+		grid = new DoubleGrid2D(13, 17);
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				grid.set(r, c, rand.nextDouble());
+			}
+		}
+		table = new SummedAreaTable(grid);
+	}
+
+	@Test
+	public void testSum() {
+		double sum = 0;
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				sum += grid.get(r, c);
+			}
+		}
+		assertEquals("Sum over the whole grid does not match.", sum, table.sum(-5, -5, 100, 100), 1e-9);
+		assertEquals("Single value does not match.", grid.get(3, 4), table.get(3, 4), 1e-12);
+		assertEquals("Empty rectangle should have zero sum.", 0.0, table.sum(4, 4, 4, 10), 0.0);
+		assertEquals("Mean does not match.", (grid.get(0, 0) + grid.get(0, 1)) / 2, table.mean(-1, 0, 1, 2), 1e-12);
+	}
+
+	@Test
+	public void testSumOverArea() {
+		for(int kernelSize = 0; kernelSize < 20; kernelSize++)
+		{
+			for(int r=0; r<grid.rows(); r++)
+			{
+				for(int c=0; c<grid.cols(); c++)
+				{
+					assertEquals("Sum over area does not match for kernel size " + kernelSize + ".",
+							grid.sumOverArea(r, c, kernelSize), table.sumOverArea(r, c, kernelSize), 1e-9);
+				}
+			}
+		}
+	}
+}
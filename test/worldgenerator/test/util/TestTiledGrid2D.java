@@ -0,0 +1,120 @@
+/**
+ * 
+ */
+package worldgenerator.test.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.util.grid.DoubleGrid2D;
+import worldgenerator.util.grid.Grid2D;
+import worldgenerator.util.grid.Grid2D.Grid2DIterator;
+import worldgenerator.util.grid.GridCell;
+import worldgenerator.util.grid.GridCellDouble;
+import worldgenerator.util.grid.RowBandExecutor;
+import worldgenerator.util.grid.TiledGrid2D;
+
+/**
+ * @author Felix Dietrich
+ *
+ */
+public class TestTiledGrid2D {
+
+	private TiledGrid2D grid;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		grid = new TiledGrid2D(150, 70);
+	}
+
+	@Test
+	public void testLazyTiles() {
+		assertEquals("No tile should be allocated before writing.", 0, grid.allocatedTiles());
+		assertEquals("Unwritten cells should have the fill value.", 0.0, grid.get(149, 69), 0.0);
+
+		grid.set(149, 69, 0.0);
+		assertEquals("Writing the fill value should not allocate a tile.", 0, grid.allocatedTiles());
+
+		grid.set(149, 69, 2.0);
+		grid.set(0, 0, -1.0);
+		grid.set(1, 1, -3.0);
+		assertEquals("Two tiles should be allocated.", 2, grid.allocatedTiles());
+		assertEquals(2.0, grid.get(149, 69), 0.0);
+		assertEquals(-1.0, grid.get(0, 0), 0.0);
+		assertEquals("Neighbour in another tile should not change.", 0.0, grid.get(149, 63), 0.0);
+		assertEquals(2.0, grid.getMaximum().getData(), 0.0);
+		assertEquals(-3.0, grid.getMinimum().getData(), 0.0);
+
+		grid.set(149, 69, 0.0);
+		grid.compact();
+		assertEquals("Tile with only fill values should be released.", 1, grid.allocatedTiles());
+
+		grid.fill(new GridCellDouble(5.0));
+		assertEquals("Fill should release all tiles.", 0, grid.allocatedTiles());
+		assertEquals(5.0, grid.get(100, 30), 0.0);
+	}
+
+	@Test
+	public void testIterateParallel() {
+		// row bands of rows/(threads*4) rows do not line up with the tiles, several threads write to the same unallocated tile
+		int parallelism = RowBandExecutor.getParallelism();
+		RowBandExecutor.setParallelism(8);
+		try {
+			for (int run = 0; run < 5; run++) {
+				final TiledGrid2D tiled = new TiledGrid2D(1000, 300);
+				tiled.iterateParallel(new Grid2DIterator<Double>() {
+					@Override
+					public void step(int row, int col, GridCell<Double> gridCell, Grid2D<Double> grid2d) {
+						grid2d.setDataAt(row, col, (double) (row * 300 + col + 1));
+					}
+				});
+
+				for (int r = 0; r < 1000; r++) {
+					for (int c = 0; c < 300; c++) {
+						assertEquals("Write of the iterator was lost.", r * 300 + c + 1, tiled.get(r, c), 0.0);
+					}
+				}
+				assertEquals("Maximum should follow the writes of the iterator.", 300000.0, tiled.getMaximum().getData(), 0.0);
+			}
+		} finally {
+			RowBandExecutor.setParallelism(parallelism);
+		}
+	}
+
+	@Test
+	public void testArithmetic() {
+		DoubleGrid2D dense = new DoubleGrid2D(grid.rows(), grid.cols());
+		grid.set(70, 10, 4.0);
+		dense.set(70, 10, 4.0);
+
+		grid.add(new GridCellDouble(1.0));
+		dense.add(1.0);
+		grid.mult(new GridCellDouble(-2.0));
+		dense.mult(-2.0);
+		grid.clamp(-9.0, -1.0);
+		dense.clamp(-9.0, -1.0);
+		assertEquals("Arithmetic should keep the constant tile shared.", 1, grid.allocatedTiles());
+
+		grid.add(dense);
+		dense.add(dense.clone());
+		for(int r=0; r<grid.rows(); r++)
+		{
+			for(int c=0; c<grid.cols(); c++)
+			{
+				assertEquals("Tiled and dense grid differ.", dense.get(r, c), grid.get(r, c), 0.0);
+			}
+		}
+		assertEquals(dense.getMaximum().getData(), grid.getMaximum().getData(), 0.0);
+		assertEquals(dense.getMinimum().getData(), grid.getMinimum().getData(), 0.0);
+
+		TiledGrid2D copy = grid.clone();
+		copy.set(0, 0, 7.0);
+		assertEquals("Clone must not share tiles.", -4.0, grid.get(0, 0), 0.0);
+		assertEquals("Copy of dense grid does not match.", dense.get(70, 10), TiledGrid2D.valueOf(dense).get(70, 10), 0.0);
+	}
+}